@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * EZ-Plan
+ * One academic calendar to crawl (eg. a campus's current calendar, or an archived session),
+ * identified by a short name that tags everything crawled from it: its tuples are written to
+ * tables of their own, named after the usual table with the source's name appended
+ * (eg. "Course_vancouver").
+ */
+public class CalendarSource {
+
+	// (Before the sources below, which need them to be set up)
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_]+"),
+			TREE = Pattern.compile("tree=\\d+,");
+
+	/**
+	 * The current Okanagan calendar (the one EZ-Plan was built around).
+	 */
+	public static final CalendarSource OKANAGAN = new CalendarSource("okanagan",
+			"http://www.calendar.ubc.ca/okanagan/courses.cfm?go=code",
+			"http://www.calendar.ubc.ca/okanagan/index.cfm?tree=18,0,0,0");
+
+	/**
+	 * The current Vancouver calendar (its faculties and programs are under tree 12).
+	 */
+	public static final CalendarSource VANCOUVER = new CalendarSource("vancouver",
+			"http://www.calendar.ubc.ca/vancouver/courses.cfm?go=code",
+			"http://www.calendar.ubc.ca/vancouver/index.cfm?tree=12,0,0,0");
+
+	private String name, coursesUrl, degreesUrl;
+
+	/**
+	 * @param name Short name for the source, used in table names (letters, digits and underscores only).
+	 * @param coursesUrl Course root page (listing each subject's course page).
+	 * @param degreesUrl Root page of the degree programs, or null if degrees aren't crawled from this source.
+	 */
+	public CalendarSource(String name, String coursesUrl, String degreesUrl) {
+		if (!NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Calendar source name must be letters, digits or underscores: "+name);
+		}
+		this.name = name;
+		this.coursesUrl = coursesUrl;
+		this.degreesUrl = degreesUrl;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getCoursesUrl() {
+		return coursesUrl;
+	}
+
+	public String getDegreesUrl() {
+		return degreesUrl;
+	}
+
+	/**
+	 * @return The part of a link that keeps it within this calendar's degrees tree (eg. "tree=18,"),
+	 * or null if there is no degrees root.
+	 */
+	public String getDegreeLink() {
+		if (degreesUrl == null) return null;
+		Matcher m = TREE.matcher(degreesUrl);
+		return m.find()? m.group() : degreesUrl;
+	}
+
+	/**
+	 * @param tableTitle A table's usual name (eg. "Course").
+	 * @return The name of that table for this source (eg. "Course_vancouver").
+	 */
+	public String tableName(String tableTitle) {
+		return tableTitle+"_"+name;
+	}
+
+	/**
+	 * Tag tuples crawled from this source, so they are written to this source's tables.
+	 * @param tuples
+	 * @return The tagged tuples, in the same order.
+	 */
+	public ArrayList<Tuple> tag(List<? extends Tuple> tuples) {
+		ArrayList<Tuple> tagged = new ArrayList<Tuple>(tuples.size());
+		for (Tuple t : tuples) {
+			tagged.add(new Tagged(this, t));
+		}
+		return tagged;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * A tuple from a particular source: the same values, in that source's table.
+	 */
+	public static class Tagged implements Tuple {
+
+		// Tables that refer to one another, so their names are all rewritten together in DDL
+		private static final Pattern TABLES = Pattern.compile("\\b("
+				+new Course().getTableTitle()+"|"
+				+new DegreeType().getTableTitle()+"|"
+				+new CourseRequirement(null).getTableTitle()+")\\b");
+
+		private CalendarSource source;
+		private Tuple tuple;
+
+		public Tagged(CalendarSource source, Tuple tuple) {
+			this.source = source;
+			this.tuple = tuple;
+		}
+
+		public CalendarSource getSource() {
+			return source;
+		}
+
+		public Tuple getTuple() {
+			return tuple;
+		}
+
+		@Override
+		public String[] getValues() {
+			return tuple.getValues();
+		}
+
+		@Override
+		public String[] getColumns() {
+			return tuple.getColumns();
+		}
+
+		@Override
+		public String[] getKeyHeadings() {
+			return tuple.getKeyHeadings();
+		}
+
+		@Override
+		public String getTableDDL() {
+			return TABLES.matcher(tuple.getTableDDL()).replaceAll("$1_"+source.getName());
+		}
+
+		@Override
+		public String getTableTitle() {
+			return source.tableName(tuple.getTableTitle());
+		}
+
+		@Override
+		public String toString() {
+			return tuple.toString();
+		}
+	}
+}
@@ -0,0 +1,357 @@
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EZ-Plan
+ * Compact binary snapshot of a crawled course catalog, so tools and tests can reload
+ * the whole catalog in milliseconds instead of re-crawling or querying MySQL.
+ * The file is memory-mapped when read, and nothing is decoded up front: get() and find() hand out
+ * Course views over the mapped records, which decode a field only when it is read.
+ *
+ * File layout (all integers big-endian):
+ * 	header:   magic "EZCS", version, course count, string count,
+ * 	          then offsets of the records, code index, string offsets and string data
+ * 	records:  one fixed-width record per course, in crawl order: string IDs of subject,
+ * 	          credits, max credits, title, description, prereqs and coreqs, plus the course number
+ * 	          (string ID -1 means null)
+ * 	index:    record numbers sorted by course code (subject, as unsigned UTF-8 bytes, then number),
+ * 	          for lookups that compare subjects in place
+ * 	strings:  (count+1) offsets into the string data, then the UTF-8 data itself
+ * 	          (every distinct string is stored once, so repeated subjects and credits cost nothing)
+ */
+public class CatalogSnapshot {
+
+	private static final int MAGIC = 0x455A4353; // "EZCS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8*4;
+	private static final int RECORD_FIELDS = 8, RECORD_SIZE = RECORD_FIELDS*4;
+
+	// Field positions within a record
+	private static final int SUBJECT = 0, NUMBER = 1, CREDITS = 2, MAX_CREDITS = 3,
+			TITLE = 4, DESCRIPTION = 5, PREREQS = 6, COREQS = 7;
+
+	private ByteBuffer buf;
+	private int courseCount, stringCount;
+	private int recordsOffset, indexOffset, stringOffsetsOffset, stringDataOffset;
+
+	/**
+	 * Write the given courses to a snapshot file (replacing the file only once fully written).
+	 * @param file Snapshot file.
+	 * @param courses Crawled courses (eg. from Crawler.fullCrawl); every tuple must be a Course.
+	 */
+	public static void write(File file, Collection<? extends Tuple> courses) throws IOException {
+		// Build the string table and records
+		Map<String, Integer> stringIds = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		final List<Course> list = new ArrayList<Course>(courses.size());
+		int[] records = new int[courses.size()*RECORD_FIELDS];
+		int r = 0;
+		for (Tuple t : courses) {
+			if (!(t instanceof Course)) {
+				throw new IllegalArgumentException("Only courses can be written to a catalog snapshot: "+t);
+			}
+			Course c = (Course) t;
+			list.add(c);
+			records[r+SUBJECT] = intern(c.getSubject(), stringIds, strings);
+			records[r+NUMBER] = c.getNumber();
+			records[r+CREDITS] = intern(toText(c.getCredits()), stringIds, strings);
+			records[r+MAX_CREDITS] = intern(toText(c.getMaxCredits()), stringIds, strings);
+			records[r+TITLE] = intern(c.getTitle(), stringIds, strings);
+			records[r+DESCRIPTION] = intern(c.getDescription(), stringIds, strings);
+			records[r+PREREQS] = intern(c.getPrereqs(), stringIds, strings);
+			records[r+COREQS] = intern(c.getCoreqs(), stringIds, strings);
+			r += RECORD_FIELDS;
+		}
+		
+		final byte[][] encoded = new byte[strings.size()][];
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+		}
+		
+		// Index: record numbers in course code order
+		Integer[] index = new Integer[list.size()];
+		for (int i = 0; i < index.length; i++) {
+			index[i] = i;
+		}
+		final int[] fields = records;
+		Arrays.sort(index, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int cmp = compareBytes(encoded[fields[a*RECORD_FIELDS+SUBJECT]], encoded[fields[b*RECORD_FIELDS+SUBJECT]]);
+				return (cmp != 0)? cmp : Integer.compare(fields[a*RECORD_FIELDS+NUMBER], fields[b*RECORD_FIELDS+NUMBER]);
+			}
+		});
+		
+		int recordsOffset = HEADER_SIZE;
+		int indexOffset = recordsOffset + records.length*4;
+		int stringOffsetsOffset = indexOffset + index.length*4;
+		int stringDataOffset = stringOffsetsOffset + (encoded.length+1)*4;
+		
+		File temp = new File(file.getPath()+".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(list.size());
+			out.writeInt(encoded.length);
+			out.writeInt(recordsOffset);
+			out.writeInt(indexOffset);
+			out.writeInt(stringOffsetsOffset);
+			out.writeInt(stringDataOffset);
+			for (int field : records) {
+				out.writeInt(field);
+			}
+			for (Integer record : index) {
+				out.writeInt(record);
+			}
+			int offset = 0;
+			for (byte[] s : encoded) {
+				out.writeInt(offset);
+				offset += s.length;
+			}
+			out.writeInt(offset);
+			for (byte[] s : encoded) {
+				out.write(s);
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Map a snapshot file for reading.
+	 * @param file Snapshot file written by write().
+	 * @return A reader over the mapped file.
+	 */
+	public static CatalogSnapshot open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new CatalogSnapshot(map); // mapping stays valid after the file is closed
+		} finally {
+			raf.close();
+		}
+	}
+
+	private CatalogSnapshot(ByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+			throw new IOException("Not a catalog snapshot.");
+		}
+		if (buf.getInt(4) != VERSION) {
+			throw new IOException("Unsupported catalog snapshot version "+buf.getInt(4)+" (expected "+VERSION+").");
+		}
+		courseCount = buf.getInt(8);
+		stringCount = buf.getInt(12);
+		recordsOffset = buf.getInt(16);
+		indexOffset = buf.getInt(20);
+		stringOffsetsOffset = buf.getInt(24);
+		stringDataOffset = buf.getInt(28);
+	}
+
+	/**
+	 * @return Number of courses in the snapshot.
+	 */
+	public int size() {
+		return courseCount;
+	}
+
+	/**
+	 * @param i Position in crawl order (0 to size()-1).
+	 * @return A Course view of that record (see View).
+	 */
+	public Course get(int i) {
+		if (i < 0 || i >= courseCount) {
+			throw new IndexOutOfBoundsException("Course "+i+" of "+courseCount);
+		}
+		return new View(this, i);
+	}
+
+	/**
+	 * Look up a course by code (binary search over the code index, comparing subjects
+	 * in the mapped string data without decoding them).
+	 * @param subject eg. "COSC"
+	 * @param number eg. 310
+	 * @return A view of the course, or null if not in the snapshot.
+	 */
+	public Course find(String subject, int number) {
+		byte[] subjectBytes = subject.getBytes(StandardCharsets.UTF_8);
+		int low = 0, high = courseCount-1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int record = buf.getInt(indexOffset + mid*4);
+			int cmp = compareSubject(field(record, SUBJECT), subjectBytes);
+			if (cmp == 0) {
+				cmp = Integer.compare(field(record, NUMBER), number);
+			}
+			if (cmp < 0) {
+				low = mid+1;
+			} else if (cmp > 0) {
+				high = mid-1;
+			} else {
+				return get(record);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Every course as views, in crawl order (a list over the snapshot; nothing is copied).
+	 */
+	public List<Tuple> asList() {
+		return new AbstractList<Tuple>() {
+			@Override
+			public Tuple get(int i) {
+				return CatalogSnapshot.this.get(i);
+			}
+
+			@Override
+			public int size() {
+				return courseCount;
+			}
+		};
+	}
+
+	/**
+	 * Every course (in crawl order) as views in a list of its own, eg. to hand to code expecting Crawler output.
+	 * @return The full course list.
+	 */
+	public ArrayList<Tuple> toList() {
+		return new ArrayList<Tuple>(asList());
+	}
+
+	private int field(int record, int field) {
+		return buf.getInt(recordsOffset + record*RECORD_SIZE + field*4);
+	}
+
+	private String string(int id) {
+		if (id < 0) return null;
+		int start = buf.getInt(stringOffsetsOffset + id*4), end = buf.getInt(stringOffsetsOffset + (id+1)*4);
+		byte[] bytes = new byte[end - start];
+		ByteBuffer view = buf.duplicate();
+		view.position(stringDataOffset + start);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private BigDecimal decimal(int id) {
+		String text = string(id);
+		return (text == null)? null : new BigDecimal(text);
+	}
+
+	/**
+	 * Compare a stored string with the given UTF-8 bytes, byte by byte (unsigned) in the mapped data.
+	 */
+	private int compareSubject(int id, byte[] bytes) {
+		int start = stringDataOffset + buf.getInt(stringOffsetsOffset + id*4);
+		int length = stringDataOffset + buf.getInt(stringOffsetsOffset + (id+1)*4) - start;
+		for (int i = 0; i < Math.min(length, bytes.length); i++) {
+			int cmp = Integer.compare(buf.get(start+i) & 0xFF, bytes[i] & 0xFF);
+			if (cmp != 0) return cmp;
+		}
+		return Integer.compare(length, bytes.length);
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+			if (cmp != 0) return cmp;
+		}
+		return Integer.compare(a.length, b.length);
+	}
+
+	private static String toText(BigDecimal d) {
+		return (d == null)? null : d.toString();
+	}
+
+	private static int intern(String s, Map<String, Integer> ids, List<String> strings) {
+		if (s == null) return -1;
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.size();
+			strings.add(s);
+			ids.put(s, id);
+		}
+		return id;
+	}
+
+	/**
+	 * A course backed by one record of a snapshot (its own fields are left empty):
+	 * each getter reads its field from the mapped file when called.
+	 */
+	private static class View extends Course {
+		private final CatalogSnapshot snapshot;
+		private final int record;
+
+		View(CatalogSnapshot snapshot, int record) {
+			this.snapshot = snapshot;
+			this.record = record;
+		}
+
+		@Override
+		String getSubject() {
+			return snapshot.string(snapshot.field(record, SUBJECT));
+		}
+
+		@Override
+		int getNumber() {
+			return snapshot.field(record, NUMBER);
+		}
+
+		@Override
+		String getCourseCode() {
+			return getSubject()+" "+getNumber();
+		}
+
+		@Override
+		BigDecimal getCredits() {
+			return snapshot.decimal(snapshot.field(record, CREDITS));
+		}
+
+		@Override
+		BigDecimal getMaxCredits() {
+			return snapshot.decimal(snapshot.field(record, MAX_CREDITS));
+		}
+
+		@Override
+		String getTitle() {
+			return snapshot.string(snapshot.field(record, TITLE));
+		}
+
+		@Override
+		String getDescription() {
+			return snapshot.string(snapshot.field(record, DESCRIPTION));
+		}
+
+		@Override
+		String getPrereqs() {
+			return snapshot.string(snapshot.field(record, PREREQS));
+		}
+
+		@Override
+		String getCoreqs() {
+			return snapshot.string(snapshot.field(record, COREQS));
+		}
+	}
+}
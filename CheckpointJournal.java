@@ -0,0 +1,137 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EZ-Plan
+ * Append-only journal of completed subjects, so an interrupted crawl can resume where it stopped.
+ * Each subject is written as its parsed courses followed by a commit line, and synced to disk:
+ * 	C	[course values, TSV-escaped]
+ * 	C	...
+ * 	S	[subject code]
+ * On opening, committed subjects are read back, and anything after the last commit line
+ * (a subject that was being written when the crawl died) is cut off.
+ * Delete the journal once a crawl has finished (see delete()), so the next crawl starts fresh.
+ */
+public class CheckpointJournal implements AutoCloseable {
+
+	private File file;
+	private Map<String, List<Course>> completed;
+	private FileOutputStream stream;
+	private Writer out;
+
+	/**
+	 * Open (or create) a journal, replaying the subjects it has committed.
+	 * @param file Journal file.
+	 */
+	public CheckpointJournal(File file) throws IOException {
+		this.file = file;
+		completed = new LinkedHashMap<String, List<Course>>();
+		long validLength = 0, previousLength = 0;
+		String lastSubject = null;
+		
+		if (file.isFile()) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				List<Course> pending = new ArrayList<Course>();
+				long position = 0;
+				String line;
+				while ((line = in.readLine()) != null) {
+					position += line.getBytes(StandardCharsets.UTF_8).length + 1;
+					if (line.startsWith("C\t")) {
+						pending.add(Course.fromValues(TsvFormat.split(line.substring(2))));
+					} else if (line.startsWith("S\t")) {
+						lastSubject = TsvFormat.unescape(line.substring(2));
+						completed.put(lastSubject, pending);
+						pending = new ArrayList<Course>();
+						previousLength = validLength;
+						validLength = position;
+					} else {
+						break; // torn write; nothing after this can be trusted
+					}
+				}
+			} catch (RuntimeException e) {
+				// A half-written course line; keep what was committed before it
+			} finally {
+				in.close();
+			}
+		}
+		
+		// A commit line only counts once its newline is on disk
+		if (validLength > file.length()) {
+			completed.remove(lastSubject);
+			validLength = previousLength;
+		}
+		
+		stream = new FileOutputStream(file, true);
+		stream.getChannel().truncate(validLength);
+		out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return True if the subject was completed by an earlier (or this) crawl.
+	 */
+	public synchronized boolean isCompleted(String subjectCode) {
+		return completed.containsKey(subjectCode);
+	}
+
+	/**
+	 * @return The courses recorded for a completed subject (in page order), or null if not completed.
+	 */
+	public synchronized List<Course> getCourses(String subjectCode) {
+		List<Course> courses = completed.get(subjectCode);
+		return (courses == null)? null : Collections.unmodifiableList(courses);
+	}
+
+	/**
+	 * @return Number of completed subjects.
+	 */
+	public synchronized int size() {
+		return completed.size();
+	}
+
+	/**
+	 * Record a completed subject and its courses, and make sure it has reached the disk.
+	 * @param subjectCode
+	 * @param courses The courses parsed from its page.
+	 */
+	public synchronized void commit(String subjectCode, List<Course> courses) throws IOException {
+		StringBuilder record = new StringBuilder();
+		for (Course c : courses) {
+			record.append("C\t").append(TsvFormat.join(c.getValues())).append('\n');
+		}
+		record.append("S\t").append(TsvFormat.escape(subjectCode)).append('\n');
+		out.write(record.toString());
+		out.flush();
+		FileChannel channel = stream.getChannel();
+		channel.force(false);
+		completed.put(subjectCode, new ArrayList<Course>(courses));
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Close and remove the journal (once the crawl it covers has finished).
+	 */
+	public synchronized void delete() throws IOException {
+		close();
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Could not delete checkpoint journal "+file);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EZ-Plan
+ * Memory-compact, read-only store for a crawled catalog. Instead of one object per course
+ * (with its own BigDecimals and its own copy of the subject string), courses live in
+ * primitive columns:
+ * 	- subjects interned into a small dictionary, with course codes packed into one int
+ * 	  (subject ID in the high 16 bits, course number in the low 16)
+ * 	- credits and max credits as fixed-point tenths (plus the scale they were written with,
+ * 	  so "3" and "3.0" come back exactly as crawled)
+ * 	- title, description and requisite text as shared string columns (identical text stored once)
+ * get(i) hands out a lightweight Course view over one row; views are just (catalog, row)
+ * and read the columns on demand, so they can be used anywhere a Course or Tuple is expected.
+ */
+public class CompactCatalog {
+
+	// Subject dictionary
+	private String[] subjects;
+	private Map<String, Integer> subjectIds;
+
+	// One entry per course
+	private int size;
+	private int[] codes;
+	private int[] credits, maxCredits;
+	private byte[] creditScales, maxCreditScales;
+	private String[] titles, descriptions, prereqs, coreqs;
+
+	/**
+	 * Build a compact copy of the given courses (in the same order).
+	 * @param catalog Crawled courses (non-course tuples are ignored).
+	 */
+	public CompactCatalog(Collection<? extends Tuple> catalog) {
+		int capacity = catalog.size();
+		codes = new int[capacity];
+		credits = new int[capacity];
+		maxCredits = new int[capacity];
+		creditScales = new byte[capacity];
+		maxCreditScales = new byte[capacity];
+		titles = new String[capacity];
+		descriptions = new String[capacity];
+		prereqs = new String[capacity];
+		coreqs = new String[capacity];
+		
+		List<String> subjectList = new ArrayList<String>();
+		subjectIds = new HashMap<String, Integer>();
+		Map<String, String> text = new HashMap<String, String>(); // shares identical strings between rows
+		for (Tuple t : catalog) {
+			if (!(t instanceof Course)) continue;
+			Course c = (Course) t;
+			Integer id = subjectIds.get(c.getSubject());
+			if (id == null) {
+				if (subjectList.size() > 0xFFFF) {
+					throw new IllegalArgumentException("Too many subjects for a compact catalog.");
+				}
+				id = subjectList.size();
+				subjectList.add(c.getSubject());
+				subjectIds.put(c.getSubject(), id);
+			}
+			if (c.getNumber() < 0 || c.getNumber() > 0xFFFF) {
+				throw new IllegalArgumentException("Course number out of range: "+c.getCourseCode());
+			}
+			codes[size] = (id << 16) | c.getNumber();
+			credits[size] = toTenths(c.getCredits(), c);
+			creditScales[size] = (byte) c.getCredits().scale();
+			maxCredits[size] = toTenths(c.getMaxCredits(), c);
+			maxCreditScales[size] = (byte) c.getMaxCredits().scale();
+			titles[size] = share(c.getTitle(), text);
+			descriptions[size] = share(c.getDescription(), text);
+			prereqs[size] = share(c.getPrereqs(), text);
+			coreqs[size] = share(c.getCoreqs(), text);
+			size++;
+		}
+		subjects = subjectList.toArray(new String[subjectList.size()]);
+	}
+
+	/**
+	 * @return Number of courses stored.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return A Course view of the given row.
+	 */
+	public Course get(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Course "+row+" of "+size);
+		}
+		return new View(this, row);
+	}
+
+	/**
+	 * @return Every course as views, in the original order (eg. to pass to MySQLTableInput or RequirementEngine).
+	 */
+	public List<Tuple> asList() {
+		return new AbstractList<Tuple>() {
+			@Override
+			public Tuple get(int row) {
+				return CompactCatalog.this.get(row);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return Packed code of a row: subject ID in the high 16 bits, course number in the low 16.
+	 */
+	public int getPackedCode(int row) {
+		return codes[row];
+	}
+
+	/**
+	 * @param subject Subject code, eg. "COSC".
+	 * @return Its dictionary ID, or -1 if no course has that subject.
+	 */
+	public int subjectId(String subject) {
+		Integer id = subjectIds.get(subject);
+		return (id == null)? -1 : id;
+	}
+
+	/**
+	 * @return Credits of a row, in tenths (eg. 30 for 3 credits).
+	 */
+	public int getCreditTenths(int row) {
+		return credits[row];
+	}
+
+	private static int toTenths(BigDecimal value, Course c) {
+		if (value == null) {
+			throw new IllegalArgumentException("Course without credits: "+c.getCourseCode());
+		}
+		try {
+			return value.movePointRight(1).intValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Credits not representable in tenths: "+c.getCourseCode()+" ("+value+")", e);
+		}
+	}
+
+	private static BigDecimal fromTenths(int tenths, byte scale) {
+		return BigDecimal.valueOf(tenths, 1).setScale(scale);
+	}
+
+	private static String share(String s, Map<String, String> text) {
+		if (s == null) return null;
+		String shared = text.get(s);
+		if (shared == null) {
+			text.put(s, s);
+			shared = s;
+		}
+		return shared;
+	}
+
+	/**
+	 * A course backed by one row of a compact catalog (its own fields are left empty).
+	 */
+	private static class View extends Course {
+		private final CompactCatalog catalog;
+		private final int row;
+
+		View(CompactCatalog catalog, int row) {
+			this.catalog = catalog;
+			this.row = row;
+		}
+
+		@Override
+		String getSubject() {
+			return catalog.subjects[catalog.codes[row] >>> 16];
+		}
+
+		@Override
+		int getNumber() {
+			return catalog.codes[row] & 0xFFFF;
+		}
+
+		@Override
+		String getCourseCode() {
+			return getSubject()+" "+getNumber();
+		}
+
+		@Override
+		BigDecimal getCredits() {
+			return fromTenths(catalog.credits[row], catalog.creditScales[row]);
+		}
+
+		@Override
+		BigDecimal getMaxCredits() {
+			return fromTenths(catalog.maxCredits[row], catalog.maxCreditScales[row]);
+		}
+
+		@Override
+		String getTitle() {
+			return catalog.titles[row];
+		}
+
+		@Override
+		String getDescription() {
+			return catalog.descriptions[row];
+		}
+
+		@Override
+		String getPrereqs() {
+			return catalog.prereqs[row];
+		}
+
+		@Override
+		String getCoreqs() {
+			return catalog.coreqs[row];
+		}
+	}
+}
@@ -0,0 +1,231 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Small pool of reusable JDBC connections, so that several table loads in one run
+ * (or several runs in one process) share connections instead of redoing the
+ * connect/authenticate handshake each time. Prepared statements are also cached per
+ * connection, keyed by their SQL, and reused whenever the same statement is prepared again.
+ *
+ * Any JDBC URL works (including an embedded MySQL-compatible database for testing);
+ * driver options such as "rewriteBatchedStatements" should be included in the URL.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	static {
+		// Older drivers do not register themselves; newer ones (and other databases) don't need this.
+		try {
+			Class.forName("com.mysql.jdbc.Driver");
+		} catch (ClassNotFoundException e) {
+			// Not on the classpath; rely on whichever driver handles the URL.
+		}
+	}
+
+	private String url, user, pass;
+	private int maxSize;
+
+	// Connections not currently lent out, and every open connection with its statement cache
+	private ArrayDeque<Connection> idle;
+	private Map<Connection, Map<String, PreparedStatement>> statements;
+	// Connections being opened (counted against maxSize, but not in statements yet)
+	private int opening;
+	private boolean closed;
+
+	/**
+	 * Sets up a pool (connections are only opened when first needed).
+	 * @param url JDBC URL of the database.
+	 * @param user
+	 * @param pass
+	 * @param maxSize Most connections open at once; borrowers wait beyond that.
+	 */
+	public ConnectionPool(String url, String user, String pass, int maxSize) {
+		this.url = url;
+		this.user = user;
+		this.pass = pass;
+		this.maxSize = Math.max(1, maxSize);
+		idle = new ArrayDeque<Connection>();
+		statements = new IdentityHashMap<Connection, Map<String, PreparedStatement>>();
+	}
+
+	/**
+	 * Take a connection from the pool, opening a new one if none are idle (or waiting if the pool is full).
+	 * Give it back with release() when done.
+	 * (Connecting and checking idle connections happen outside the pool's lock, so a slow server
+	 * only holds up the borrower talking to it.)
+	 * @return An open connection, in autocommit mode.
+	 */
+	public Connection borrow() throws SQLException {
+		while (true) {
+			Connection con;
+			synchronized (this) {
+				while (true) {
+					if (closed) {
+						throw new SQLException("Connection pool is closed.");
+					}
+					con = idle.poll();
+					if (con != null) {
+						break;
+					}
+					if (statements.size() + opening < maxSize) {
+						opening++;
+						break;
+					}
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted waiting for a connection.", e);
+					}
+				}
+			}
+			if (con == null) {
+				return open();
+			}
+			// Drop connections that went stale while idle (eg. server timeout)
+			if (isValid(con)) {
+				return con;
+			}
+			discard(con);
+		}
+	}
+
+	/**
+	 * Open a new connection, in the place reserved for it (by counting it in opening).
+	 */
+	private Connection open() throws SQLException {
+		Connection con = null;
+		boolean keep = false;
+		try {
+			con = DriverManager.getConnection(url, user, pass);
+			synchronized (this) {
+				if (!closed) {
+					statements.put(con, new HashMap<String, PreparedStatement>());
+					keep = true;
+				}
+			}
+			if (!keep) {
+				throw new SQLException("Connection pool is closed.");
+			}
+			return con;
+		} finally {
+			synchronized (this) {
+				opening--;
+				notifyAll();
+			}
+			if (con != null && !keep) {
+				close(con, null);
+			}
+		}
+	}
+
+	private static boolean isValid(Connection con) {
+		try {
+			return con.isValid(2);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return a borrowed connection to the pool.
+	 * @param con Connection from borrow().
+	 */
+	public void release(Connection con) {
+		synchronized (this) {
+			if (con == null || !statements.containsKey(con)) return;
+		}
+		try {
+			if (!con.getAutoCommit()) {
+				con.rollback(); // never hand on someone else's half-finished transaction
+				con.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			discard(con);
+			return;
+		}
+		synchronized (this) {
+			if (!closed) {
+				idle.push(con);
+				notifyAll();
+				return;
+			}
+		}
+		discard(con);
+	}
+
+	/**
+	 * Prepare a statement on a borrowed connection, reusing the cached one if this SQL was prepared before.
+	 * The statement stays owned by the pool (do not close it); its parameters and batch are cleared first.
+	 * @param con Connection from borrow().
+	 * @param sql
+	 * @return A ready-to-use prepared statement.
+	 */
+	public PreparedStatement prepare(Connection con, String sql) throws SQLException {
+		// The cache itself is only used by whoever has the connection; just looking it up needs the lock
+		Map<String, PreparedStatement> cache;
+		synchronized (this) {
+			cache = statements.get(con);
+		}
+		if (cache == null) {
+			return con.prepareStatement(sql); // not one of ours; nothing to cache with
+		}
+		PreparedStatement pstat = cache.get(sql);
+		if (pstat == null || pstat.isClosed()) {
+			pstat = con.prepareStatement(sql);
+			cache.put(sql, pstat);
+		} else {
+			pstat.clearParameters();
+			pstat.clearBatch();
+		}
+		return pstat;
+	}
+
+	/**
+	 * Close every idle connection; connections still lent out are closed when released.
+	 */
+	@Override
+	public void close() {
+		ArrayDeque<Connection> closing;
+		synchronized (this) {
+			closed = true;
+			closing = new ArrayDeque<Connection>(idle);
+			idle.clear();
+			notifyAll();
+		}
+		for (Connection con : closing) {
+			discard(con);
+		}
+	}
+
+	/**
+	 * Forget about a connection (making room for another), then close it and its cached statements.
+	 */
+	private void discard(Connection con) {
+		Map<String, PreparedStatement> cache;
+		synchronized (this) {
+			cache = statements.remove(con);
+			notifyAll();
+		}
+		close(con, cache);
+	}
+
+	private static void close(Connection con, Map<String, PreparedStatement> cache) {
+		try {
+			if (cache != null) {
+				for (PreparedStatement pstat : cache.values()) {
+					pstat.close();
+				}
+			}
+			con.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
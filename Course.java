@@ -1,4 +1,6 @@
 import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Arrays;
 
 /**
  * EZ-Plan
@@ -27,7 +29,8 @@ public class Course implements Tuple {
 	private String title, description;
 	
 	// Pre-reqs and co-reqs; plain text for database storage,
-	// but to be parsed on server end during schedule building.
+	// but to be parsed on server end during schedule building
+	// (or in memory, by PrerequisiteExpression/PrerequisiteGraph).
 	// NOTE: does not include "credit will not be granted
 	// for both..." restrictions (which are in description element).
 	private String prereqs, coreqs; 
@@ -45,6 +48,21 @@ public class Course implements Tuple {
 		this.prereqs = pre;
 		this.coreqs = co;
 	}
+	/**
+	 * Rebuild a course from its tuple values (the inverse of getValues()).
+	 * @param values Values in getColumns() order (the derived columns after coreq may be left off).
+	 * @return The course.
+	 */
+	public static Course fromValues(String[] values) {
+		String code = values[0];
+		int split = code.indexOf(' ');
+		return new Course(
+				code.substring(0, split),
+				Integer.parseInt(code.substring(split+1)),
+				(values[2] == null)? null : new BigDecimal(values[2]),
+				(values[3] == null)? null : new BigDecimal(values[3]),
+				values[1], values[4], values[5], values[6]);
+	}
 	/**
 	 * Blank course constructor. Only should be used for dummy entries.
 	 */
@@ -65,6 +83,12 @@ public class Course implements Tuple {
 	String getCourseCode() { // mix of subject and number, eg. "COSC 310"
 		return (subject+" "+number);
 	}
+	BigDecimal getCredits() {
+		return credits;
+	}
+	BigDecimal getMaxCredits() {
+		return maxCredits;
+	}
 	String getTitle() {
 		return title;
 	}
@@ -86,26 +110,53 @@ public class Course implements Tuple {
 	public String toString() {
 		String ret =
 				getCourseCode()+"\t"
-				+ title+"\t"
-				+ description+"\t"
-				+ prereqs+"\t"+coreqs;
+				+ getTitle()+"\t"
+				+ getDescription()+"\t"
+				+ getPrereqs()+"\t"+getCoreqs();
 		return ret;
 	}
 	
+	/**
+	 * Columns (read through the getters, so that views such as CompactCatalog's can supply
+	 * them without filling in the fields), key, DDL and statements for course tuples.
+	 */
+	static final TupleSchema<Course> SCHEMA = new TupleSchema<Course>(Course.class, "Course",
+			"CREATE TABLE Course ( "
+				+ "cname VARCHAR(10), "
+				+ "title VARCHAR(100), "
+				+ "credits DECIMAL(3,1), "
+				+ "maxcredits DECIMAL(3,1), "
+				+ "description VARCHAR(1000), "
+				+ "prereq VARCHAR(500), "
+				+ "coreq VARCHAR(500), "
+				+ "subject VARCHAR(4), "
+				+ "number SMALLINT, "
+				+ "level TINYINT, "
+				+ "PRIMARY KEY(cname), "
+				+ "INDEX(subject, level, number), "
+				+ "INDEX(level, number) "
+				+ "); ",
+			new String[] {"cname"},
+			Arrays.asList(
+				new TupleSchema.Column<Course>("cname", Types.VARCHAR, Course::getCourseCode),
+				new TupleSchema.Column<Course>("title", Types.VARCHAR, Course::getTitle),
+				new TupleSchema.Column<Course>("credits", Types.DECIMAL, Course::getCredits),
+				new TupleSchema.Column<Course>("maxcredits", Types.DECIMAL, Course::getMaxCredits),
+				new TupleSchema.Column<Course>("description", Types.VARCHAR, Course::getDescription), // cannot use "desc" as it is a MySQL reserved word
+				new TupleSchema.Column<Course>("prereq", Types.VARCHAR, Course::getPrereqs),
+				new TupleSchema.Column<Course>("coreq", Types.VARCHAR, Course::getCoreqs),
+				// Derived from cname, so requirement conditions can use indexes
+				// (see RequirementCondition.toIndexedPredicate)
+				new TupleSchema.Column<Course>("subject", Types.VARCHAR, Course::getSubject),
+				new TupleSchema.Column<Course>("number", Types.SMALLINT, Course::getNumber),
+				new TupleSchema.Column<Course>("level", Types.TINYINT, c -> c.getNumber()/100)));
+	
 	/**
 	 * Gets the column names of the course tuple.
 	 */
 	@Override
 	public String[] getColumns() {
-		return new String[] {
-				"cname", 
-				"title", 
-				"credits", 
-				"maxcredits", 
-				"description", // cannot use "desc" as it is a MySQL reserved word
-				"prereq", 
-				"coreq"
-				};
+		return SCHEMA.getColumns().clone();
 	}
 	
 	/**
@@ -117,15 +168,7 @@ public class Course implements Tuple {
 		// we come up with logic to parse it properly. Faculty probably
 		// not necessary as it wouldn't be referenced consistently anyways,
 		// so a mapping (within crawler project or in PHP) would be more useful instead.
-		return new String[] {
-				getCourseCode(), 
-				title, 
-				credits.toString(),
-				maxCredits.toString(),
-				description, 
-				prereqs, 
-				coreqs
-				};
+		return SCHEMA.valuesOf(this);
 	}
 
 	/**
@@ -133,17 +176,7 @@ public class Course implements Tuple {
 	 */
 	@Override
 	public String getTableDDL() {
-		String ddl = "CREATE TABLE Course ( "
-				+ "cname VARCHAR(10), "
-				+ "title VARCHAR(100), "
-				+ "credits DECIMAL(3,1), "
-				+ "maxcredits DECIMAL(3,1), "
-				+ "description VARCHAR(1000), "
-				+ "prereq VARCHAR(500), "
-				+ "coreq VARCHAR(500), "
-				+ "PRIMARY KEY(cname) "
-				+ "); ";
-		return ddl;
+		return SCHEMA.getTableDDL();
 	}
 
 	/**
@@ -151,13 +184,12 @@ public class Course implements Tuple {
 	 */
 	@Override
 	public String getTableTitle() {
-		return "Course";
+		return SCHEMA.getTableTitle();
 	}
 
 	@Override
 	public String[] getKeyHeadings() {
-		// TODO Auto-generated method stub
-		return new String[] {"cname"};
+		return SCHEMA.getKeyHeadings().clone();
 	}
 
 
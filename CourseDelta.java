@@ -0,0 +1,64 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EZ-Plan
+ * Changes to the course catalog found by an incremental crawl,
+ * keyed by course code (see Course.getCourseCode()).
+ */
+public class CourseDelta {
+
+	private List<Course> added, modified;
+	private List<String> removed;
+
+	public CourseDelta() {
+		added = new ArrayList<Course>();
+		modified = new ArrayList<Course>();
+		removed = new ArrayList<String>();
+	}
+
+	void addAdded(Course c) {
+		added.add(c);
+	}
+
+	void addModified(Course c) {
+		modified.add(c);
+	}
+
+	void addRemoved(String courseCode) {
+		removed.add(courseCode);
+	}
+
+	/**
+	 * @return Courses not seen by the previous crawl.
+	 */
+	public List<Course> getAdded() {
+		return added;
+	}
+
+	/**
+	 * @return Courses whose values changed since the previous crawl.
+	 */
+	public List<Course> getModified() {
+		return modified;
+	}
+
+	/**
+	 * @return Codes of courses that are no longer in the calendar.
+	 */
+	public List<String> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @return True if nothing changed.
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "added="+added.size()+", modified="+modified.size()+", removed="+removed.size();
+	}
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+
+/**
+ * EZ-Plan
+ * Reads a course sublist page as a stream of characters, and hands back the markup of one
+ * course entry at a time: a <dt> and the <dd> after it, up to the </dd> (or, where the page
+ * leaves the </dd> out, up to the next <dt> or the end of the list).
+ * Everything between entries is skipped as it is read, so no more than one entry of the page
+ * is ever held in memory, however large the page is.
+ */
+public class CourseEntryScanner {
+
+	private PushbackReader in;
+
+	// A <dt> tag that ended the previous entry, and so starts the next one
+	private String pendingTag;
+
+	/**
+	 * @param in The page (eg. straight from the response body); buffer it if it isn't already.
+	 */
+	public CourseEntryScanner(Reader in) {
+		this.in = new PushbackReader(in, 1);
+	}
+
+	/**
+	 * Read up to the end of the next course entry.
+	 * @return The entry's markup (eg. "<dt>...</dt>\n<dd>...</dd>"), or null at the end of the page.
+	 */
+	public String nextEntry() throws IOException {
+		StringBuilder entry = null;
+		if (pendingTag != null) {
+			entry = new StringBuilder(pendingTag);
+			pendingTag = null;
+		}
+		int ch;
+		while ((ch = in.read()) >= 0) {
+			if (ch != '<') {
+				if (entry != null) entry.append((char) ch);
+				continue;
+			}
+			String tag = readTag();
+			String name = tagName(tag);
+			if (entry == null) {
+				// Between entries: only look for the start of the next one
+				if ("dt".equals(name)) {
+					entry = new StringBuilder(tag);
+				} else if ("script".equals(name) || "style".equals(name)) {
+					skipRawText(name); // (may contain anything, including "<dt>")
+				}
+				continue;
+			}
+			if ("dt".equals(name)) {
+				pendingTag = tag; // a new entry begins, so this one is over
+				return entry.toString();
+			}
+			if ("/dl".equals(name)) {
+				return entry.toString();
+			}
+			entry.append(tag);
+			if ("/dd".equals(name)) {
+				return entry.toString();
+			}
+		}
+		return (entry == null)? null : entry.toString();
+	}
+
+	/**
+	 * Read the rest of a tag, comment or declaration (the '<' has already been read).
+	 * @return Its markup, or just "<" if the '<' doesn't start one.
+	 */
+	private String readTag() throws IOException {
+		int ch = in.read();
+		if (ch < 0) return "<";
+		if (!(Character.isLetter(ch) || ch == '/' || ch == '!' || ch == '?')) {
+			in.unread(ch);
+			return "<";
+		}
+		StringBuilder tag = new StringBuilder("<").append((char) ch);
+
+		// Comments run to "-->" whatever they contain
+		if (ch == '!') {
+			int next = in.read();
+			if (next >= 0) tag.append((char) next);
+			if (next == '-') {
+				while ((ch = in.read()) >= 0) {
+					tag.append((char) ch);
+					int length = tag.length();
+					if (ch == '>' && length >= 7 && tag.charAt(length-2) == '-' && tag.charAt(length-3) == '-') {
+						return tag.toString();
+					}
+				}
+				return tag.toString();
+			}
+			if (next == '>') return tag.toString();
+		}
+
+		// Anything else runs to the first '>' outside quotes
+		char quote = 0;
+		while ((ch = in.read()) >= 0) {
+			tag.append((char) ch);
+			if (quote != 0) {
+				if (ch == quote) quote = 0;
+			} else if (ch == '"' || ch == '\'') {
+				quote = (char) ch;
+			} else if (ch == '>') {
+				break;
+			}
+		}
+		return tag.toString();
+	}
+
+	/**
+	 * @return A tag's name in lower case, with a leading '/' for end tags (eg. "dt", "/dd"),
+	 * or null if it isn't a start or end tag.
+	 */
+	private static String tagName(String tag) {
+		int start = 1, end;
+		if (tag.length() > 1 && tag.charAt(1) == '/') start = 2;
+		for (end = start; end < tag.length(); end++) {
+			char ch = tag.charAt(end);
+			if (!Character.isLetterOrDigit(ch)) break;
+		}
+		if (end == start || !Character.isLetter(tag.charAt(start))) return null;
+		return ((start == 2)? "/" : "")+tag.substring(start, end).toLowerCase();
+	}
+
+	/**
+	 * Skip the contents of a script or style element, up to its end tag.
+	 */
+	private void skipRawText(String name) throws IOException {
+		String end = "</"+name;
+		int matched = 0, ch;
+		while ((ch = in.read()) >= 0) {
+			if (Character.toLowerCase(ch) == end.charAt(matched)) {
+				if (++matched == end.length()) return;
+			} else {
+				matched = (ch == '<')? 1 : 0;
+			}
+		}
+	}
+}
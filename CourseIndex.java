@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * EZ-Plan
+ * Read-only index over a crawled catalog for structural questions such as
+ * "all 3rd/4th-year COSC courses" or "3-credit courses in Faculties.ARTS_SUBJECTS".
+ * Subjects are numbered once; each subject keeps its courses sorted by number, so a
+ * year-level range is a binary search and a contiguous slice, and credits are kept
+ * as a primitive column (in tenths) checked along the way. Queries walk these arrays
+ * directly and report matches through a callback, without building intermediate lists.
+ *
+ * Courses are referred to by row (their position in the catalog given to the constructor).
+ */
+public class CourseIndex {
+
+	/**
+	 * Bounds meaning "no limit" for year levels and credits.
+	 */
+	public static final int ANY_MIN = Integer.MIN_VALUE, ANY_MAX = Integer.MAX_VALUE;
+
+	private List<Course> courses;
+	private int[] creditTenths;
+
+	// Subject code -> subject ID, and per subject ID: course numbers (sorted) and their rows
+	private Map<String, Integer> subjectIds;
+	private String[] subjects;
+	private int[][] numbers, rows;
+	
+	// Rows by year level (first digit of a 3-digit course number; numbers outside 100-999 are clamped)
+	private int[][] levelRows;
+
+	/**
+	 * Index the given catalog.
+	 * @param catalog Crawled courses (non-course tuples are ignored).
+	 */
+	public CourseIndex(Collection<? extends Tuple> catalog) {
+		courses = new ArrayList<Course>(catalog.size());
+		for (Tuple t : catalog) {
+			if (t instanceof Course) {
+				courses.add((Course) t);
+			}
+		}
+		int n = courses.size();
+		creditTenths = new int[n];
+		
+		// Count per subject and per level first, so every array is allocated at its final size
+		subjectIds = new HashMap<String, Integer>();
+		List<String> subjectList = new ArrayList<String>();
+		int[] subjectOf = new int[n];
+		int[] subjectCounts = new int[n+1], levelCounts = new int[10];
+		for (int row = 0; row < n; row++) {
+			Course c = courses.get(row);
+			Integer id = subjectIds.get(c.getSubject());
+			if (id == null) {
+				id = subjectList.size();
+				subjectIds.put(c.getSubject(), id);
+				subjectList.add(c.getSubject());
+			}
+			subjectOf[row] = id;
+			subjectCounts[id]++;
+			levelCounts[level(c.getNumber())]++;
+			creditTenths[row] = (c.getCredits() == null)? 0 : c.getCredits().movePointRight(1).intValue();
+		}
+		subjects = subjectList.toArray(new String[subjectList.size()]);
+		
+		numbers = new int[subjects.length][];
+		rows = new int[subjects.length][];
+		for (int s = 0; s < subjects.length; s++) {
+			numbers[s] = new int[subjectCounts[s]];
+			rows[s] = new int[subjectCounts[s]];
+		}
+		levelRows = new int[10][];
+		for (int l = 0; l < 10; l++) {
+			levelRows[l] = new int[levelCounts[l]];
+		}
+		int[] subjectFill = new int[subjects.length], levelFill = new int[10];
+		for (int row = 0; row < n; row++) {
+			int s = subjectOf[row], l = level(courses.get(row).getNumber());
+			numbers[s][subjectFill[s]] = courses.get(row).getNumber();
+			rows[s][subjectFill[s]++] = row;
+			levelRows[l][levelFill[l]++] = row;
+		}
+		for (int s = 0; s < subjects.length; s++) {
+			sortByNumber(numbers[s], rows[s]);
+		}
+	}
+
+	/**
+	 * @return Number of courses indexed.
+	 */
+	public int size() {
+		return courses.size();
+	}
+
+	/**
+	 * @return The course at the given row.
+	 */
+	public Course get(int row) {
+		return courses.get(row);
+	}
+
+	/**
+	 * @param subject Subject code, eg. "COSC".
+	 * @return Its ID, or -1 if no indexed course has that subject.
+	 */
+	public int subjectId(String subject) {
+		Integer id = subjectIds.get(subject);
+		return (id == null)? -1 : id;
+	}
+
+	/**
+	 * IDs of a group of subjects (eg. Faculties.ARTS_SUBJECTS), skipping any not in the catalog.
+	 * Look a group up once and reuse the result for repeated queries.
+	 */
+	public int[] subjectIds(Subject[] group) {
+		int[] ids = new int[group.length];
+		int count = 0;
+		for (Subject subject : group) {
+			int id = subjectId(subject.code);
+			if (id >= 0) ids[count++] = id;
+		}
+		return Arrays.copyOf(ids, count);
+	}
+
+	/**
+	 * Report every course matching all of the given constraints.
+	 * @param subjectIds Subjects to include (see subjectIds), or null for every subject.
+	 * @param minLevel, maxLevel Year levels to include (eg. 3 and 4), or ANY_MIN/ANY_MAX.
+	 * @param minCredits, maxCredits Credit range in tenths (eg. 30 for 3 credits), or ANY_MIN/ANY_MAX.
+	 * @param action Called with the row of each match (in subject, then number, order when
+	 * 		subjects are given; otherwise by level, then catalog order).
+	 * @return The number of matches.
+	 */
+	public int forEach(int[] subjectIds, int minLevel, int maxLevel, int minCredits, int maxCredits, IntConsumer action) {
+		int count = 0;
+		if (subjectIds == null) {
+			// No subject constraint: walk the level buckets in range
+			int fromLevel = Math.max(minLevel, 0), toLevel = Math.min(maxLevel, 9);
+			for (int l = fromLevel; l <= toLevel; l++) {
+				for (int row : levelRows[l]) {
+					int credits = creditTenths[row];
+					if (credits >= minCredits && credits <= maxCredits) {
+						if (action != null) action.accept(row);
+						count++;
+					}
+				}
+			}
+			return count;
+		}
+		
+		// Level range as a course number range (binary searched within each subject's sorted numbers)
+		// (consistent with level(): below 100 is level 0, 1000 and up is level 9)
+		if (minLevel > 9 || maxLevel < 0 || minLevel > maxLevel) return 0;
+		int fromNumber = (minLevel <= 0)? Integer.MIN_VALUE : minLevel*100;
+		int toNumber = (maxLevel >= 9)? Integer.MAX_VALUE : maxLevel*100 + 99;
+		for (int s : subjectIds) {
+			int[] subjectNumbers = numbers[s], subjectRows = rows[s];
+			for (int i = lowerBound(subjectNumbers, fromNumber); i < subjectNumbers.length && subjectNumbers[i] <= toNumber; i++) {
+				int row = subjectRows[i];
+				int credits = creditTenths[row];
+				if (credits >= minCredits && credits <= maxCredits) {
+					if (action != null) action.accept(row);
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Count the courses matching the given constraints (see forEach).
+	 */
+	public int count(int[] subjectIds, int minLevel, int maxLevel, int minCredits, int maxCredits) {
+		return forEach(subjectIds, minLevel, maxLevel, minCredits, maxCredits, null);
+	}
+
+	/**
+	 * Year level of a course number, as used by the level buckets (eg. 310 -> 3).
+	 * Numbers below 100 count as level 0 and above 999 as level 9.
+	 */
+	private static int level(int number) {
+		return Math.max(0, Math.min(9, number/100));
+	}
+
+	/**
+	 * @return The first position in the sorted array holding a value >= key.
+	 */
+	private static int lowerBound(int[] sorted, int key) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < key) low = mid+1; else high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Sort numbers ascending, moving rows along with them (insertion sort; subjects hold at most a few hundred courses).
+	 */
+	private static void sortByNumber(int[] numbers, int[] rows) {
+		for (int i = 1; i < numbers.length; i++) {
+			int number = numbers[i], row = rows[i], j = i-1;
+			while (j >= 0 && numbers[j] > number) {
+				numbers[j+1] = numbers[j];
+				rows[j+1] = rows[j];
+				j--;
+			}
+			numbers[j+1] = number;
+			rows[j+1] = row;
+		}
+	}
+}
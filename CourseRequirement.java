@@ -1,6 +1,7 @@
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.math.BigDecimal;
+import java.sql.Types;
 
 
 /**
@@ -36,7 +37,7 @@ public class CourseRequirement implements Tuple {
 	 */
 
 	private DegreeType degreeType;
-	private String cond, description;
+	private String cond, description, query;
 	private Integer count;
 	private Integer credits; //presumably, requirements ask for whole numbers of credits
 	
@@ -49,6 +50,7 @@ public class CourseRequirement implements Tuple {
 		this.description = description;
 		this.count = count;
 		this.credits = credits;
+		this.query = indexedQuery(cond);
 	}
 	
 	/**
@@ -69,54 +71,93 @@ public class CourseRequirement implements Tuple {
 		return new CourseRequirement(this.degreeType, cond, description, count, credits);
 	}
 	
+	/**
+	 * @return The SQL condition that courses satisfying this requirement meet.
+	 */
+	public String getCond() {
+		return cond;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	
+	public Integer getCount() {
+		return count;
+	}
+	
+	public Integer getCredits() {
+		return credits;
+	}
+	
+	/**
+	 * @return The same condition as getCond(), rewritten to use the Course table's indexed
+	 * subject/number/level columns where possible (for looking up the courses that satisfy it).
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Rewrite a condition for getQuery() (once, since it's read on every write of the requirement).
+	 */
+	private static String indexedQuery(String cond) {
+		if (cond == null) return null;
+		try {
+			return RequirementCondition.parse(cond, new Course().getKeyHeadings()[0]).toIndexedPredicate();
+		} catch (IllegalArgumentException e) {
+			return cond; // not one we can read; the database still can
+		}
+	}
+	
 	// Interface implemented methods
 	
+	/**
+	 * Columns, key, DDL and statements for course requirement tuples.
+	 */
+	static final TupleSchema<CourseRequirement> SCHEMA = new TupleSchema<CourseRequirement>(CourseRequirement.class, "CourseRequirement",
+			"CREATE TABLE IF NOT EXISTS CourseRequirement ( "
+				+ "degree VARCHAR(100), "
+				+ "cond VARCHAR(255), "
+				+ "description VARCHAR(500), "
+				+ "count INT, "
+				+ "credits DECIMAL(3,1), "
+				+ "query VARCHAR(1000), "
+				+ "PRIMARY KEY(degree, cond), "
+				+ "FOREIGN KEY (degree) REFERENCES "
+				+ DegreeType.SCHEMA.getTableTitle()+"("+DegreeType.SCHEMA.getKeyHeadings()[0]
+				+ ") ON DELETE CASCADE ON UPDATE CASCADE ) ",
+			new String[] {"degree", "cond"},
+			Arrays.asList(
+				new TupleSchema.Column<CourseRequirement>("degree", Types.VARCHAR, r -> r.degreeType.toString()),
+				new TupleSchema.Column<CourseRequirement>("cond", Types.VARCHAR, CourseRequirement::getCond),
+				new TupleSchema.Column<CourseRequirement>("description", Types.VARCHAR, CourseRequirement::getDescription),
+				new TupleSchema.Column<CourseRequirement>("count", Types.INTEGER, CourseRequirement::getCount),
+				new TupleSchema.Column<CourseRequirement>("credits", Types.DECIMAL, CourseRequirement::getCredits),
+				new TupleSchema.Column<CourseRequirement>("query", Types.VARCHAR, CourseRequirement::getQuery)));
+	
 	@Override
 	public String[] getValues() {
-		return new String[] {
-				degreeType.toString(), 
-				cond, 
-				description,
-				((count == null)? null : count.toString()),
-				((credits == null)? null : credits.toString())
-				};
+		return SCHEMA.valuesOf(this);
 	}
 
 	@Override
 	public String[] getColumns() {
-		return new String[] {
-				"degree",
-				"cond",
-				"description",
-				"count",
-				"credits"
-		};
+		return SCHEMA.getColumns().clone();
 	}
 
 	@Override
 	public String[] getKeyHeadings() {
-		String[] headings = getColumns();
-		return new String[] {headings[0], headings[1]};
+		return SCHEMA.getKeyHeadings().clone();
 	}
 
 	@Override
 	public String getTableDDL() {
-		DegreeType d = new DegreeType();
-		String ddl = "CREATE TABLE IF NOT EXISTS "+ getTableTitle() +" ( "
-				+ "degree VARCHAR(100), "
-				+ "cond VARCHAR(255), "
-				+ "description VARCHAR(500), "
-				+ "count INT, "
-				+ "credits DECIMAL(3,1), "
-				+ "PRIMARY KEY(degree, cond), "
-				+ "FOREIGN KEY (degree) REFERENCES "
-				+ d.getTableTitle()+"("+d.getKeyHeadings()[0]
-				+ ") ON DELETE CASCADE ON UPDATE CASCADE ) ";
-		return ddl;
+		return SCHEMA.getTableDDL();
 	}
 
 	@Override
 	public String getTableTitle() {
-		return "CourseRequirement";
+		return SCHEMA.getTableTitle();
 	}
 }
@@ -0,0 +1,283 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EZ-Plan
+ * Counters and timings for a crawl-and-load run, so a slow run shows where its time went:
+ * 	- fetch latency by URL class (root page, subject pages, degree pages) and bytes downloaded
+ * 	- parse time per subject page, and courses parsed (per second over the run)
+ * 	- batch sizes and executeBatch latency in MySQLTableInput
+ * 	- time spent in each phase of the run (eg. "crawl", "load")
+ * 	- failures, by exception type
+ * All recording methods are thread-safe. Results can be written as a JSON run report
+ * or in Prometheus text format (eg. for the node exporter's textfile collector).
+ */
+public class CrawlMetrics {
+
+	/**
+	 * Fixed-bucket histogram (bucket counts are kept per bucket, and made cumulative on export).
+	 */
+	public static class Histogram {
+		private final long[] bounds; // upper bound of each bucket, in recorded units; last bucket is unbounded
+		private final AtomicLongArray counts;
+		private final LongAdder sum = new LongAdder(), count = new LongAdder();
+
+		Histogram(long... bounds) {
+			this.bounds = bounds;
+			counts = new AtomicLongArray(bounds.length+1);
+		}
+
+		public void record(long value) {
+			int bucket = 0;
+			while (bucket < bounds.length && value > bounds[bucket]) bucket++;
+			counts.incrementAndGet(bucket);
+			sum.add(value);
+			count.increment();
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getSum() {
+			return sum.sum();
+		}
+	}
+
+	// Latency buckets (nanoseconds): 5ms to 10s
+	private static final long MS = 1000000L;
+	private static final long[] LATENCY_BOUNDS = {5*MS, 10*MS, 25*MS, 50*MS, 100*MS, 250*MS, 500*MS, 1000*MS, 2500*MS, 5000*MS, 10000*MS};
+	private static final long[] PARSE_BOUNDS = {MS/2, MS, 2*MS, 5*MS, 10*MS, 25*MS, 50*MS, 100*MS, 250*MS};
+	private static final long[] BATCH_SIZE_BOUNDS = {1, 10, 50, 100, 250, 500, 1000, 5000};
+
+	private final long startNanos = System.nanoTime();
+
+	private final Map<String, Histogram> fetchLatency = new ConcurrentHashMap<String, Histogram>();
+	private final LongAdder bytesDownloaded = new LongAdder(), cacheHits = new LongAdder();
+	private final Histogram parseTime = new Histogram(PARSE_BOUNDS);
+	private final LongAdder coursesParsed = new LongAdder();
+	private final Histogram batchSize = new Histogram(BATCH_SIZE_BOUNDS);
+	private final Histogram batchLatency = new Histogram(LATENCY_BOUNDS);
+	private final Map<String, LongAdder> phaseNanos = new ConcurrentHashMap<String, LongAdder>();
+	private final Map<String, LongAdder> failures = new ConcurrentHashMap<String, LongAdder>();
+
+	/**
+	 * A page was downloaded.
+	 * @param urlClass Kind of page (eg. "root", "subject", "degree").
+	 * @param nanos Time from request to full body.
+	 * @param bytes Size of the body (0 if it was not modified since cached).
+	 */
+	public void recordFetch(String urlClass, long nanos, long bytes) {
+		fetchLatency.computeIfAbsent(urlClass, c -> new Histogram(LATENCY_BOUNDS)).record(nanos);
+		bytesDownloaded.add(bytes);
+	}
+
+	/**
+	 * A page was served from the page cache without a download (unmodified or offline).
+	 */
+	public void recordCacheHit() {
+		cacheHits.increment();
+	}
+
+	/**
+	 * A subject page was parsed.
+	 * @param nanos Time taken to parse it.
+	 * @param courses Number of courses on it.
+	 */
+	public void recordParse(long nanos, int courses) {
+		parseTime.record(nanos);
+		coursesParsed.add(courses);
+	}
+
+	/**
+	 * A batch was sent to the database.
+	 * @param size Number of rows in it.
+	 * @param nanos Time spent in executeBatch (and commit, if any).
+	 */
+	public void recordBatch(int size, long nanos) {
+		batchSize.record(size);
+		batchLatency.record(nanos);
+	}
+
+	/**
+	 * Time spent in one phase of the run (added up if the phase is recorded more than once).
+	 */
+	public void recordPhase(String phase, long nanos) {
+		phaseNanos.computeIfAbsent(phase, p -> new LongAdder()).add(nanos);
+	}
+
+	/**
+	 * Something went wrong (counted by exception type).
+	 */
+	public void recordFailure(Throwable t) {
+		failures.computeIfAbsent(t.getClass().getSimpleName(), f -> new LongAdder()).increment();
+	}
+
+	/**
+	 * @return Courses parsed per second since this object was created.
+	 */
+	public double getCoursesPerSecond() {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		return (seconds > 0)? coursesParsed.sum() / seconds : 0;
+	}
+
+	/**
+	 * @return The run so far as a JSON object.
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("  \"elapsedSeconds\": ").append(seconds(System.nanoTime() - startNanos)).append(",\n");
+		json.append("  \"fetch\": {");
+		boolean first = true;
+		for (Map.Entry<String, Histogram> entry : sorted(fetchLatency).entrySet()) {
+			json.append(first? "\n" : ",\n").append("    \"").append(entry.getKey()).append("\": ");
+			appendJson(json, entry.getValue(), true);
+			first = false;
+		}
+		json.append(first? "},\n" : "\n  },\n");
+		json.append("  \"bytesDownloaded\": ").append(bytesDownloaded.sum()).append(",\n");
+		json.append("  \"cacheHits\": ").append(cacheHits.sum()).append(",\n");
+		json.append("  \"parse\": ");
+		appendJson(json, parseTime, true);
+		json.append(",\n");
+		json.append("  \"coursesParsed\": ").append(coursesParsed.sum()).append(",\n");
+		json.append("  \"coursesPerSecond\": ").append(format(getCoursesPerSecond())).append(",\n");
+		json.append("  \"batchSize\": ");
+		appendJson(json, batchSize, false);
+		json.append(",\n");
+		json.append("  \"executeBatch\": ");
+		appendJson(json, batchLatency, true);
+		json.append(",\n");
+		json.append("  \"phaseSeconds\": ");
+		appendJson(json, phaseNanos, true);
+		json.append(",\n");
+		json.append("  \"failures\": ");
+		appendJson(json, failures, false);
+		json.append("\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * @return The run so far in Prometheus text exposition format.
+	 */
+	public String toPrometheus() {
+		StringBuilder prom = new StringBuilder();
+		header(prom, "crawler_fetch_seconds", "histogram", "Page fetch latency by URL class.");
+		for (Map.Entry<String, Histogram> entry : sorted(fetchLatency).entrySet()) {
+			appendPrometheus(prom, "crawler_fetch_seconds", "class=\""+entry.getKey()+"\"", entry.getValue(), true);
+		}
+		header(prom, "crawler_downloaded_bytes_total", "counter", "Bytes of page bodies downloaded.");
+		prom.append("crawler_downloaded_bytes_total ").append(bytesDownloaded.sum()).append('\n');
+		header(prom, "crawler_cache_hits_total", "counter", "Pages served from the page cache without a download.");
+		prom.append("crawler_cache_hits_total ").append(cacheHits.sum()).append('\n');
+		header(prom, "crawler_parse_seconds", "histogram", "Parse time per subject page.");
+		appendPrometheus(prom, "crawler_parse_seconds", null, parseTime, true);
+		header(prom, "crawler_courses_parsed_total", "counter", "Courses parsed.");
+		prom.append("crawler_courses_parsed_total ").append(coursesParsed.sum()).append('\n');
+		header(prom, "crawler_courses_per_second", "gauge", "Courses parsed per second over the run.");
+		prom.append("crawler_courses_per_second ").append(format(getCoursesPerSecond())).append('\n');
+		header(prom, "crawler_batch_rows", "histogram", "Rows per database batch.");
+		appendPrometheus(prom, "crawler_batch_rows", null, batchSize, false);
+		header(prom, "crawler_execute_batch_seconds", "histogram", "executeBatch latency.");
+		appendPrometheus(prom, "crawler_execute_batch_seconds", null, batchLatency, true);
+		header(prom, "crawler_phase_seconds", "gauge", "Time spent in each phase of the run.");
+		for (Map.Entry<String, LongAdder> entry : sorted(phaseNanos).entrySet()) {
+			prom.append("crawler_phase_seconds{phase=\"").append(entry.getKey()).append("\"} ")
+					.append(seconds(entry.getValue().sum())).append('\n');
+		}
+		header(prom, "crawler_failures_total", "counter", "Failures by exception type.");
+		for (Map.Entry<String, LongAdder> entry : sorted(failures).entrySet()) {
+			prom.append("crawler_failures_total{type=\"").append(entry.getKey()).append("\"} ")
+					.append(entry.getValue().sum()).append('\n');
+		}
+		return prom.toString();
+	}
+
+	/**
+	 * Write the JSON run report to a file (replaced only once fully written).
+	 */
+	public void writeJson(File file) throws IOException {
+		write(file, toJson());
+	}
+
+	/**
+	 * Write the Prometheus-format metrics to a file (replaced only once fully written,
+	 * as the textfile collector expects).
+	 */
+	public void writePrometheus(File file) throws IOException {
+		write(file, toPrometheus());
+	}
+
+	private static void write(File file, String text) throws IOException {
+		File temp = new File(file.getPath()+".tmp");
+		Files.write(temp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void appendJson(StringBuilder json, Histogram h, boolean nanos) {
+		long count = h.getCount();
+		json.append("{\"count\": ").append(count)
+				.append(", \"sum\": ").append(nanos? seconds(h.getSum()) : Long.toString(h.getSum()))
+				.append(", \"mean\": ").append((count == 0)? "0" : nanos? seconds(h.getSum()/count) : format((double) h.getSum()/count))
+				.append(", \"buckets\": {");
+		long cumulative = 0;
+		for (int i = 0; i <= h.bounds.length; i++) {
+			cumulative += h.counts.get(i);
+			json.append((i > 0)? ", \"" : "\"")
+					.append((i < h.bounds.length)? (nanos? seconds(h.bounds[i]) : Long.toString(h.bounds[i])) : "+Inf")
+					.append("\": ").append(cumulative);
+		}
+		json.append("}}");
+	}
+
+	private static void appendJson(StringBuilder json, Map<String, LongAdder> values, boolean nanos) {
+		json.append("{");
+		boolean first = true;
+		for (Map.Entry<String, LongAdder> entry : sorted(values).entrySet()) {
+			json.append(first? "\"" : ", \"").append(entry.getKey()).append("\": ")
+					.append(nanos? seconds(entry.getValue().sum()) : Long.toString(entry.getValue().sum()));
+			first = false;
+		}
+		json.append("}");
+	}
+
+	private static void header(StringBuilder prom, String name, String type, String help) {
+		prom.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		prom.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void appendPrometheus(StringBuilder prom, String name, String labels, Histogram h, boolean nanos) {
+		String prefix = (labels == null)? "" : labels+",";
+		long cumulative = 0;
+		for (int i = 0; i <= h.bounds.length; i++) {
+			cumulative += h.counts.get(i);
+			String le = (i < h.bounds.length)? (nanos? seconds(h.bounds[i]) : Long.toString(h.bounds[i])) : "+Inf";
+			prom.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+		}
+		String suffix = (labels == null)? "" : "{"+labels+"}";
+		prom.append(name).append("_sum").append(suffix).append(' ')
+				.append(nanos? seconds(h.getSum()) : Long.toString(h.getSum())).append('\n');
+		prom.append(name).append("_count").append(suffix).append(' ').append(h.getCount()).append('\n');
+	}
+
+	private static <V> Map<String, V> sorted(Map<String, V> map) {
+		return new TreeMap<String, V>(map);
+	}
+
+	private static String seconds(long nanos) {
+		return format(nanos / 1e9);
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.6f", value);
+	}
+}
@@ -0,0 +1,56 @@
+import java.io.IOException;
+
+/**
+ * EZ-Plan
+ * Streams crawled courses straight into a sink (eg. the database): the crawler writes tuples
+ * into a bounded queue as each subject page is parsed, while a writer thread drains the queue
+ * into the sink (see WriteBehindSink). Into the database, they are upserted in batches
+ * (so re-running over an existing table is harmless).
+ * Fetching, parsing and writing all overlap, and only (queue capacity + one batch) tuples are ever held in memory at once.
+ */
+public class CrawlPipeline {
+
+	private TupleSink sink;
+	private int queueCapacity;
+
+	/**
+	 * Sets up a pipeline into the given database.
+	 * @param table Database to insert into (the table is created from the first tuple's DDL if necessary).
+	 * @param queueCapacity How far (in tuples) the crawler may run ahead of the writer.
+	 * @param batchSize Number of tuples inserted at a time.
+	 */
+	public CrawlPipeline(MySQLTableInput table, int queueCapacity, int batchSize) {
+		this(new MySQLSink(table, batchSize), queueCapacity);
+	}
+
+	/**
+	 * Sets up a pipeline into the given sink (eg. a FanOutSink, to write to several places at once).
+	 * @param sink Sink to write to (closed once the crawl is done).
+	 * @param queueCapacity How far (in tuples) the crawler may run ahead of the writer.
+	 */
+	public CrawlPipeline(TupleSink sink, int queueCapacity) {
+		this.sink = sink;
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	/**
+	 * Crawl all courses with the given crawler, writing them as they arrive.
+	 * @param crawler Crawler to read courses from.
+	 * @return The number of tuples written, or -1 if any of them could not be.
+	 */
+	public int run(Crawler crawler) throws IOException {
+		boolean failed = false;
+		WriteBehindSink out = new WriteBehindSink(sink, queueCapacity);
+		try {
+			crawler.streamCrawl(out);
+		} finally {
+			// Always let the writer finish (and flush whatever was crawled), even if the crawl failed
+			try {
+				out.close();
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+		return failed? -1 : out.getWritten();
+	}
+}
@@ -0,0 +1,174 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * EZ-Plan
+ * Remembers what the last crawl saw, for incremental recrawls:
+ * a content hash for each subject page, and a content hash for each course parsed from it.
+ * (Stored as a plain properties file between runs.)
+ */
+public class CrawlState {
+
+	// Subject code -> page hash, and subject code -> (course code -> course hash)
+	private Map<String, String> pageHashes;
+	private Map<String, Map<String, String>> courseHashes;
+
+	/**
+	 * Empty state (as for a first run; everything crawled will count as added).
+	 */
+	public CrawlState() {
+		pageHashes = new TreeMap<String, String>();
+		courseHashes = new TreeMap<String, Map<String, String>>();
+	}
+
+	/**
+	 * Load the state saved by a previous run.
+	 * @param file State file; if it does not exist, an empty state is returned.
+	 */
+	public static CrawlState load(File file) throws IOException {
+		CrawlState state = new CrawlState();
+		if (!file.isFile()) {
+			return state;
+		}
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+		for (String name : props.stringPropertyNames()) {
+			if (name.startsWith("page.")) {
+				state.pageHashes.put(name.substring(5), props.getProperty(name));
+			} else if (name.startsWith("course.")) {
+				// course.[subject page].[course code]
+				int split = name.indexOf('.', 7);
+				state.putCourseHash(name.substring(7, split), name.substring(split+1), props.getProperty(name));
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Save this state (replacing the given file only once fully written).
+	 * @param file State file.
+	 */
+	public void save(File file) throws IOException {
+		Properties props = new Properties();
+		for (Map.Entry<String, String> page : pageHashes.entrySet()) {
+			props.setProperty("page."+page.getKey(), page.getValue());
+		}
+		for (Map.Entry<String, Map<String, String>> subject : courseHashes.entrySet()) {
+			for (Map.Entry<String, String> course : subject.getValue().entrySet()) {
+				props.setProperty("course."+subject.getKey()+"."+course.getKey(), course.getValue());
+			}
+		}
+		File temp = new File(file.getPath()+".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			props.store(out, "EZ-Plan crawl state");
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	String getPageHash(String subjectCode) {
+		return pageHashes.get(subjectCode);
+	}
+
+	void putPageHash(String subjectCode, String hash) {
+		pageHashes.put(subjectCode, hash);
+	}
+
+	/**
+	 * @return The subject pages seen so far.
+	 */
+	Set<String> getSubjects() {
+		return Collections.unmodifiableSet(pageHashes.keySet());
+	}
+
+	/**
+	 * @return Course code -> course hash, for the courses last seen on the given subject page.
+	 */
+	Map<String, String> getCourseHashes(String subjectCode) {
+		Map<String, String> courses = courseHashes.get(subjectCode);
+		return (courses == null)? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(courses);
+	}
+
+	void putCourseHash(String subjectCode, String courseCode, String hash) {
+		Map<String, String> courses = courseHashes.get(subjectCode);
+		if (courses == null) {
+			courses = new HashMap<String, String>();
+			courseHashes.put(subjectCode, courses);
+		}
+		courses.put(courseCode, hash);
+	}
+
+	void removeCourse(String subjectCode, String courseCode) {
+		Map<String, String> courses = courseHashes.get(subjectCode);
+		if (courses != null) {
+			courses.remove(courseCode);
+		}
+	}
+
+	void removeSubject(String subjectCode) {
+		pageHashes.remove(subjectCode);
+		courseHashes.remove(subjectCode);
+	}
+
+	/**
+	 * Content hash of a page body.
+	 */
+	static String hash(String text) {
+		return hex(digest().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Content hash of a tuple (over all of its column values, nulls included).
+	 */
+	static String hash(Tuple t) {
+		MessageDigest md = digest();
+		for (String value : t.getValues()) {
+			if (value == null) {
+				md.update((byte) 0);
+			} else {
+				md.update((byte) 1);
+				md.update(value.getBytes(StandardCharsets.UTF_8));
+			}
+			md.update((byte) '\t');
+		}
+		return hex(md.digest());
+	}
+
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // SHA-256 is always available
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length*2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -1,12 +1,34 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.io.BufferedReader;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.io.PrintWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
 
 /**
@@ -28,22 +50,171 @@ import org.jsoup.select.Elements;
 public class Crawler {
 
 	/**
-	 * Constant for the root pages (which link to each course sublist or each degree specification) to start parsing from
+	 * Default number of simultaneous requests allowed to any one host during a concurrent crawl
+	 * (kept small so as not to hammer the calendar server).
 	 */
-	private static final String ROOT_URL = "http://www.calendar.ubc.ca/okanagan/courses.cfm?go=code";
-	private static final String DEGREES_URL = "http://www.calendar.ubc.ca/okanagan/index.cfm?tree=18,0,0,0";
+	public static final int DEFAULT_MAX_PER_HOST = 4;
+	
+	/**
+	 * How far below the degrees root to follow links when looking for program pages.
+	 */
+	private static final int MAX_DEGREE_DEPTH = 3;
+	
+	/**
+	 * Patterns for reading program pages: the degree in the heading, the total credits required,
+	 * a table cell holding a number of credits, and a requirement for some number of listed courses.
+	 */
+	private static final Pattern DEGREE_HEADING = Pattern.compile(
+			"\\b(Bachelor|Master|Doctor) of ([A-Z][^,()]*?),?\\s+Major in ([A-Z][^,()]*)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern MIN_CREDITS = Pattern.compile(
+			"(?:minimum of|total of|at least) (\\d{2,3}) credits", Pattern.CASE_INSENSITIVE);
+	private static final Pattern CREDIT_CELL = Pattern.compile("\\s*(\\d{1,3})\\s*");
+	private static final List<String> NUMBER_WORDS = Arrays.asList("one", "two", "three", "four", "five", "six");
+	private static final Pattern COURSES_OF = Pattern.compile(
+			"(one|two|three|four|five|six) (?:of|courses from)\\b", Pattern.CASE_INSENSITIVE);
+	
+	/**
+	 * Credits assumed for a bachelor's program whose page doesn't say,
+	 * and the longest condition and description the requirements table holds.
+	 */
+	private static final int DEFAULT_BACHELOR_CREDITS = 120;
+	private static final int MAX_COND_LENGTH = 255, MAX_DESCRIPTION_LENGTH = 500;
 	
 	/**
 	 * 
 	 */
 	private ArrayList<Tuple> courseList;
+	
+	/**
+	 * Calendar to crawl (which has the root pages that link to each course sublist
+	 * or each degree specification, to start parsing from).
+	 */
+	private CalendarSource source;
+	
+	/**
+	 * Per-host request limits, and the worker threads if they are shared with other crawlers
+	 * (otherwise each concurrent crawl starts a pool of its own).
+	 */
+	private FetchScheduler scheduler;
+	private boolean sharedScheduler;
+	
+	/**
+	 * On-disk copy of previously fetched pages (null if pages should always be downloaded).
+	 */
+	private PageCache pageCache;
+	
+	/**
+	 * Timings and counts for this crawler's fetches and parses.
+	 */
+	private CrawlMetrics metrics;
+	
+	/**
+	 * Completed subjects from an interrupted crawl (null if not resuming/checkpointing).
+	 */
+	private CheckpointJournal journal;
+	
+	/**
+	 * Whether subject pages are parsed as a stream, one course entry at a time, instead of as a whole DOM.
+	 */
+	private boolean streamingParse;
+	
+	/**
+	 * HTTP client used for every request (shared by all crawlers unless set otherwise).
+	 */
+	private PageFetcher fetcher = PageFetcher.shared();
+	
+	/**
+	 * Receives each course as soon as it is parsed from a streamed page.
+	 */
+	interface CourseHandler {
+		void accept(Course course) throws IOException;
+	}
 
 	/**
 	 * Constructor: create a new instance of a crawler/parser
 	 */
 	public Crawler() {
+		this(DEFAULT_MAX_PER_HOST);
+	}
+	
+	/**
+	 * Constructor: create a new crawler allowing up to the given number of
+	 * simultaneous requests to any one host (used by concurrentCrawl).
+	 * @param maxPerHost Per-host concurrency cap (at least 1).
+	 */
+	public Crawler(int maxPerHost) {
+		this(CalendarSource.OKANAGAN, new FetchScheduler(maxPerHost, maxPerHost));
+		sharedScheduler = false;
+	}
+	
+	/**
+	 * Constructor: create a new crawler for the given calendar, sharing its worker threads
+	 * and per-host request limits with every other crawler on the same scheduler
+	 * (so several calendars can be crawled at once without overloading a host they share).
+	 * @param source Calendar to crawl.
+	 * @param scheduler Scheduler shared by the crawlers of this run.
+	 */
+	public Crawler(CalendarSource source, FetchScheduler scheduler) {
 		// Initialize global variables with default values
 		courseList = new ArrayList<Tuple>();
+		this.source = source;
+		this.scheduler = scheduler;
+		sharedScheduler = true;
+		metrics = new CrawlMetrics();
+	}
+	
+	public CalendarSource getSource() {
+		return source;
+	}
+	
+	/**
+	 * Use the given on-disk cache for page fetches: cached pages are revalidated with a
+	 * conditional GET (or, if the cache is offline, served without touching the network).
+	 * @param pageCache Cache to use, or null to always download pages.
+	 */
+	public void setPageCache(PageCache pageCache) {
+		this.pageCache = pageCache;
+	}
+	
+	/**
+	 * Checkpoint each completed subject to the given journal, and replay subjects it already
+	 * holds instead of fetching them again (so a crawl that failed partway can be resumed).
+	 * @param journal Journal to use, or null to crawl without checkpoints.
+	 */
+	public void setJournal(CheckpointJournal journal) {
+		this.journal = journal;
+	}
+	
+	/**
+	 * Record fetch and parse timings into the given metrics (eg. to share them with the table loads of the same run).
+	 * @param metrics
+	 */
+	public void setMetrics(CrawlMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	public CrawlMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Make requests through the given fetcher (eg. one with other timeouts) instead of the shared one.
+	 * @param fetcher
+	 */
+	public void setFetcher(PageFetcher fetcher) {
+		this.fetcher = fetcher;
+	}
+	
+	/**
+	 * Parse subject pages as they are read, one course entry at a time, rather than building a DOM of
+	 * each whole page: memory per page being crawled stays at about one course entry, however large
+	 * the page (and however many are in flight). The courses found are the same either way.
+	 * (With a page cache, pages are copied into it as they are read, and unchanged or offline pages
+	 * are parsed straight from their cached copies on disk.)
+	 * @param streamingParse
+	 */
+	public void setStreamingParse(boolean streamingParse) {
+		this.streamingParse = streamingParse;
 	}
 	
 	/**
@@ -52,21 +223,10 @@ public class Crawler {
 	 */
 	public ArrayList<Tuple> fullCrawl() throws IOException {
 		
-		// Load the subject area list page (linking to each sublist of courses according to subject area)
-		Document nav = Jsoup.connect(ROOT_URL).get();
-		
-		// This class, in the course page, is used exclusively
-		// for table rows containing a course list link for a faculty
-		Elements pages = nav.body().select("tr.row-highlight"); 
-		
 		// Parse out all courses and add them to the course list
 		/* */
-		for (Element page : pages) {
-			// Retrieve the subject code and get its contained courses:
-			// in current version of course root, will be the text of
-			// the row-highlight's child "td a" grandchild
-			String subjectCode = page.child(0).child(0).ownText();
-			parseCoursesFrom(subjectCode);
+		for (String subjectCode : getSubjectCodes()) {
+			courseList.addAll(parseCoursesFrom(subjectCode));
 		}
 		/* */
 		
@@ -79,19 +239,394 @@ public class Crawler {
 	}
 	
 	/**
-	 * Add all the courses in the specified page to the course list.
+	 * Same as fullCrawl, but subject pages are fetched and parsed on a bounded pool of threads
+	 * (at most maxPerHost requests to the calendar host at once, or the shared scheduler's threads
+	 * and limits), so the crawl takes roughly as long as its slowest pages rather than the sum of all of them.
+	 * Courses are still returned in the same order as fullCrawl (subject list order, then page order).
+	 * @param threads Number of worker threads (at least 1).
+	 * @return The course list, in subject order.
+	 */
+	public ArrayList<Tuple> concurrentCrawl(int threads) throws IOException {
+		List<String> subjectCodes = getSubjectCodes();
+		
+		// One result slot per subject (filled in by whichever thread gets to it),
+		// read back in subject order so the output does not depend on timing
+		List<Callable<List<Course>>> tasks = new ArrayList<Callable<List<Course>>>(subjectCodes.size());
+		for (final String subjectCode : subjectCodes) {
+			tasks.add(() -> parseCoursesFrom(subjectCode));
+		}
+		for (List<Course> courses : runAll(tasks, threads)) {
+			courseList.addAll(courses);
+		}
+		
+		return courseList;
+	}
+	
+	/**
+	 * Same as fullCrawl, but rather than collecting the whole catalog, each course is written
+	 * to the given sink as soon as its subject page has been parsed.
+	 * With a WriteBehindSink, the crawl only waits for the sink once its queue is full (so a bounded
+	 * queue keeps memory use flat however large the catalog is). The sink is not flushed or closed.
+	 * @param out Sink to write courses to, in the same order as fullCrawl.
+	 */
+	public void streamCrawl(TupleSink out) throws IOException {
+		for (String subjectCode : getSubjectCodes()) {
+			if (streamingParse && journal == null) {
+				// Each course goes out as soon as its entry has been read
+				streamCourses(source.getCoursesUrl()+"&code="+subjectCode, out::write);
+				continue;
+			}
+			for (Course c : parseCoursesFrom(subjectCode)) {
+				out.write(c);
+			}
+		}
+	}
+	
+	/**
+	 * Crawl only what changed since the run that produced the given state:
+	 * subject pages whose content hash is unchanged are skipped without being parsed,
+	 * and the courses on changed pages are compared against their previous hashes.
+	 * The state is updated in place (save it afterwards to use it for the next run).
+	 * @param state What the previous crawl saw (empty on a first run).
+	 * @return The courses added, modified and removed since then.
+	 */
+	public CourseDelta incrementalCrawl(CrawlState state) throws IOException {
+		CourseDelta delta = new CourseDelta();
+		Set<String> seenSubjects = new HashSet<String>();
+		
+		for (String subjectCode : getSubjectCodes()) {
+			seenSubjects.add(subjectCode);
+			String url = source.getCoursesUrl()+"&code="+subjectCode;
+			String body = fetchBody(url);
+			String pageHash = CrawlState.hash(body);
+			if (pageHash.equals(state.getPageHash(subjectCode))) {
+				continue; // Page unchanged, so its courses are too
+			}
+			
+			Map<String, String> previous = state.getCourseHashes(subjectCode);
+			Set<String> seenCourses = new HashSet<String>();
+			for (Course c : parseCourses(Jsoup.parse(body, url))) {
+				String code = c.getCourseCode();
+				String courseHash = CrawlState.hash(c);
+				String oldHash = previous.get(code);
+				seenCourses.add(code);
+				if (oldHash == null) {
+					delta.addAdded(c);
+				} else if (!oldHash.equals(courseHash)) {
+					delta.addModified(c);
+				}
+				state.putCourseHash(subjectCode, code, courseHash);
+			}
+			// Anything the page used to list but no longer does has been removed
+			for (String code : new ArrayList<String>(previous.keySet())) {
+				if (!seenCourses.contains(code)) {
+					delta.addRemoved(code);
+					state.removeCourse(subjectCode, code);
+				}
+			}
+			state.putPageHash(subjectCode, pageHash);
+		}
+		
+		// Whole subjects dropped from the calendar
+		for (String subjectCode : new ArrayList<String>(state.getSubjects())) {
+			if (!seenSubjects.contains(subjectCode)) {
+				for (String code : state.getCourseHashes(subjectCode).keySet()) {
+					delta.addRemoved(code);
+				}
+				state.removeSubject(subjectCode);
+			}
+		}
+		return delta;
+	}
+	
+	/**
+	 * Read the subject codes listed on the course root page, in page order.
+	 * @return The subject codes (eg. "COSC") linking to each course sublist.
+	 */
+	List<String> getSubjectCodes() throws IOException {
+		// Load the subject area list page (linking to each sublist of courses according to subject area)
+		Document nav = fetch(source.getCoursesUrl());
+		
+		// This class, in the course page, is used exclusively
+		// for table rows containing a course list link for a faculty
+		Elements pages = nav.body().select("tr.row-highlight"); 
+		
+		List<String> subjectCodes = new ArrayList<String>(pages.size());
+		for (Element page : pages) {
+			// Retrieve the subject code: in current version of course root,
+			// will be the text of the row-highlight's child "td a" grandchild
+			subjectCodes.add(page.child(0).child(0).ownText());
+		}
+		return subjectCodes;
+	}
+	
+	/**
+	 * Parse all the courses in the specified page (or replay them from the checkpoint journal,
+	 * if an earlier crawl already completed this subject).
+	 * (Does not touch the shared course list, so it is safe to call from several threads.)
 	 * @param subjectCode The specific subject area to retrieve course data from.
+	 * @return The courses on that page, in page order.
+	 */
+	List<Course> parseCoursesFrom(String subjectCode) throws IOException {
+		if (journal != null) {
+			List<Course> replayed = journal.getCourses(subjectCode);
+			if (replayed != null) {
+				return replayed;
+			}
+		}
+		String url = source.getCoursesUrl()+"&code="+subjectCode;
+		List<Course> courses;
+		if (streamingParse) {
+			List<Course> parsed = new ArrayList<Course>();
+			streamCourses(url, parsed::add);
+			courses = parsed;
+		} else {
+			courses = parseCourses(fetch(url));
+		}
+		if (journal != null) {
+			journal.commit(subjectCode, courses);
+		}
+		return courses;
+	}
+	
+	/**
+	 * Parse all the courses in an already-loaded subject page.
+	 * (Package-visible so pages can be parsed without fetching, eg. by CrawlerBenchmark.)
+	 * @param page A course sublist page.
+	 * @return The courses on that page, in page order.
 	 */
-	private void parseCoursesFrom(String subjectCode) throws IOException {
-		Document page = Jsoup.connect(ROOT_URL+"&code="+subjectCode).get();
+	List<Course> parseCourses(Document page) {
+		long start = System.nanoTime();
 		Elements courseTitles = page.body().select("dt"); // tag type used specifically for course titles
 
+		List<Course> courses = new ArrayList<Course>(courseTitles.size());
 		for (Element titleElement : courseTitles) {
 			// Create the course objects
 			Course cNew = parseCourseDetails(titleElement);
-			courseList.add(cNew);
+			courses.add(cNew);
 		}
+		metrics.recordParse(System.nanoTime() - start, courses.size());
+		return courses;
 	}
+	
+	/**
+	 * Parse the courses in a subject page as it is read (see setStreamingParse), handing each one on as soon as its entry ends.
+	 * With a page cache, the page is revalidated like any other fetch: an unchanged page is parsed from
+	 * the cached copy on disk, and a new one is copied into the cache as it is read.
+	 * @param url Subject page to load.
+	 * @param handler Receives the courses, in page order.
+	 */
+	private void streamCourses(String url, CourseHandler handler) throws IOException {
+		PageCache.Entry cached = null;
+		if (pageCache != null) {
+			cached = pageCache.getValidators(url);
+			if (pageCache.isOffline()) {
+				if (cached == null) {
+					IOException e = new IOException("Page not in cache (offline mode): "+url);
+					metrics.recordFailure(e);
+					throw e;
+				}
+				metrics.recordCacheHit();
+				parseCached(url, handler);
+				return;
+			}
+		}
+		
+		Semaphore permits = scheduler.permitsFor(url);
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting to fetch "+url, e);
+		}
+		long start = System.nanoTime();
+		boolean notModified = false;
+		try {
+			PageFetcher.Response res = fetcher.open(url,
+					(cached == null)? null : cached.etag, (cached == null)? null : cached.lastModified);
+			try (Reader in = new BufferedReader(new InputStreamReader(res.bodyStream(),
+					(res.headerCharset() != null)? res.headerCharset() : "UTF-8"))) {
+				if (res.statusCode() == 304 && cached != null) {
+					notModified = true;
+				} else if (res.statusCode() < 200 || res.statusCode() >= 300) {
+					throw new HttpStatusException("HTTP error fetching URL", res.statusCode(), url);
+				} else if (pageCache == null) {
+					parseCourses(in, url, handler);
+				} else {
+					// Copy the page into the cache as it is parsed; only a page read to its end is kept
+					try (PageCache.Pending copy = pageCache.begin(url, res.header("ETag"), res.header("Last-Modified"))) {
+						Reader tee = new TeeReader(in, copy);
+						parseCourses(tee, url, handler);
+						char[] rest = new char[1 << 12];
+						while (tee.read(rest) >= 0) {
+							// (the markup after the last entry)
+						}
+						copy.commit();
+					}
+				}
+			}
+			metrics.recordFetch(urlClass(url), System.nanoTime() - start, notModified? 0 : res.transferredBytes());
+		} catch (IOException e) {
+			metrics.recordFailure(e);
+			throw e;
+		} finally {
+			permits.release();
+		}
+		if (notModified) {
+			metrics.recordCacheHit();
+			parseCached(url, handler);
+		}
+	}
+	
+	/**
+	 * Parse the courses in a subject page's cached copy, read from disk as it is parsed.
+	 */
+	private void parseCached(String url, CourseHandler handler) throws IOException {
+		Reader in = pageCache.openBody(url);
+		if (in == null) {
+			throw new IOException("Page dropped from cache while in use: "+url);
+		}
+		try {
+			parseCourses(in, url, handler);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Passes on everything read through it to a writer as well.
+	 */
+	private static class TeeReader extends FilterReader {
+		private final Writer copy;
+		
+		TeeReader(Reader in, Writer copy) {
+			super(in);
+			this.copy = copy;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int ch = super.read();
+			if (ch >= 0) copy.write(ch);
+			return ch;
+		}
+		
+		@Override
+		public int read(char[] chars, int off, int len) throws IOException {
+			int n = super.read(chars, off, len);
+			if (n > 0) copy.write(chars, off, n);
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			// (read rather than skip, so the copy misses nothing)
+			char[] skipped = new char[(int) Math.min(n, 1 << 12)];
+			int read = read(skipped, 0, skipped.length);
+			return Math.max(0, read);
+		}
+	}
+	
+	/**
+	 * Parse the courses in a subject page as it is read: each entry is parsed on its own as soon as
+	 * it has been read (see CourseEntryScanner), so only one course's markup is held at a time.
+	 * @param page The page's markup.
+	 * @param url The page's address.
+	 * @param handler Receives the courses, in page order.
+	 */
+	void parseCourses(Reader page, String url, CourseHandler handler) throws IOException {
+		CourseEntryScanner scanner = new CourseEntryScanner(page);
+		long parseNanos = 0;
+		int count = 0;
+		String entry;
+		while ((entry = scanner.nextEntry()) != null) {
+			long start = System.nanoTime();
+			// The entry parses to the same <dt>/<dd> pair it is in the whole page
+			Document fragment = Jsoup.parseBodyFragment("<dl>"+entry+"</dl>", url);
+			Course c = parseCourseDetails(fragment.body().getElementsByTag("dt").first());
+			parseNanos += System.nanoTime() - start;
+			count++;
+			handler.accept(c);
+		}
+		metrics.recordParse(parseNanos, count);
+	}
+	
+	/**
+	 * Load and parse a page.
+	 * @param url Page to load.
+	 * @return The parsed page.
+	 */
+	private Document fetch(String url) throws IOException {
+		return Jsoup.parse(fetchBody(url), url);
+	}
+	
+	/**
+	 * Load the raw contents of a page, going through the page cache if one is set,
+	 * and waiting first if the per-host request limit has been reached.
+	 * @param url Page to load.
+	 * @return The page body.
+	 */
+	private String fetchBody(String url) throws IOException {
+		PageCache.Entry cached = null;
+		if (pageCache != null) {
+			cached = pageCache.get(url);
+			if (pageCache.isOffline()) {
+				if (cached == null) {
+					IOException e = new IOException("Page not in cache (offline mode): "+url);
+					metrics.recordFailure(e);
+					throw e;
+				}
+				metrics.recordCacheHit();
+				return cached.body;
+			}
+		}
+		
+		Semaphore permits = scheduler.permitsFor(url);
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting to fetch "+url, e);
+		}
+		long start = System.nanoTime();
+		try {
+			// Only ask for the page if it has changed since it was cached
+			PageFetcher.Response res = fetcher.fetch(url,
+					(cached == null)? null : cached.etag, (cached == null)? null : cached.lastModified);
+			
+			if (res.statusCode() == 304 && cached != null) {
+				metrics.recordFetch(urlClass(url), System.nanoTime() - start, 0);
+				metrics.recordCacheHit();
+				return cached.body; // Not modified
+			}
+			if (res.statusCode() < 200 || res.statusCode() >= 300) {
+				throw new HttpStatusException("HTTP error fetching URL", res.statusCode(), url);
+			}
+			String body = res.body();
+			metrics.recordFetch(urlClass(url), System.nanoTime() - start, res.transferredBytes());
+			if (pageCache != null) {
+				pageCache.put(url, body, res.header("ETag"), res.header("Last-Modified"));
+			}
+			return body;
+		} catch (IOException e) {
+			metrics.recordFailure(e);
+			throw e;
+		} finally {
+			permits.release();
+		}
+	}
+	
+	/**
+	 * Kind of page a URL is, for grouping fetch timings.
+	 */
+	private String urlClass(String url) {
+		if (url.startsWith(source.getCoursesUrl())) {
+			return url.contains("&code=")? "subject" : "root";
+		}
+		String degreesUrl = source.getDegreesUrl();
+		return (degreesUrl != null && url.startsWith(degreesUrl.substring(0, degreesUrl.indexOf('?'))))? "degree" : "other";
+	}
+	
 	/**
 	 * Reference a section of course sublist page HTML to parse out course values.
 	 * @param titleElement The <dt> element of a particular course.
@@ -104,44 +639,90 @@ public class Crawler {
 			<dd>[description <br>] [<i>Prerequisite:</i> [prereqs]<br>] [<i>Corequisite:</i> [coreqs]<br>]
 			</dd>
 		 */
-		// Rather than getting too deep into regex stuff, will just use string and jsoup methods
-		// to parse out expected data into the Course object elements.
+		// Everything is picked out in one pass over the title text and the description's
+		// child nodes (no regexes, and the description is never re-rendered as a whole).
 		
-		// Split full dt element text into its elements:
-		// course code (already known), number, credits in parentheses,
-		// and each word of the course title (easier to get the bold element contents instead)
+		// Title text: course code (subject, number), then credits in parentheses,
+		// then each word of the course title (easier to get the bold element contents instead)
 		String fullTitle = titleElement.text();
-		String[] titlePieces = fullTitle.split(" ");
+		int subjectEnd = fullTitle.indexOf(' ');
+		int numberEnd = fullTitle.indexOf(' ', subjectEnd+1);
+		int creditsEnd = fullTitle.indexOf(' ', numberEnd+1);
+		if (creditsEnd < 0) creditsEnd = fullTitle.length();
 		
-		// Get the useful components as their own variables
-		String subject = titlePieces[0];
-		int number = Integer.parseInt(titlePieces[1]);
-		String[] creditList = titlePieces[2].replaceAll("[()]","").split("[-/]"); // remove parentheses around credits
+		String subject = fullTitle.substring(0, subjectEnd);
+		int number = Integer.parseInt(fullTitle.substring(subjectEnd+1, numberEnd));
 		
-		// Must parse further in case course can be taken multiple times (format: "([credits][-/][max])")
-		BigDecimal credits = new BigDecimal(creditList[0]);
+		// Credits are "([credits])", or "([credits][-/][max])" if the course can be taken multiple times
+		StringBuilder creditText = new StringBuilder(), maxText = null;
+		for (int i = numberEnd+1; i < creditsEnd; i++) {
+			char ch = fullTitle.charAt(i);
+			if (ch == '(' || ch == ')') {
+				continue; // remove parentheses around credits
+			} else if (ch == '-' || ch == '/') {
+				if (maxText != null) break; // only the first two values matter
+				maxText = new StringBuilder();
+			} else {
+				((maxText == null)? creditText : maxText).append(ch);
+			}
+		}
+		BigDecimal credits = new BigDecimal(creditText.toString());
 		BigDecimal maxCredits = credits; // Default, same as regular credits
-		if (creditList.length > 1) { // Override with specific value if available
-			maxCredits = new BigDecimal(creditList[1]);
+		if (maxText != null) { // Override with specific value if available
+			maxCredits = new BigDecimal(maxText.toString());
 		}
 		
-		String title = titleElement.select("b").text();
+		String title = titleElement.getElementsByTag("b").text();
 		
-		// Similar for dd element, except not all fields need be present:
+		// Similar for dd element, except not all fields need be present;
+		// each field is a run of nodes ending in <br>.
 		Element descElement = titleElement.nextElementSibling();
-		String fullDesc = descElement.html();
-		String[] descPieces = fullDesc.split("<br>");
-		String description = null, prereqs = null, coreqs = null;
+		List<String> descPieces = new ArrayList<String>();
+		StringBuilder piece = new StringBuilder();
+		// Lay out the description's markup as jsoup's html() would (whose output the fields were
+		// always taken from): every element but a leading one starts on a new line, since <dd> is a block
+		boolean started = false, sawBreak = false;
+		for (Node node : descElement.childNodes()) {
+			String html;
+			if (node instanceof Element) {
+				Element element = (Element) node;
+				if (started && (element.tag().formatAsBlock() || descElement.tag().formatAsBlock())) {
+					piece.append('\n');
+				}
+				started = true;
+				if (element.tagName().equals("br")) {
+					descPieces.add(piece.toString());
+					piece.setLength(0);
+					sawBreak = true;
+					continue;
+				}
+				html = isLabel(element, "Prerequisite:")? "<i>Prerequisite:</i>"
+						: isLabel(element, "Corequisite:")? "<i>Corequisite:</i>"
+						: element.outerHtml(); // other inline markup (links etc.) is kept as-is
+			} else {
+				html = node.outerHtml(); // text (entity-escaped, whitespace collapsed)
+			}
+			piece.append(html);
+			started |= !html.isEmpty();
+		}
+		// A blank field after the final <br> doesn't count as a field
+		String last = piece.toString();
+		if (!sawBreak || !last.trim().isEmpty()) {
+			descPieces.add(last);
+		}
+		while (sawBreak && !descPieces.isEmpty() && descPieces.get(descPieces.size()-1).isEmpty()) {
+			descPieces.remove(descPieces.size()-1);
+		}
 		
 		// Find the appropriate value to assign based on contents of each newline-separated field.
-		for (int checkIndex = 0; checkIndex < descPieces.length; checkIndex++) {
-			String piece = descPieces[checkIndex];
-			if (piece.contains("Prerequisite")){
-				prereqs = piece.replace("<i>Prerequisite:</i>", "").trim();
-			} else if (piece.contains("Corequisite")) {
-				coreqs = piece.replace("<i>Corequisite:</i>", "").trim();
+		String description = null, prereqs = null, coreqs = null;
+		for (String field : descPieces) {
+			if (field.contains("Prerequisite")){
+				prereqs = field.replace("<i>Prerequisite:</i>", "").trim();
+			} else if (field.contains("Corequisite")) {
+				coreqs = field.replace("<i>Corequisite:</i>", "").trim();
 			} else {
-				description = piece.trim();
+				description = field.trim();
 				if (description.equals("")) {
 					description = null; // use null instead of empty string if not present
 				}
@@ -151,11 +732,262 @@ public class Crawler {
 		// Create the course object
 		return new Course(subject, number, credits, maxCredits, title, description, prereqs, coreqs);
 	}
+	
+	/**
+	 * Whether an element is a plain field label in a course description, eg. <i>Prerequisite:</i>.
+	 */
+	private static boolean isLabel(Element element, String label) {
+		return element.tagName().equals("i")
+				&& element.attributes().size() == 0
+				&& element.childNodeSize() == 1
+				&& element.childNode(0) instanceof TextNode
+				&& ((TextNode) element.childNode(0)).getWholeText().equals(label);
+	}
 
+	/**
+	 * Crawl the program pages under the degrees root and parse each degree program found into a
+	 * DegreeType holding its CourseRequirements.
+	 * Pages are discovered a level of links at a time, and every page on a level is fetched at once
+	 * on a bounded pool of threads (still at most maxPerHost requests to the calendar host at once,
+	 * or the shared scheduler's threads and limits), so the whole tree takes about as long as its
+	 * deepest chain of pages.
+	 * @param threads Number of worker threads (at least 1).
+	 * @return Every degree program found (each once), in the order its page was discovered
+	 * (none if this calendar has no degrees root).
+	 */
+	public List<DegreeType> crawlDegrees(int threads) throws IOException {
+		Map<String, DegreeType> degrees = new LinkedHashMap<String, DegreeType>();
+		if (source.getDegreesUrl() == null) {
+			return new ArrayList<DegreeType>();
+		}
+		Set<String> seen = new HashSet<String>();
+		List<String> level = new ArrayList<String>();
+		level.add(source.getDegreesUrl());
+		seen.add(source.getDegreesUrl());
+		
+		for (int depth = 0; depth <= MAX_DEGREE_DEPTH && !level.isEmpty(); depth++) {
+			List<Callable<Document>> fetches = new ArrayList<Callable<Document>>(level.size());
+			for (final String url : level) {
+				fetches.add(() -> fetch(url));
+			}
+			
+			List<String> next = new ArrayList<String>();
+			for (Document page : runAll(fetches, threads)) {
+				DegreeType degree = parseRequirementsFrom(page);
+				if (degree != null && !degrees.containsKey(degree.toString())) {
+					degrees.put(degree.toString(), degree);
+				}
+				// Only links further down the degrees tree lead to more program pages
+				for (Element link : page.select("a[href*="+source.getDegreeLink()+"]")) {
+					String url = link.absUrl("href");
+					int anchor = url.indexOf('#');
+					if (anchor >= 0) url = url.substring(0, anchor);
+					if (!url.isEmpty() && seen.add(url)) {
+						next.add(url);
+					}
+				}
+			}
+			level = next;
+		}
+		return new ArrayList<DegreeType>(degrees.values());
+	}
+	
+	/**
+	 * Run every task on the shared scheduler (taking turns with other calendars' tasks), or if it isn't
+	 * shared, on a pool of the given number of threads, and wait for all of their results.
+	 * @return The results, in the same order as the tasks.
+	 */
+	private <T> List<T> runAll(List<Callable<T>> tasks, int threads) throws IOException {
+		if (sharedScheduler) {
+			return scheduler.invokeAll(source.getName(), tasks);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+			for (Callable<T> task : tasks) {
+				futures.add(pool.submit(task));
+			}
+			return FetchScheduler.awaitAll(futures);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Parse a degree program page: its heading (eg. "Bachelor of Science, Major in Computer Science")
+	 * gives the degree, and each row of its requirement tables with a number of credits in the last
+	 * cell gives a requirement. Rows naming courses require those courses; rows asking for electives
+	 * become conditions on the named subject(s) or faculty, and year level.
+	 * (Does not touch the shared course list, so it is safe to call from several threads.)
+	 * @param page A page under the degrees root.
+	 * @return The degree and its requirements, or null if the page is not a degree program.
+	 */
+	DegreeType parseRequirementsFrom(Document page) {
+		// Find the degree this page is for
+		Matcher heading = null;
+		for (Element h : page.select("h1, h2, h3")) {
+			Matcher m = DEGREE_HEADING.matcher(h.text());
+			if (m.find()) {
+				heading = m;
+				break;
+			}
+		}
+		if (heading == null) return null;
+		DegreeType.DegreeLevel level = heading.group(1).equalsIgnoreCase("Bachelor")? DegreeType.DegreeLevel.B
+				: heading.group(1).equalsIgnoreCase("Master")? DegreeType.DegreeLevel.M : DegreeType.DegreeLevel.PhD;
+		
+		Integer minCredits = null;
+		Matcher total = MIN_CREDITS.matcher(page.body().text());
+		if (total.find()) {
+			minCredits = Integer.valueOf(total.group(1));
+		} else if (level == DegreeType.DegreeLevel.B) {
+			minCredits = DEFAULT_BACHELOR_CREDITS;
+		} else {
+			System.err.println("No credit total found for "+heading.group()+"; skipping it.");
+			return null;
+		}
+		DegreeType degree = new DegreeType(level, heading.group(2).trim(), heading.group(3).trim(), minCredits);
+		String key = new Course().getKeyHeadings()[0];
+		
+		// The same condition may come up in several years (eg. "Electives");
+		// it is one row of the table, so merge those into one requirement
+		Map<String, CourseRequirement> reqs = new LinkedHashMap<String, CourseRequirement>();
+		CourseRequirement dummy = new CourseRequirement(degree);
+		for (Element row : page.select("table tr")) {
+			Elements cells = new Elements();
+			for (Element cell : row.children()) {
+				if (cell.tagName().equals("td") || cell.tagName().equals("th")) cells.add(cell);
+			}
+			if (cells.size() < 2) continue;
+			// (leaving out footnote markers, eg. "Arts electives<sup>1</sup>")
+			Element first = cells.first().clone();
+			first.select("sup").remove();
+			String description = first.text().trim();
+			Matcher creditCell = CREDIT_CELL.matcher(cells.last().text());
+			if (description.isEmpty() || !creditCell.matches() || description.toLowerCase().startsWith("total")) {
+				continue;
+			}
+			Integer credits = Integer.valueOf(creditCell.group(1));
+			
+			String cond;
+			Integer count;
+			PrerequisiteExpression courses = PrerequisiteExpression.parse(description);
+			if (courses != null) {
+				cond = courseCondition(key, courses);
+				// "Two of ..." says outright how many; otherwise count what the expression needs
+				Matcher howMany = COURSES_OF.matcher(description);
+				count = howMany.lookingAt()? NUMBER_WORDS.indexOf(howMany.group(1).toLowerCase()) + 1 : courseCount(courses);
+			} else if (description.toLowerCase().contains("elective")) {
+				cond = electiveCondition(key, description);
+				count = null;
+			} else {
+				continue; // eg. a heading row; not a requirement
+			}
+			if (cond.length() > MAX_COND_LENGTH) {
+				System.err.println("Requirement condition too long for \""+description+"\" in "+degree+"; skipping it.");
+				continue;
+			}
+			if (description.length() > MAX_DESCRIPTION_LENGTH) {
+				description = description.substring(0, MAX_DESCRIPTION_LENGTH);
+			}
+			
+			CourseRequirement earlier = reqs.get(cond);
+			if (earlier != null) {
+				count = (count == null || earlier.getCount() == null)? null : earlier.getCount() + count;
+				credits += earlier.getCredits();
+				description = earlier.getDescription();
+			}
+			reqs.put(cond, dummy.define(cond, description, count, credits));
+		}
+		degree.add(new ArrayList<CourseRequirement>(reqs.values()));
+		return degree;
+	}
+	
+	/**
+	 * SQL condition matching exactly the courses named in a requirement,
+	 * eg. "cname = 'COSC 121'", "cname RLIKE 'COSC (111|123)'", "cname RLIKE '^MATH (100)|^STAT (230)'".
+	 */
+	private static String courseCondition(String key, PrerequisiteExpression courses) {
+		List<String> codes = new ArrayList<String>();
+		courses.collectCourses(codes);
+		Map<String, Set<String>> bySubject = new LinkedHashMap<String, Set<String>>();
+		for (String code : codes) {
+			int space = code.indexOf(' ');
+			String subject = code.substring(0, space);
+			if (!bySubject.containsKey(subject)) {
+				bySubject.put(subject, new LinkedHashSet<String>());
+			}
+			bySubject.get(subject).add(code.substring(space+1));
+		}
+		if (bySubject.size() == 1) {
+			Map.Entry<String, Set<String>> only = bySubject.entrySet().iterator().next();
+			if (only.getValue().size() == 1) {
+				return key+" = '"+only.getKey()+" "+only.getValue().iterator().next()+"'";
+			}
+			return key+" RLIKE '"+only.getKey()+" ("+String.join("|", only.getValue())+")'";
+		}
+		StringBuilder cond = new StringBuilder(key).append(" RLIKE '");
+		for (Map.Entry<String, Set<String>> subject : bySubject.entrySet()) {
+			if (cond.charAt(cond.length()-1) != '\'') cond.append('|');
+			cond.append('^').append(subject.getKey()).append(" (").append(String.join("|", subject.getValue())).append(')');
+		}
+		return cond.append('\'').toString();
+	}
+	
+	/**
+	 * Fewest courses that satisfy an expression (eg. 1 for "COSC 111 or 123", 2 for "MATH 100, 101").
+	 */
+	private static int courseCount(PrerequisiteExpression courses) {
+		if (courses instanceof PrerequisiteExpression.Group) {
+			PrerequisiteExpression.Group group = (PrerequisiteExpression.Group) courses;
+			int count = group.all? 0 : Integer.MAX_VALUE;
+			for (PrerequisiteExpression term : group.terms) {
+				count = group.all? count + courseCount(term) : Math.min(count, courseCount(term));
+			}
+			return count;
+		}
+		return 1;
+	}
 	
-	private void parseRequirementsFrom(String degree) throws IOException {
-		// TODO If able to do it programmatically, do so here;
-		// otherwise, will need to hard-code things in.
+	/**
+	 * SQL condition for an elective requirement, from the subject or faculty and year level it names,
+	 * eg. "Upper-level Computer Science electives" -> "cname RLIKE '^COSC (3|4)'",
+	 * "Arts electives" -> "cname RLIKE '^(ANTH|ECON|...) '", "Electives" -> any course.
+	 * (Several subjects share one group, so a whole faculty's upper-level electives still fit the cond column.)
+	 */
+	private static String electiveCondition(String key, String description) {
+		String lower = description.toLowerCase();
+		boolean upper = lower.contains("upper-level") || lower.contains("upper-year") || lower.contains("upper level")
+				|| lower.contains("upper year") || lower.matches(".*\\b(3rd|4th|third|fourth)[- ]year\\b.*");
+		String levels = upper? "(3|4)" : "";
+		
+		// A named subject (eg. "Computer Science electives"), else a whole faculty ("Arts electives")
+		List<Subject> subjects = new ArrayList<Subject>();
+		Set<String> codes = new HashSet<String>();
+		for (Subject[] faculty : new Subject[][] {Faculties.ARTS_SUBJECTS, Faculties.SCI_SUBJECTS}) {
+			for (Subject subject : faculty) {
+				if (lower.contains(subject.title.toLowerCase()+" elective") && codes.add(subject.code)) {
+					subjects.add(subject);
+				}
+			}
+		}
+		if (subjects.isEmpty()) {
+			if (lower.contains("arts elective")) {
+				subjects.addAll(Arrays.asList(Faculties.ARTS_SUBJECTS));
+			} else if (lower.contains("science elective")) {
+				subjects.addAll(Arrays.asList(Faculties.SCI_SUBJECTS));
+			}
+		}
+		
+		if (subjects.isEmpty()) {
+			return key+" RLIKE '"+(upper? "^[a-zA-Z]+ "+levels : "[\\s\\S]*")+"'";
+		}
+		List<String> subjectCodes = new ArrayList<String>(subjects.size());
+		for (Subject subject : subjects) {
+			subjectCodes.add(subject.code);
+		}
+		String subjectPattern = (subjectCodes.size() == 1)? subjectCodes.get(0) : "("+String.join("|", subjectCodes)+")";
+		return key+" RLIKE '^"+subjectPattern+" "+levels+"'";
 	}
 	
 
@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * EZ-Plan
+ * Micro-benchmarks for the hot paths of a crawl and load, so changes to the parser,
+ * the tuple classes or the table writer can be compared before and after:
+ * 	- parsing recorded subject pages (Jsoup parse + Crawler.parseCourses)
+ * 	- Tuple.getValues()/getColumns() on Course, CourseRequirement and DegreeType
+ * 	- batch insert throughput (only if a database is given; see below)
+ * Each benchmark reports time per operation, bytes allocated per operation and
+ * GC activity during measurement, so allocation regressions show up as well as slowdowns.
+ * (This is a plain warmup-then-measure loop, not JMH; compare runs on the same machine and JVM.)
+ *
+ * Usage: java CrawlerBenchmark [subject-page.html ...]
+ * Without pages, the recorded ones in test/fixtures are parsed.
+ * For the insert benchmark, also pass -Dbench.jdbc.url=... -Dbench.jdbc.user=... -Dbench.jdbc.pass=...
+ * (rows go to a table of its own, Course_bench, which is emptied between iterations and dropped afterwards;
+ * no other table is touched).
+ */
+public class CrawlerBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 20, MEASURED_ITERATIONS = 20;
+
+	// Scratch table for the insert benchmark (never the real Course table)
+	private static final String BENCH_TABLE = "Course_bench";
+
+	// Recorded subject pages parsed when none are given
+	private static final String FIXTURES = "test/fixtures";
+
+	/**
+	 * Something for benchmarked code to write results to, so the JIT can't discard the work.
+	 */
+	private static volatile int sink;
+
+	/**
+	 * A single benchmark: one call of run() performs opsPerRun operations.
+	 */
+	private interface Benchmark {
+		void run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		// Parsing recorded pages (the file contents are read up front so disk time isn't measured)
+		List<File> files = new ArrayList<File>();
+		for (String fileName : args) {
+			files.add(new File(fileName));
+		}
+		if (files.isEmpty()) {
+			File[] recorded = new File(FIXTURES).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+			if (recorded != null) {
+				Arrays.sort(recorded);
+				files.addAll(Arrays.asList(recorded));
+			}
+		}
+		final List<String> pages = new ArrayList<String>();
+		for (File file : files) {
+			pages.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		}
+		final Crawler crawler = new Crawler();
+		final List<Course> courses = new ArrayList<Course>();
+		for (String page : pages) {
+			courses.addAll(crawler.parseCourses(Jsoup.parse(page)));
+		}
+		if (!pages.isEmpty()) {
+			measure("parse subject pages", pages.size(), () -> {
+				for (String page : pages) {
+					Document doc = Jsoup.parse(page);
+					sink += crawler.parseCourses(doc).size();
+				}
+			});
+		} else {
+			System.out.println("(Skipping the parse benchmark; no subject pages given, and none recorded in "+FIXTURES+".)");
+		}
+		
+		// Tuple encoding (falls back to a sample course if no pages were given)
+		if (courses.isEmpty()) {
+			courses.add(new Course("COSC", 310, new BigDecimal("3"), new BigDecimal("3"),
+					"Software Engineering", "Sample description.", "COSC 121.", null));
+		}
+		final Course course = courses.get(0);
+		final DegreeType degree = new DegreeType(DegreeType.DegreeLevel.B, "Science", "Computer Science", 120);
+		final CourseRequirement requirement = new CourseRequirement(degree, "cname = 'COSC 310'", "COSC 310", 1, 3);
+		final int encodeOps = 10000;
+		measure("Course getValues/getColumns", encodeOps, () -> encode(course, encodeOps));
+		measure("CourseRequirement getValues/getColumns", encodeOps, () -> encode(requirement, encodeOps));
+		measure("DegreeType getValues/getColumns", encodeOps, () -> encode(degree, encodeOps));
+		
+		// Batch insert throughput against a scratch database
+		String url = System.getProperty("bench.jdbc.url");
+		if (url != null) {
+			final ArrayList<Tuple> rows = new ArrayList<Tuple>();
+			for (int i = 0; rows.size() < 2000; i++) {
+				Course c = courses.get(i % courses.size());
+				// Distinct course codes so every row is a real insert
+				rows.add(new Course("B"+(i / 1000), i % 1000, new BigDecimal("3"), new BigDecimal("3"),
+						c.getTitle(), c.getDescription(), c.getPrereqs(), c.getCoreqs()));
+			}
+			try (ConnectionPool pool = new ConnectionPool(url,
+					System.getProperty("bench.jdbc.user"), System.getProperty("bench.jdbc.pass"), 1);
+					MySQLTableInput table = new MySQLTableInput(pool)) {
+				update(pool, "DROP TABLE IF EXISTS "+BENCH_TABLE);
+				table.createTable(course.getTableDDL().replaceFirst("CREATE TABLE "+course.getTableTitle()+"\\b", "CREATE TABLE "+BENCH_TABLE));
+				try {
+					// (emptying the table between iterations isn't timed)
+					measure("populateTable (rows)", rows.size(),
+							() -> update(pool, "DELETE FROM "+BENCH_TABLE),
+							() -> sink += table.populateTable(BENCH_TABLE, rows.iterator()));
+					measure("upsertTable, chunks of 500 (rows)", rows.size(),
+							() -> update(pool, "DELETE FROM "+BENCH_TABLE),
+							() -> sink += table.upsertTable(BENCH_TABLE, rows.iterator(), 500));
+				} finally {
+					update(pool, "DROP TABLE IF EXISTS "+BENCH_TABLE);
+				}
+			}
+		} else {
+			System.out.println("(Skipping insert benchmarks; set -Dbench.jdbc.url to run them.)");
+		}
+	}
+
+	private static void encode(Tuple t, int times) {
+		for (int i = 0; i < times; i++) {
+			sink += t.getValues().length + t.getColumns().length;
+		}
+	}
+
+	private static void update(ConnectionPool pool, String sql) throws Exception {
+		java.sql.Connection con = pool.borrow();
+		try (java.sql.Statement stat = con.createStatement()) {
+			stat.executeUpdate(sql);
+		} finally {
+			pool.release(con);
+		}
+	}
+
+	/**
+	 * Run a benchmark through warmup and measured iterations, and print its results.
+	 * @param name Label for the results.
+	 * @param opsPerRun Number of operations one run performs.
+	 * @param benchmark
+	 */
+	private static void measure(String name, int opsPerRun, Benchmark benchmark) throws Exception {
+		measure(name, opsPerRun, null, benchmark);
+	}
+
+	/**
+	 * Same as measure(name, opsPerRun, benchmark), with untimed setup before every run.
+	 * @param setup Run before each run of the benchmark, outside the timings and allocation counts (or null).
+	 */
+	private static void measure(String name, int opsPerRun, Benchmark setup, Benchmark benchmark) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			if (setup != null) setup.run();
+			benchmark.run();
+		}
+		
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long gcCountBefore = gcCount(), gcTimeBefore = gcTime();
+		long allocated = 0;
+		long best = Long.MAX_VALUE, total = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			if (setup != null) setup.run();
+			long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			benchmark.run();
+			long elapsed = System.nanoTime() - start;
+			allocated += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+			total += elapsed;
+			best = Math.min(best, elapsed);
+		}
+		
+		long ops = (long) opsPerRun * MEASURED_ITERATIONS;
+		System.out.printf("%-40s %12.1f ns/op (best %.1f) %12.1f B/op %10.1f MB/s alloc, %d GCs (%d ms)%n",
+				name, (double) total / ops, (double) best / opsPerRun, (double) allocated / ops,
+				allocated / 1048576.0 / (total / 1e9), gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+}
@@ -1,8 +1,15 @@
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * EZ-Plan
@@ -11,15 +18,89 @@ import java.util.List;
  *
  */
 public class CrawlerExecute {
+	
+	// Database connection information
+	private static final String DB_PATH = "jdbc:mysql://cosc304.ok.ubc.ca/db_ioyedele",
+			DB_USER = "ioyedele", DB_PASS = "36547123";
+	
+	/**
+	 * Connections shared by every table load in this run.
+	 */
+	private static ConnectionPool pool;
+	
+	/**
+	 * Timings and counts for this run (written out as a report when it finishes).
+	 */
+	private static CrawlMetrics metrics = new CrawlMetrics();
+	
+	/**
+	 * HTTP client shared by every crawler in this run (pass -Dcrawler.connectTimeout and
+	 * -Dcrawler.readTimeout, in milliseconds, to change its timeouts).
+	 */
+	private static PageFetcher fetcher = new PageFetcher(
+			Integer.getInteger("crawler.connectTimeout", PageFetcher.DEFAULT_CONNECT_TIMEOUT_MILLIS),
+			Integer.getInteger("crawler.readTimeout", PageFetcher.DEFAULT_READ_TIMEOUT_MILLIS));
+	
+	/**
+	 * Calendars crawled by populateCalendars (each into tables of its own).
+	 * Archived sessions can be added here as further sources once their URLs are known.
+	 */
+	private static final List<CalendarSource> CALENDARS = Arrays.asList(
+			CalendarSource.OKANAGAN, CalendarSource.VANCOUVER);
 
 	public static void main(String[] args) throws IOException {
-
-		// Add courses to database
-		//populateCourses(); // former main method defined here
-		
-		// Add course requirements to database
-		populateRequirements();
-
+		try (ConnectionPool shared = new ConnectionPool(
+				DB_PATH+"?rewriteBatchedStatements=true&allowLoadLocalInfile=true", DB_USER, DB_PASS, 2)) {
+			pool = shared;
+	
+			// Add courses to database
+			//populateCourses(); // former main method defined here
+			
+			// Or, every calendar at once, each into tables of its own
+			//populateCalendars(CALENDARS);
+			
+			// Add course requirements to database
+			populateAllRequirements(); // falls back on the hard-coded populateRequirements()
+		} finally {
+			// Report where the run spent its time (even if it failed partway)
+			metrics.writeJson(new File("crawl-report.json"));
+			metrics.writePrometheus(new File("crawl-metrics.prom"));
+		}
+	}
+	
+	/**
+	 * A crawler set up for this run: shared metrics, and pages cached between runs
+	 * (pass -Dcrawler.offline=true to re-run the parser from the cache without the network,
+	 * and -Dcrawler.streaming=true to parse subject pages as a stream rather than as whole documents).
+	 */
+	private static Crawler newCrawler() throws IOException {
+		return setUp(new Crawler(Crawler.DEFAULT_MAX_PER_HOST));
+	}
+	
+	/**
+	 * Same as newCrawler(), but for the given calendar, on a scheduler shared with the other calendars' crawlers.
+	 */
+	private static Crawler newCrawler(CalendarSource source, FetchScheduler scheduler) throws IOException {
+		return setUp(new Crawler(source, scheduler));
+	}
+	
+	private static Crawler setUp(Crawler crawler) throws IOException {
+		PageCache cache = new PageCache(new File("page-cache"));
+		cache.setOffline(Boolean.getBoolean("crawler.offline"));
+		crawler.setStreamingParse(Boolean.getBoolean("crawler.streaming"));
+		crawler.setPageCache(cache);
+		crawler.setFetcher(fetcher);
+		crawler.setMetrics(metrics);
+		return crawler;
+	}
+	
+	/**
+	 * A table handler on the shared connection pool, recording into the shared metrics.
+	 */
+	private static MySQLTableInput newTable() {
+		MySQLTableInput table = new MySQLTableInput(pool);
+		table.setMetrics(metrics);
+		return table;
 	}
 	
 	/**
@@ -29,8 +110,26 @@ public class CrawlerExecute {
 	 */
 	private static void populateCourses() throws IOException {
 		System.out.println("Retrieving course data...");
-		Crawler crawler = new Crawler();
-		ArrayList<Tuple> courseList = crawler.fullCrawl();
+		long start = System.nanoTime();
+		Crawler crawler = newCrawler();
+		// Subjects finished by an interrupted run are replayed from the journal rather than re-fetched
+		CheckpointJournal journal = new CheckpointJournal(new File("crawl.journal"));
+		if (journal.size() > 0) {
+			System.out.println("Resuming crawl ("+journal.size()+" subjects already done)...");
+		}
+		crawler.setJournal(journal);
+		ArrayList<Tuple> courseList = null;
+		try {
+			courseList = crawler.concurrentCrawl(Crawler.DEFAULT_MAX_PER_HOST); // same ordering as fullCrawl()
+		} finally {
+			if (courseList == null) {
+				journal.close(); // the crawl failed; keep it for the next run
+			}
+		}
+		journal.delete();
+		metrics.recordPhase("crawl", System.nanoTime() - start);
+		// Keep a snapshot of the catalog so other tools can load it without re-crawling
+		CatalogSnapshot.write(new File("catalog.snap"), courseList);
 		System.out.println("Course data retrieved. Populating table...");
 		/* */
 		
@@ -52,17 +151,28 @@ public class CrawlerExecute {
 		}
 		/* */
 		
-		// Rather than printing out, add each course to database.
-		String path = "jdbc:mysql://cosc304.ok.ubc.ca/db_ioyedele",
-				user = "ioyedele", pass = "36547123";
+		// Rather than printing out, add each course to database
+		// (bulk loaded into a copy of the table, then swapped in, so readers never see a partial catalog;
+		// or, with -Dcrawler.sync=true, only the rows that changed since the last run are written).
 		Tuple first = courseList.get(0); // ugly syntax...
-		String tableDDL = first.getTableDDL();
 		String tableName = first.getTableTitle();
 		
-		MySQLTableInput table = new MySQLTableInput(path, user, pass);
-		boolean created = table.createTable(tableDDL);
-		int count = table.populateTable(tableName, courseList.iterator());
-		if (created && count >= courseList.size()) {
+		start = System.nanoTime();
+		MySQLTableInput table = newTable();
+		if (Boolean.getBoolean("crawler.sync")) {
+			int count = table.syncTable(tableName, courseList.iterator(), 500);
+			metrics.recordPhase("load", System.nanoTime() - start);
+			if (count >= 0) {
+				System.out.println("Done syncing table with course data. (changed="+count+")");
+			}
+			else {
+				System.out.println("Could not sync entire table.");
+			}
+			return;
+		}
+		int count = table.bulkReplaceTable(tableName, courseList.iterator());
+		metrics.recordPhase("load", System.nanoTime() - start);
+		if (count >= courseList.size()) {
 			// Confirm after completion of method.
 			System.out.println("Done populating table with course data. (count="+count+")");
 		} 
@@ -71,6 +181,192 @@ public class CrawlerExecute {
 		}
 	}
 
+	/**
+	 * Crawls every calendar in the list at once, and populates each one's own tables with its courses,
+	 * degree types and requirements (eg. Course_okanagan, DegreeType_vancouver).
+	 * All the calendars share one fetch scheduler, so calendars on the same host take turns within
+	 * its request limit, and calendars on different hosts are crawled side by side.
+	 * @param sources Calendars to crawl.
+	 * @throws IOException
+	 */
+	private static void populateCalendars(List<CalendarSource> sources) throws IOException {
+		// Enough threads to keep every host at its request limit
+		Set<String> hosts = new HashSet<String>();
+		for (CalendarSource source : sources) {
+			hosts.add(new URL(source.getCoursesUrl()).getHost());
+		}
+		try (FetchScheduler scheduler = new FetchScheduler(
+				Crawler.DEFAULT_MAX_PER_HOST*hosts.size(), Crawler.DEFAULT_MAX_PER_HOST)) {
+			// One thread per calendar to drive its crawl and load (the page fetches themselves run on the scheduler)
+			ExecutorService drivers = Executors.newFixedThreadPool(sources.size());
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			try {
+				for (final CalendarSource source : sources) {
+					results.add(drivers.submit(() -> {
+						populateCalendar(source, scheduler);
+						return null;
+					}));
+				}
+				FetchScheduler.awaitAll(results);
+			} finally {
+				drivers.shutdownNow();
+			}
+		}
+	}
+	
+	/**
+	 * Crawl one calendar and populate its tables (see populateCalendars).
+	 */
+	private static void populateCalendar(CalendarSource source, FetchScheduler scheduler) throws IOException {
+		System.out.println("Retrieving course and degree data from "+source+"...");
+		long start = System.nanoTime();
+		Crawler crawler = newCrawler(source, scheduler);
+		ArrayList<Tuple> courses = source.tag(crawler.concurrentCrawl(Crawler.DEFAULT_MAX_PER_HOST));
+		List<DegreeType> degrees = crawler.crawlDegrees(Crawler.DEFAULT_MAX_PER_HOST);
+		ArrayList<Tuple> reqs = new ArrayList<Tuple>();
+		for (DegreeType degree : degrees) {
+			reqs.addAll(source.tag(degree.getAll()));
+		}
+		metrics.recordPhase("crawl:"+source, System.nanoTime() - start);
+		
+		start = System.nanoTime();
+		MySQLTableInput table = newTable();
+		if (!courses.isEmpty()) {
+			int count = table.bulkReplaceTable(courses.get(0).getTableTitle(), courses.iterator());
+			System.out.println("Populated "+source+" course table. (count="+count+"/"+courses.size()+")");
+		}
+		if (!degrees.isEmpty()) {
+			ArrayList<Tuple> degreeList = source.tag(degrees);
+			Tuple first = degreeList.get(0);
+			table.createTable(first.getTableDDL());
+			int count = table.upsertTable(first.getTableTitle(), degreeList.iterator(), degreeList.size());
+			System.out.println("Populated "+source+" degree type table. (count="+count+"/"+degreeList.size()+")");
+		}
+		if (!reqs.isEmpty()) {
+			Tuple first = reqs.get(0);
+			table.createTable(first.getTableDDL());
+			int count = table.upsertTable(first.getTableTitle(), reqs.iterator(), reqs.size());
+			System.out.println("Populated "+source+" requirement table. (count="+count+"/"+reqs.size()+")");
+		}
+		metrics.recordPhase("load:"+source, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Same as populateCourses, but courses are inserted while the crawl is still running
+	 * (rather than holding the whole catalog in memory first).
+	 * Pass -Dcrawler.export=[directory] to also write them to courses.jsonl and Course.tsv.gz there, in the same pass.
+	 * @throws IOException
+	 */
+	private static void streamCourses() throws IOException {
+		System.out.println("Streaming course data into table...");
+		long start = System.nanoTime();
+		TupleSink sink = new MySQLSink(newTable(), 200);
+		String export = System.getProperty("crawler.export");
+		if (export != null) {
+			// Each destination gets a writer of its own, so a slow database doesn't hold up the files
+			File dir = new File(export);
+			dir.mkdirs();
+			sink = new FanOutSink(new WriteBehindSink(sink, 1000),
+					new WriteBehindSink(new JsonLinesSink(new File(dir, "courses.jsonl")), 1000),
+					new WriteBehindSink(new GzipTsvSink(new File(dir, "Course.tsv.gz")), 1000));
+		}
+		CrawlPipeline pipeline = new CrawlPipeline(sink, 1000);
+		int count = pipeline.run(newCrawler());
+		metrics.recordPhase("stream", System.nanoTime() - start);
+		if (count >= 0) {
+			System.out.println("Done populating table with course data. (count="+count+")");
+		} 
+		else {
+			System.out.println("Could not populate entire table.");
+		}
+	}
+	
+	/**
+	 * Recrawls only the subject pages that changed since the last run (per the saved crawl state),
+	 * and writes the changes to the database (new and changed courses, and deletes removed ones).
+	 * @throws IOException
+	 */
+	private static void refreshCourses() throws IOException {
+		System.out.println("Checking for course changes...");
+		File stateFile = new File("crawl-state.properties");
+		CrawlState state = CrawlState.load(stateFile);
+		long start = System.nanoTime();
+		CourseDelta delta = newCrawler().incrementalCrawl(state);
+		metrics.recordPhase("crawl", System.nanoTime() - start);
+		System.out.println("Course changes found: "+delta);
+		
+		ArrayList<Tuple> changed = new ArrayList<Tuple>(delta.getAdded());
+		changed.addAll(delta.getModified());
+		start = System.nanoTime();
+		if (!changed.isEmpty()) {
+			MySQLTableInput table = newTable();
+			table.createTable(changed.get(0).getTableDDL()); // (or add any columns it lacks)
+			int count = table.upsertTable(changed.get(0).getTableTitle(), changed.iterator(), 500);
+			if (count < changed.size()) {
+				// Leave the saved state alone so the same changes are found again next run
+				System.out.println("Could not write changed courses. (count="+count+"/"+changed.size()+")");
+				return;
+			}
+		}
+		if (!delta.getRemoved().isEmpty()) {
+			Course course = new Course();
+			List<String[]> keys = new ArrayList<String[]>();
+			for (String code : delta.getRemoved()) {
+				keys.add(new String[] {code});
+			}
+			int count = newTable().deleteRows(course.getTableTitle(), course.getKeyHeadings(), keys.iterator(), 500);
+			if (count < keys.size()) {
+				System.out.println("Could not delete removed courses. (count="+count+"/"+keys.size()+")");
+				return;
+			}
+		}
+		metrics.recordPhase("load", System.nanoTime() - start);
+		state.save(stateFile);
+	}
+
+	/**
+	 * Crawls every degree program in the calendar, and populates the database with them and their
+	 * requirements (all degrees in one batch, then all requirements in another).
+	 * If no programs could be read off the calendar, the hard-coded ones are used instead.
+	 * @throws IOException
+	 */
+	private static void populateAllRequirements() throws IOException {
+		System.out.println("Retrieving degree and requirement data...");
+		long start = System.nanoTime();
+		List<DegreeType> degrees = newCrawler().crawlDegrees(Crawler.DEFAULT_MAX_PER_HOST);
+		metrics.recordPhase("degrees", System.nanoTime() - start);
+		if (degrees.isEmpty()) {
+			System.out.println("No degree programs found; using the hard-coded ones.");
+			populateRequirements();
+			return;
+		}
+		
+		ArrayList<Tuple> degreeList = new ArrayList<Tuple>(degrees), reqs = new ArrayList<Tuple>();
+		for (DegreeType degree : degrees) {
+			reqs.addAll(degree.getAll());
+		}
+		System.out.println("Requirements data retrieved for "+degrees.size()+" degrees. Populating tables...");
+		
+		// Degrees first, since requirements reference them; upserted so the load can be re-run
+		start = System.nanoTime();
+		MySQLTableInput table = newTable();
+		table.createTable(degreeList.get(0).getTableDDL());
+		int count = table.upsertTable(degreeList.get(0).getTableTitle(), degreeList.iterator(), degreeList.size());
+		if (count < degreeList.size()) {
+			System.out.println("Could not populate entire table of degree type data. (count="+count+"/"+degreeList.size()+")");
+		}
+		if (!reqs.isEmpty()) {
+			Tuple first = reqs.get(0);
+			table.createTable(first.getTableDDL());
+			count = table.upsertTable(first.getTableTitle(), reqs.iterator(), reqs.size());
+			if (count < reqs.size()) {
+				System.out.println("Could not populate entire table of requirement data. (count="+count+"/"+reqs.size()+")");
+			}
+		}
+		metrics.recordPhase("requirements", System.nanoTime() - start);
+		System.out.println("Done populating tables with degree and requirement data.");
+	}
+	
 	/**
 	 * Finds, and populates the database with, certain degree types and their requirements.
 	 * (Currently, only Computer Science, as we ended up having to do it manually.)
@@ -136,13 +432,12 @@ public class CrawlerExecute {
 		
 		System.out.println("Requirements data specified. Populating table...");
 		
-		String path = "jdbc:mysql://cosc304.ok.ubc.ca/db_ioyedele",
-				user = "ioyedele", pass = "36547123";
 		
 		// Create if necessary, and populate degrees table with this degree
 		String tableDDL = bscCosc.getTableDDL();
 		String tableName = bscCosc.getTableTitle();
-		MySQLTableInput table = new MySQLTableInput(path, user, pass);
+		long start = System.nanoTime();
+		MySQLTableInput table = newTable();
 		boolean created = table.createTable(tableDDL);
 		int count = table.populateTable(tableName, bscWrapper.iterator());
 		if (created && count >= 1) {
@@ -159,6 +454,7 @@ public class CrawlerExecute {
 		tableName = first.getTableTitle();
 		created = table.createTable(tableDDL);
 		count = table.populateTable(tableName, reqs.iterator());
+		metrics.recordPhase("requirements", System.nanoTime() - start);
 		if (created && count >= reqs.size()) {
 			// Confirm after completion of method.
 			System.out.println("Done populating table with requirement data. (count="+count+")");
@@ -1,3 +1,5 @@
+import java.sql.Types;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -79,44 +81,46 @@ public class DegreeType implements Tuple {
 		return courseReqs;
 	}
 	
+	/**
+	 * Columns, key, DDL and statements for degree type tuples.
+	 */
+	static final TupleSchema<DegreeType> SCHEMA = new TupleSchema<DegreeType>(DegreeType.class, "DegreeType",
+			"CREATE TABLE IF NOT EXISTS DegreeType ( "
+				+ "degree VARCHAR(100), "
+				+ "mincredits INT, "
+				+ "PRIMARY KEY (degree)"
+				+ " )",
+			new String[] {"degree"},
+			Arrays.asList(
+				new TupleSchema.Column<DegreeType>("degree", Types.VARCHAR, DegreeType::toString),
+				new TupleSchema.Column<DegreeType>("mincredits", Types.INTEGER, d -> d.minCredits)));
+	
 	@Override
 	public String[] getValues() {
 		// Note, CourseRequirement tuples are in their own table and
 		// will be referenced by this combination of attributes,
 		// so the DDL is fairly simple.
-		return new String[] {
-				this.toString(),
-				minCredits.toString()
-				};
+		return SCHEMA.valuesOf(this);
 	}
 
 	@Override
 	public String[] getColumns() {
-		return new String[] {
-				"degree", 
-				"mincredits"
-				};
+		return SCHEMA.getColumns().clone();
 	}
 
 	@Override
 	public String[] getKeyHeadings() {
-		return new String[] {getColumns()[0]};
+		return SCHEMA.getKeyHeadings().clone();
 	}
 
 	@Override
 	public String getTableDDL() {
-		String ddl =
-				"CREATE TABLE IF NOT EXISTS DegreeType ( "
-				+ "degree VARCHAR(100), "
-				+ "mincredits INT, "
-				+ "PRIMARY KEY (degree)"
-				+ " )";
-		return ddl;
+		return SCHEMA.getTableDDL();
 	}
 
 	@Override
 	public String getTableTitle() {
-		return "DegreeType";
+		return SCHEMA.getTableTitle();
 	}
 	
 	@Override
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * EZ-Plan
+ * Writes every tuple to several sinks, so one crawl can go to the database and to export files
+ * in the same pass. Each sink is written in turn on the caller's thread; wrap slow ones in a
+ * WriteBehindSink so they don't hold up the others.
+ *
+ * A sink that fails is reported and left out from then on, and the rest carry on;
+ * flush() and close() then throw the first failure.
+ */
+public class FanOutSink implements TupleSink {
+
+	private List<TupleSink> sinks;
+	private List<TupleSink> failed = new ArrayList<TupleSink>();
+	private IOException failure;
+
+	public FanOutSink(TupleSink... sinks) {
+		this(Arrays.asList(sinks));
+	}
+
+	/**
+	 * @param sinks Sinks to write to (closed along with this one).
+	 */
+	public FanOutSink(List<TupleSink> sinks) {
+		this.sinks = new ArrayList<TupleSink>(sinks);
+	}
+
+	@Override
+	public void write(Tuple t) throws IOException {
+		for (TupleSink sink : sinks) {
+			if (failed.contains(sink)) continue;
+			try {
+				sink.write(t);
+			} catch (IOException | RuntimeException e) {
+				fail(sink, e);
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		for (TupleSink sink : sinks) {
+			if (failed.contains(sink)) continue;
+			try {
+				sink.flush();
+			} catch (IOException | RuntimeException e) {
+				fail(sink, e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Close every sink (including any that failed, so they let go of their files and threads).
+	 */
+	@Override
+	public void close() throws IOException {
+		for (TupleSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException | RuntimeException e) {
+				if (!failed.contains(sink)) fail(sink, e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void fail(TupleSink sink, Exception e) {
+		System.err.println("Could not write to "+sink.getClass().getSimpleName()+"; leaving it out from now on:");
+		e.printStackTrace();
+		failed.add(sink);
+		if (failure == null) {
+			failure = (e instanceof IOException)? (IOException) e : new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * EZ-Plan
+ * Fetch scheduling shared by any number of crawlers (eg. one per calendar source) in a run.
+ * There is one pool of worker threads for all of them, and one request limit per host:
+ * crawlers whose calendars live on the same host share its limit instead of each getting their own.
+ *
+ * Work is fair in both respects: worker threads take tasks from each source in turn
+ * (so a calendar with many pages doesn't hold up one with few), and requests waiting on
+ * a busy host are let through in the order they arrived.
+ */
+public class FetchScheduler implements AutoCloseable {
+
+	private int threads, maxPerHost;
+	private ConcurrentHashMap<String, Semaphore> hostPermits;
+
+	// Tasks waiting for a worker, per source, and the sources with tasks waiting, in turn order
+	private Map<String, ArrayDeque<FutureTask<?>>> queues;
+	private ArrayDeque<String> turns;
+	private List<Thread> workers;
+	private boolean closed;
+
+	/**
+	 * Sets up a scheduler (worker threads are only started when first needed).
+	 * @param threads Number of worker threads (at least 1); usually maxPerHost times the number of hosts.
+	 * @param maxPerHost Most simultaneous requests to any one host (at least 1).
+	 */
+	public FetchScheduler(int threads, int maxPerHost) {
+		this.threads = Math.max(1, threads);
+		this.maxPerHost = Math.max(1, maxPerHost);
+		hostPermits = new ConcurrentHashMap<String, Semaphore>();
+		queues = new HashMap<String, ArrayDeque<FutureTask<?>>>();
+		turns = new ArrayDeque<String>();
+		workers = new ArrayList<Thread>();
+	}
+
+	/**
+	 * The request limit for a URL's host: acquire a permit before requesting the page, and release it after.
+	 * @param url Page address.
+	 * @return The (fair) semaphore shared by every request to that host.
+	 */
+	public Semaphore permitsFor(String url) throws IOException {
+		return hostPermits.computeIfAbsent(new URL(url).getHost(), host -> new Semaphore(maxPerHost, true));
+	}
+
+	/**
+	 * Run every task on the worker threads, taking turns with the tasks of other sources, and wait for all of their results.
+	 * @param source Name of the source the tasks are for (see CalendarSource.getName()).
+	 * @param tasks Tasks to run.
+	 * @return The results, in the same order as the tasks.
+	 */
+	public <T> List<T> invokeAll(String source, List<Callable<T>> tasks) throws IOException {
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("Fetch scheduler is closed");
+			}
+			startWorkers();
+			ArrayDeque<FutureTask<?>> queue = queues.get(source);
+			if (queue == null) {
+				queue = new ArrayDeque<FutureTask<?>>();
+				queues.put(source, queue);
+			}
+			if (queue.isEmpty() && !tasks.isEmpty()) {
+				turns.add(source);
+			}
+			for (Callable<T> task : tasks) {
+				FutureTask<T> future = new FutureTask<T>(task);
+				queue.add(future);
+				futures.add(future);
+			}
+			notifyAll();
+		}
+		return awaitAll(futures);
+	}
+
+	/**
+	 * Wait for every future's result.
+	 * The first failure is thrown as an IOException (and the remaining futures are cancelled).
+	 * @return The results, in the same order as the futures.
+	 */
+	public static <T> List<T> awaitAll(List<Future<T>> futures) throws IOException {
+		List<T> results = new ArrayList<T>(futures.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Crawl interrupted", e);
+		} catch (ExecutionException e) {
+			// Surface the first failing page the same way a sequential crawl would
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Stop the worker threads; tasks still waiting are cancelled.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		for (ArrayDeque<FutureTask<?>> queue : queues.values()) {
+			for (FutureTask<?> task : queue) {
+				task.cancel(false);
+			}
+			queue.clear();
+		}
+		turns.clear();
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		notifyAll();
+	}
+
+	private void startWorkers() {
+		while (workers.size() < threads) {
+			Thread worker = new Thread(this::work, "fetch-"+workers.size());
+			worker.setDaemon(true); // never keep the program alive by themselves
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Worker loop: run the next task until closed.
+	 */
+	private void work() {
+		while (true) {
+			FutureTask<?> task;
+			try {
+				task = next();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (task == null) return;
+			task.run();
+			Thread.interrupted(); // (a cancelled task may have left the interrupt flag set)
+		}
+	}
+
+	/**
+	 * Take the next task: the oldest one of whichever source's turn it is.
+	 * @return The task, or null once closed.
+	 */
+	private synchronized FutureTask<?> next() throws InterruptedException {
+		while (turns.isEmpty()) {
+			if (closed) return null;
+			wait();
+		}
+		String source = turns.poll();
+		ArrayDeque<FutureTask<?>> queue = queues.get(source);
+		FutureTask<?> task = queue.poll();
+		if (!queue.isEmpty()) {
+			turns.add(source); // back of the line for its next task
+		}
+		return task;
+	}
+}
@@ -0,0 +1,51 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * EZ-Plan
+ * Writes one table's tuples to a gzip-compressed tab-separated file, one tuple per line,
+ * values in getColumns() order and escaped as in TsvFormat: the same format bulkReplaceTable
+ * loads, so an export can be unzipped and loaded straight back with LOAD DATA.
+ * There is no header line; every tuple must be for the same table.
+ */
+public class GzipTsvSink implements TupleSink {
+
+	private Writer out;
+	private String tableName;
+
+	/**
+	 * @param file File to write (replaced if it exists).
+	 */
+	public GzipTsvSink(File file) throws IOException {
+		// (syncFlush, so that flush() leaves a readable file behind)
+		out = new BufferedWriter(new OutputStreamWriter(
+				new GZIPOutputStream(new FileOutputStream(file), 1 << 16, true), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	@Override
+	public void write(Tuple t) throws IOException {
+		if (tableName == null) {
+			tableName = t.getTableTitle();
+		} else if (!tableName.equals(t.getTableTitle())) {
+			throw new IOException("Cannot write "+t.getTableTitle()+" tuples to a "+tableName+" export");
+		}
+		out.write(TsvFormat.join(t.getValues()));
+		out.write('\n');
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
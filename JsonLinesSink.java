@@ -0,0 +1,88 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * EZ-Plan
+ * Writes tuples as JSON Lines: one object per line, giving the tuple's table and its values by column, eg.
+ * 	{"table": "Course", "row": {"id": "COSC 111", "name": "Computer Programming I", ...}}
+ * Null values are written as null. Tuples for any number of tables can share a file.
+ */
+public class JsonLinesSink implements TupleSink {
+
+	private Writer out;
+
+	/**
+	 * @param file File to write (replaced if it exists).
+	 */
+	public JsonLinesSink(File file) throws IOException {
+		this(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param out Where to write the lines (closed along with this sink).
+	 */
+	public JsonLinesSink(Writer out) {
+		this.out = new BufferedWriter(out, 1 << 16);
+	}
+
+	@Override
+	public void write(Tuple t) throws IOException {
+		String[] columns = t.getColumns();
+		String[] values = t.getValues();
+		StringBuilder line = new StringBuilder(256);
+		line.append("{\"table\": ");
+		appendString(line, t.getTableTitle());
+		line.append(", \"row\": {");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) line.append(", ");
+			appendString(line, columns[i]);
+			line.append(": ");
+			appendString(line, (i < values.length)? values[i] : null);
+		}
+		line.append("}}\n");
+		out.write(line.toString());
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Append a value as a JSON string (or null).
+	 */
+	private static void appendString(StringBuilder json, String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			switch (ch) {
+			case '"': json.append("\\\""); break;
+			case '\\': json.append("\\\\"); break;
+			case '\n': json.append("\\n"); break;
+			case '\r': json.append("\\r"); break;
+			case '\t': json.append("\\t"); break;
+			default:
+				if (ch < 0x20 || ch == '\u2028' || ch == '\u2029') {
+					json.append(String.format("\\u%04x", (int) ch));
+				} else {
+					json.append(ch);
+				}
+			}
+		}
+		json.append('"');
+	}
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * EZ-Plan
+ * Writes tuples to the database a batch at a time, upserting them (see MySQLTableInput.upsertTable),
+ * so writing the same tuples again is harmless. Tuples for different tables are batched separately,
+ * and each table is created from its tuples' DDL the first time one arrives.
+ * This blocks the writer for each batch; wrap it in a WriteBehindSink to keep the crawl going meanwhile.
+ */
+public class MySQLSink implements TupleSink {
+
+	private MySQLTableInput table;
+	private int batchSize;
+
+	// Tuples not yet written, by table
+	private Map<String, ArrayList<Tuple>> batches = new LinkedHashMap<String, ArrayList<Tuple>>();
+
+	/**
+	 * @param table Database to write to (closed along with this sink).
+	 * @param batchSize Number of tuples written at a time.
+	 */
+	public MySQLSink(MySQLTableInput table, int batchSize) {
+		this.table = table;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	@Override
+	public void write(Tuple t) throws IOException {
+		ArrayList<Tuple> batch = batches.get(t.getTableTitle());
+		if (batch == null) {
+			table.createTable(t.getTableDDL()); // (which leaves an existing table be, bar adding any new columns)
+			batch = new ArrayList<Tuple>(batchSize);
+			batches.put(t.getTableTitle(), batch);
+		}
+		batch.add(t);
+		if (batch.size() >= batchSize) {
+			write(t.getTableTitle(), batch);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		IOException failure = null;
+		for (Map.Entry<String, ArrayList<Tuple>> entry : batches.entrySet()) {
+			try {
+				write(entry.getKey(), entry.getValue());
+			} catch (IOException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			table.close();
+		}
+	}
+
+	/**
+	 * Write (and clear) one table's batch. The batch is cleared even if it could not all be written,
+	 * so one bad batch does not hold up the ones after it.
+	 */
+	private void write(String tableName, ArrayList<Tuple> batch) throws IOException {
+		if (batch.isEmpty()) return;
+		int size = batch.size();
+		int added = table.upsertTable(tableName, batch.iterator(), batchSize);
+		batch.clear();
+		if (added < size) {
+			throw new IOException("Could not write all of batch of "+size+" tuples to "+tableName
+					+" (written: "+Math.max(0, added)+")");
+		}
+	}
+}
@@ -1,18 +1,56 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 /**
  * Handles putting given tuples into the database.
  * @author Eliana
  *
  */
-public class MySQLTableInput {
+public class MySQLTableInput implements AutoCloseable {
 	
 	// Database connection information
 	private String path, user, pass;
 	Connection con;
 	
+	// Connections are borrowed from here (and kept open between calls);
+	// only closed along with this handler if it was not shared with us
+	private ConnectionPool pool;
+	private boolean ownsPool;
+	
+	// Whether the driver should rewrite batches into multi-row INSERT statements
+	private boolean rewriteBatches;
+	
+	// Batch sizes, executeBatch timings and failures
+	private CrawlMetrics metrics = new CrawlMetrics();
+	
+	// Name of the table a DDL creates, and the words that start a table constraint rather than a column
+	private static final Pattern CREATE_TABLE = Pattern.compile("CREATE TABLE (?:IF NOT EXISTS )?(\\w+)", Pattern.CASE_INSENSITIVE);
+	private static final Set<String> TABLE_CONSTRAINTS = new HashSet<String>(Arrays.asList(
+			"PRIMARY", "INDEX", "KEY", "UNIQUE", "FOREIGN", "CONSTRAINT", "FULLTEXT", "SPATIAL", "CHECK"));
+	
 	/**
-	 * Sets up a handler to process MySQL input.
+	 * Sets up a handler to process MySQL input, with its own (single-connection) pool.
 	 * @param path
 	 * @param user
 	 * @param pass
@@ -21,12 +59,44 @@ public class MySQLTableInput {
 		this.path = path;
 		this.user = user;
 		this.pass = pass;
+		ownsPool = true;
+	}
+	
+	/**
+	 * Sets up a handler to process MySQL input over a shared connection pool
+	 * (which stays open when this handler is closed).
+	 * @param pool
+	 */
+	public MySQLTableInput(ConnectionPool pool) {
+		this.pool = pool;
+		ownsPool = false;
+	}
+	
+	/**
+	 * Have the driver send each batch as rewritten multi-row statements
+	 * (much fewer round trips for large batches; see Connector/J "rewriteBatchedStatements").
+	 * Only affects a handler's own pool, and only before its first connection;
+	 * for a shared pool, put the option in the pool's URL instead.
+	 * @param rewriteBatches
+	 */
+	public void setRewriteBatchedStatements(boolean rewriteBatches) {
+		this.rewriteBatches = rewriteBatches;
+	}
+	
+	/**
+	 * Record batch timings and failures into the given metrics (eg. those of the crawl in the same run).
+	 * @param metrics
+	 */
+	public void setMetrics(CrawlMetrics metrics) {
+		this.metrics = metrics;
 	}
 	
 	/**
 	 * Uses the given DDL to create a new table.
+	 * If the table already exists, any columns the DDL defines that it lacks are added instead
+	 * (see addMissingColumns), so tables made before a column was added keep working.
 	 * @param ddl "CREATE TABLE" syntax.
-	 * @return
+	 * @return True if the table now exists with every column of the DDL.
 	 */
 	public boolean createTable(String ddl) {
 		boolean ret = false;
@@ -41,12 +111,21 @@ public class MySQLTableInput {
 		// Execute the given DDL update
 		try {
 			if (con != null) {
-				Statement stat = con.createStatement();
-				try {
-					stat.executeUpdate(ddl);
-				} catch (SQLException e) {
-					System.err.println("Could not create table: ");
-					e.printStackTrace();
+				Matcher name = CREATE_TABLE.matcher(ddl);
+				if (name.find() && tableExists(name.group(1))) {
+					ret = addMissingColumns(name.group(1), ddl);
+				} else {
+					Statement stat = con.createStatement();
+					try {
+						stat.executeUpdate(ddl);
+						ret = true;
+					} catch (SQLException e) {
+						System.err.println("Could not create table: ");
+						e.printStackTrace();
+						metrics.recordFailure(e);
+					} finally {
+						stat.close();
+					}
 				}
 			} else {
 				System.err.println("Not connected to database; cannot create a table.");
@@ -74,44 +153,33 @@ public class MySQLTableInput {
 		boolean connected = openConnection();
 		if (connected == false) {
 			System.err.println("Could not connect.");
+			return -1;
 		}
 		
 		Tuple t = tuples.next();
-		String[] columns = t.getColumns();
-		int numColumns = columns.length;
+		TupleSchema<?> schema = TupleSchema.of(t);
 		int count = 0;
 		PreparedStatement pstat;
 		
-		// Generate the SQL syntax for a prepared statement
-		String fields = "", vals = "";
-		for (int i=0; i<numColumns-1; i++) {
-			fields += columns[i]+", ";
-			vals += "?,";
-		}
-		fields += columns[numColumns-1];
-		vals += "?";
-		String sql = "INSERT INTO "+tableName+" ("+fields+") VALUES ("+vals+"); ";
-		
-		// Execute this prepared statement with each tuple in the iterator
+		// Execute this prepared statement (built once per table) with each tuple in the iterator
 		try {
-			pstat = con.prepareStatement(sql);
+			pstat = pool.prepare(con, schema.insertSQL(tableName));
 			
 			do  {
 				count++;
-				String[] values = t.getValues();
-				for (int i=1; i<=numColumns; i++) {
-					// (note, prepared statements 1-indexed, arrays 0-indexed)
-					pstat.setString(i, values[i-1]);
-				}
+				schema.bind(pstat, t);
 				pstat.addBatch();
 			// (Get the next tuple ready if available)
 			} while (tuples.hasNext() && (t=tuples.next()) != null);
 			
+			long start = System.nanoTime();
 			pstat.executeBatch();
+			metrics.recordBatch(count, System.nanoTime() - start);
 			// If successful (no exceptions produced), return number added
 			
 		} catch (SQLException e) {
 			e.printStackTrace();
+			metrics.recordFailure(e);
 			count = -1;
 		}
 		finish();
@@ -119,19 +187,739 @@ public class MySQLTableInput {
 	}
 	
 	/**
-	 * Sets up the connection to the specified MySQL database.
+	 * Insert or update the given tuples in the specified table, a chunk at a time.
+	 * Rows whose key (see Tuple.getKeyHeadings) already exists are updated in place,
+	 * so running this again with the same tuples is harmless.
+	 * Each chunk is its own transaction: a bad row only loses its own chunk,
+	 * and the rest of the load still goes through.
+	 * @param tableName Table to write to.
+	 * @param tuples Set of tuples to be written.
+	 * @param chunkSize Number of tuples per transaction.
+	 * @return The number of tuples written (not counting chunks that failed), or -1 if not connected.
+	 */
+	public int upsertTable(String tableName, Iterator<Tuple> tuples, int chunkSize) {
+		// End immediately if no tuples to write
+		if (!(tuples.hasNext())) {
+			return 0;
+		}
+		chunkSize = Math.max(1, chunkSize);
+		
+		// Set up connection
+		boolean connected = openConnection();
+		if (connected == false) {
+			System.err.println("Could not connect.");
+			return -1;
+		}
+		
+		Tuple t = tuples.next();
+		TupleSchema<?> schema = TupleSchema.of(t);
+		int count = 0;
+		
+		try {
+			con.setAutoCommit(false);
+			PreparedStatement pstat = pool.prepare(con, schema.upsertSQL(tableName));
+			
+			while (t != null) {
+				// Fill up one chunk
+				int chunkCount = 0;
+				do {
+					schema.bind(pstat, t);
+					pstat.addBatch();
+					chunkCount++;
+					t = tuples.hasNext()? tuples.next() : null;
+				} while (t != null && chunkCount < chunkSize);
+				
+				// Write it as one transaction
+				long start = System.nanoTime();
+				try {
+					pstat.executeBatch();
+					con.commit();
+					metrics.recordBatch(chunkCount, System.nanoTime() - start);
+					count += chunkCount;
+				} catch (SQLException e) {
+					System.err.println("Could not write chunk of "+chunkCount+" tuples to "+tableName+"; skipping it:");
+					e.printStackTrace();
+					metrics.recordFailure(e);
+					pstat.clearBatch();
+					con.rollback();
+				}
+			}
+			con.setAutoCommit(true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			metrics.recordFailure(e);
+		}
+		finish();
+		return count;
+	}
+	
+	/**
+	 * Replace the entire contents of the specified table with the given tuples, using MySQL's bulk loader.
+	 * The tuples are written to a temporary tab-separated file (columns in getColumns() order, escaped
+	 * as in TsvFormat) and loaded with LOAD DATA LOCAL INFILE into a fresh copy of the table, which is
+	 * then swapped in with a single RENAME TABLE: readers see either the old contents or the new ones,
+	 * never a partial load. (The table is created first from the tuples' DDL if it does not exist yet.)
+	 * A LOCAL load skips rows it can't take (eg. duplicate keys) and adjusts bad values with only a
+	 * warning, so the swap only happens if every tuple loaded without any warnings.
+	 * 
+	 * Needs local infile enabled on both ends ("allowLoadLocalInfile=true" in the connection URL,
+	 * local_infile=1 on the server). The copy is made with CREATE TABLE ... LIKE, which keeps the
+	 * table's indexes but not its foreign keys, so this is meant for tables like Course that are
+	 * not referenced by or referencing others.
+	 * @param tableName Table to replace.
+	 * @param tuples Set of tuples making up the new contents.
+	 * @return The number of rows loaded (as the server counts them), or -1 if the load failed or lost
+	 * any rows or values (the table is then left as it was).
+	 */
+	public int bulkReplaceTable(String tableName, Iterator<Tuple> tuples) {
+		// End immediately if no tuples to load (never swap in an empty table by accident)
+		if (!(tuples.hasNext())) {
+			return 0;
+		}
+		String staging = tableName+"_staging", old = tableName+"_old";
+		
+		File tsv = null;
+		int lines = 0, count = -1;
+		try {
+			// Write out the tuples
+			Tuple t = tuples.next();
+			String[] columns = TupleSchema.of(t).getColumns();
+			String ddl = t.getTableDDL();
+			tsv = File.createTempFile(tableName+"-", ".tsv");
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tsv), StandardCharsets.UTF_8), 1 << 16);
+			try {
+				while (t != null) {
+					out.write(TsvFormat.join(t.getValues()));
+					out.write('\n');
+					lines++;
+					t = tuples.hasNext()? tuples.next() : null;
+				}
+			} finally {
+				out.close();
+			}
+			
+			// Set up connection
+			boolean connected = openConnection();
+			if (connected == false) {
+				System.err.println("Could not connect.");
+				return -1;
+			}
+			
+			Statement stat = con.createStatement();
+			try {
+				if (!tableExists(tableName)) {
+					stat.executeUpdate(ddl);
+				} else if (!addMissingColumns(tableName, ddl)) {
+					throw new SQLException("Table "+tableName+" is missing columns");
+				}
+				stat.executeUpdate("DROP TABLE IF EXISTS "+staging);
+				stat.executeUpdate("DROP TABLE IF EXISTS "+old);
+				stat.executeUpdate("CREATE TABLE "+staging+" LIKE "+tableName);
+				
+				long start = System.nanoTime();
+				int loaded = stat.executeUpdate("LOAD DATA LOCAL INFILE '"+quote(tsv.getAbsolutePath())+"' INTO TABLE "+staging
+						+" CHARACTER SET utf8mb4"
+						+" FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'"
+						+" LINES TERMINATED BY '\\n'"
+						+" ("+String.join(", ", columns)+")");
+				metrics.recordBatch(loaded, System.nanoTime() - start);
+				
+				// LOCAL loads skip bad or duplicate rows (and truncate bad values) with only a warning;
+				// only swap in a table holding every tuple as it was given
+				int warnings = checkLoad(staging, lines, loaded);
+				if (loaded != lines || warnings > 0) {
+					throw new SQLException("Loaded "+loaded+" of "+lines+" rows into "+staging+", with "+warnings+" warnings");
+				}
+				
+				// Swap the new table in (both renames happen at once), then drop the old contents
+				stat.executeUpdate("RENAME TABLE "+tableName+" TO "+old+", "+staging+" TO "+tableName);
+				stat.executeUpdate("DROP TABLE "+old);
+				count = loaded;
+			} catch (SQLException | RuntimeException e) {
+				System.err.println("Could not bulk load "+tableName+"; leaving it as it was:");
+				e.printStackTrace();
+				metrics.recordFailure(e);
+				try {
+					stat.executeUpdate("DROP TABLE IF EXISTS "+staging);
+				} catch (SQLException e2) {
+					e2.printStackTrace();
+				}
+			} finally {
+				stat.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Could not write tuples for bulk load of "+tableName+":");
+			e.printStackTrace();
+			metrics.recordFailure(e);
+		} catch (SQLException | RuntimeException e) {
+			System.err.println("Could not bulk load "+tableName+":");
+			e.printStackTrace();
+			metrics.recordFailure(e);
+		} finally {
+			if (tsv != null && !tsv.delete()) {
+				tsv.deleteOnExit();
+			}
+		}
+		finish();
+		return count;
+	}
+	
+	/**
+	 * Bring the specified table in line with the given tuples, writing only the rows that differ:
+	 * the table's keys (see Tuple.getKeyHeadings) and a hash of each row's contents are streamed from
+	 * the database and compared with the tuples, then new tuples are inserted, changed ones updated,
+	 * and rows with no tuple deleted. A refresh where little has changed touches only those few rows,
+	 * rather than rewriting (or swapping out) the whole table under its readers.
+	 * (The table is created first from the tuples' DDL if it does not exist yet.)
+	 * 
+	 * Only the keys and hashes of existing rows are held in memory, not the rows themselves.
+	 * Keys are matched the way the table's collation compares them (see ColumnFormat.matchKey), so a tuple
+	 * whose key differs from its row's only in case or trailing spaces updates that row (key included)
+	 * rather than being inserted beside it.
+	 * Each chunk of changes is its own transaction, as in upsertTable.
+	 * @param tableName Table to write to.
+	 * @param tuples The table's full new contents (a tuple repeating an earlier one's key is ignored).
+	 * @param chunkSize Number of rows changed per transaction.
+	 * @return The number of rows inserted, updated or deleted, or -1 if not all of them could be
+	 * (or if not connected).
+	 */
+	public int syncTable(String tableName, Iterator<Tuple> tuples, int chunkSize) {
+		// End immediately if no tuples (never empty the table by accident)
+		if (!(tuples.hasNext())) {
+			return 0;
+		}
+		chunkSize = Math.max(1, chunkSize);
+		
+		// Set up connection
+		boolean connected = openConnection();
+		if (connected == false) {
+			System.err.println("Could not connect.");
+			return -1;
+		}
+		
+		Tuple t = tuples.next();
+		TupleSchema<?> schema = TupleSchema.of(t);
+		String[] columns = schema.getColumns(), keys = schema.getKeyHeadings();
+		List<String> columnList = Arrays.asList(columns);
+		int[] keyIndexes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keyIndexes[i] = columnList.indexOf(keys[i]);
+		}
+		int inserted = 0, updated = 0;
+		boolean failed = false;
+		Map<String, ExistingRow> existing;
+		
+		try {
+			if (!tableExists(tableName)) {
+				Statement stat = con.createStatement();
+				try {
+					stat.executeUpdate(t.getTableDDL());
+				} finally {
+					stat.close();
+				}
+			} else if (!addMissingColumns(tableName, t.getTableDDL())) {
+				finish();
+				return -1;
+			}
+			ColumnFormat[] formats = columnFormats(tableName, columns);
+			ColumnFormat[] keyFormats = new ColumnFormat[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				keyFormats[i] = formats[keyIndexes[i]];
+			}
+			existing = existingHashes(tableName, columns, keys, keyFormats);
+			Set<String> seen = new HashSet<String>();
+			
+			// Compare each tuple with its row, batching up the differences
+			con.setAutoCommit(false);
+			int[] sqlTypes = schema.getSqlTypes();
+			PreparedStatement insert = pool.prepare(con, schema.insertSQL(tableName));
+			PreparedStatement update = pool.prepare(con, updateSQL(tableName, columns, keys));
+			int pendingInserts = 0, pendingUpdates = 0;
+			while (t != null) {
+				String[] values = t.getValues().clone();
+				for (int i = 0; i < columns.length; i++) {
+					values[i] = formats[i].format(values[i]);
+				}
+				String[] keyValues = new String[keys.length];
+				for (int i = 0; i < keys.length; i++) {
+					keyValues[i] = values[keyIndexes[i]];
+				}
+				String key = keyOf(keyValues, keyFormats);
+				if (seen.add(key)) {
+					ExistingRow row = existing.remove(key);
+					if (row == null) {
+						for (int i = 0; i < columns.length; i++) {
+							TupleSchema.bindText(insert, i+1, sqlTypes[i], values[i]);
+						}
+						insert.addBatch();
+						pendingInserts++;
+					} else if (!row.hash.equals(rowHash(values))) {
+						// (every column in order, then the row's key as stored for the WHERE clause)
+						for (int i = 0; i < columns.length; i++) {
+							TupleSchema.bindText(update, i+1, sqlTypes[i], values[i]);
+						}
+						for (int k = 0; k < keys.length; k++) {
+							TupleSchema.bindText(update, columns.length+k+1, sqlTypes[keyIndexes[k]], row.key[k]);
+						}
+						update.addBatch();
+						pendingUpdates++;
+					}
+				}
+				t = tuples.hasNext()? tuples.next() : null;
+				
+				if (pendingInserts >= chunkSize || (t == null && pendingInserts > 0)) {
+					int n = executeChunk(insert, pendingInserts, "insert into "+tableName);
+					failed |= n < pendingInserts;
+					inserted += n;
+					pendingInserts = 0;
+				}
+				if (pendingUpdates >= chunkSize || (t == null && pendingUpdates > 0)) {
+					int n = executeChunk(update, pendingUpdates, "update "+tableName);
+					failed |= n < pendingUpdates;
+					updated += n;
+					pendingUpdates = 0;
+				}
+			}
+			con.setAutoCommit(true);
+		} catch (SQLException e) {
+			System.err.println("Could not sync "+tableName+":");
+			e.printStackTrace();
+			metrics.recordFailure(e);
+			finish();
+			return -1;
+		}
+		finish();
+		
+		// Whatever rows are left had no tuple
+		List<String[]> gone = new ArrayList<String[]>(existing.size());
+		for (ExistingRow row : existing.values()) {
+			gone.add(row.key);
+		}
+		int deleted = deleteRows(tableName, keys, gone.iterator(), chunkSize);
+		failed |= deleted < gone.size();
+		
+		System.out.println("Synced "+tableName+": inserted "+inserted+", updated "+updated+", deleted "+Math.max(0, deleted)+".");
+		return failed? -1 : inserted + updated + deleted;
+	}
+	
+	/**
+	 * Delete the rows with the given keys from the specified table.
+	 * @param tableName Table to delete from.
+	 * @param keyHeadings Names of the key columns (see Tuple.getKeyHeadings).
+	 * @param keys Each row's key values, in keyHeadings order.
+	 * @param chunkSize Number of rows deleted per transaction.
+	 * @return The number of keys deleted (not counting chunks that failed), or -1 if not connected.
+	 */
+	public int deleteRows(String tableName, String[] keyHeadings, Iterator<String[]> keys, int chunkSize) {
+		if (!(keys.hasNext())) {
+			return 0;
+		}
+		chunkSize = Math.max(1, chunkSize);
+		
+		boolean connected = openConnection();
+		if (connected == false) {
+			System.err.println("Could not connect.");
+			return -1;
+		}
+		
+		StringBuilder where = new StringBuilder();
+		for (String key : keyHeadings) {
+			if (where.length() > 0) where.append(" AND ");
+			where.append(key).append("=?");
+		}
+		int count = 0;
+		try {
+			con.setAutoCommit(false);
+			PreparedStatement pstat = pool.prepare(con, "DELETE FROM "+tableName+" WHERE "+where);
+			int pending = 0;
+			while (keys.hasNext()) {
+				String[] values = keys.next();
+				for (int i = 0; i < keyHeadings.length; i++) {
+					pstat.setString(i+1, values[i]);
+				}
+				pstat.addBatch();
+				if (++pending >= chunkSize || !keys.hasNext()) {
+					count += executeChunk(pstat, pending, "delete from "+tableName);
+					pending = 0;
+				}
+			}
+			con.setAutoCommit(true);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			metrics.recordFailure(e);
+		}
+		finish();
+		return count;
+	}
+	
+	// Joins the values of a multi-column key (a character that can't appear in a key)
+	private static final String KEY_SEPARATOR = "\u001f";
+	
+	/**
+	 * Run one batch as its own transaction.
+	 * @return The number of rows in it, or 0 if it failed (and was rolled back).
+	 */
+	private int executeChunk(PreparedStatement pstat, int size, String what) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			pstat.executeBatch();
+			con.commit();
+			metrics.recordBatch(size, System.nanoTime() - start);
+			return size;
+		} catch (SQLException e) {
+			System.err.println("Could not "+what+" chunk of "+size+" rows; skipping it:");
+			e.printStackTrace();
+			metrics.recordFailure(e);
+			pstat.clearBatch();
+			con.rollback();
+			return 0;
+		}
+	}
+	
+	/**
+	 * A row already in a table being synced: its key values as stored, and a hash of its contents (see rowHash).
+	 */
+	private static class ExistingRow {
+		final String[] key;
+		final String hash;
+		
+		ExistingRow(String[] key, String hash) {
+			this.key = key;
+			this.hash = hash;
+		}
+	}
+	
+	/**
+	 * Stream every row's key and content hash out of the table (without buffering the result set in the driver).
+	 * Each value is converted to utf8mb4 before they are joined (and the separator is utf8mb4 too), so the
+	 * hash is of the same bytes rowHash hashes, whatever character set the table is in: otherwise the values
+	 * would be joined as the raw bytes of their own character set (eg. latin1), and a row with any non-ASCII
+	 * character would never hash the same as its tuple.
+	 * @param keyFormats Formats of the key columns, in keys order.
+	 * @return Each row, by its key (see keyOf).
+	 */
+	private Map<String, ExistingRow> existingHashes(String tableName, String[] columns, String[] keys, ColumnFormat[] keyFormats) throws SQLException {
+		StringBuilder fields = new StringBuilder();
+		for (String column : columns) {
+			if (fields.length() > 0) fields.append(", ");
+			fields.append("CONVERT(COALESCE(").append(column).append(", '\\\\N') USING utf8mb4)");
+		}
+		String sql = "SELECT "+String.join(", ", keys)
+				+", MD5(CONCAT_WS(CHAR(31 USING utf8mb4), "+fields+")) FROM "+tableName;
+		
+		Map<String, ExistingRow> hashes = new HashMap<String, ExistingRow>();
+		Statement stat = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			stat.setFetchSize(Integer.MIN_VALUE); // (MySQL's driver streams rows one at a time with this)
+			ResultSet rows = stat.executeQuery(sql);
+			while (rows.next()) {
+				String[] key = new String[keys.length];
+				for (int i = 0; i < keys.length; i++) {
+					key[i] = rows.getString(i+1);
+				}
+				hashes.put(keyOf(key, keyFormats), new ExistingRow(key, rows.getString(keys.length+1).toLowerCase()));
+			}
+			rows.close();
+		} finally {
+			stat.close();
+		}
+		return hashes;
+	}
+	
+	/**
+	 * @param keyValues The values of a row's key columns.
+	 * @param keyFormats Their columns' formats.
+	 * @return The values as their columns' collations compare them (see ColumnFormat.matchKey), joined.
+	 */
+	static String keyOf(String[] keyValues, ColumnFormat[] keyFormats) {
+		if (keyValues.length == 1) {
+			return keyFormats[0].matchKey(keyValues[0]);
+		}
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < keyValues.length; i++) {
+			if (i > 0) key.append(KEY_SEPARATOR);
+			key.append(keyFormats[i].matchKey(keyValues[i]));
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Hash a row's values the same way existingHashes has the database do it:
+	 * MD5 of the values (null as \N) joined by character 31, in UTF-8.
+	 */
+	private static String rowHash(String[] values) {
+		StringBuilder row = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) row.append('\u001f');
+			row.append((values[i] == null)? "\\N" : values[i]);
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(row.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(32);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // (every JVM has MD5)
+		}
+	}
+	
+	/**
+	 * How a column stores the text it is given, so a tuple's values can be put in the form
+	 * the database will read back (eg. "3" in a DECIMAL(3,1) column reads back as "3.0"),
+	 * and hash the same as the row they were stored in.
+	 */
+	static class ColumnFormat {
+		// Combining marks, as left by decomposing accented letters
+		private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+		
+		private int type, size, scale;
+		private boolean caseSensitive;
+		
+		ColumnFormat(int type, int size, int scale, boolean caseSensitive) {
+			this.type = type;
+			this.size = size;
+			this.scale = scale;
+			this.caseSensitive = caseSensitive;
+		}
+		
+		/**
+		 * A key value in the form the column's collation compares it in, so that values the primary key
+		 * treats as the same match: for text, trailing spaces are dropped (MySQL's collations pad with spaces
+		 * when comparing), and so are case and accents unless the collation is case sensitive (eg. a _bin
+		 * or _cs one), as the _ci collations ignore both.
+		 */
+		String matchKey(String value) {
+			if (value == null || !(type == Types.CHAR || type == Types.VARCHAR || type == Types.LONGVARCHAR)) {
+				return value;
+			}
+			int end = value.length();
+			while (end > 0 && value.charAt(end-1) == ' ') {
+				end--;
+			}
+			String trimmed = value.substring(0, end);
+			if (caseSensitive) {
+				return trimmed;
+			}
+			return ACCENTS.matcher(Normalizer.normalize(trimmed, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+		}
+		
+		String format(String value) {
+			if (value == null) return null;
+			try {
+				switch (type) {
+				case Types.DECIMAL:
+				case Types.NUMERIC:
+					return new BigDecimal(value.trim()).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+				case Types.BIGINT:
+					return new BigDecimal(value.trim()).setScale(0, RoundingMode.HALF_UP).toPlainString();
+				case Types.CHAR:
+				case Types.VARCHAR:
+				case Types.LONGVARCHAR:
+					return (size > 0 && value.length() > size)? value.substring(0, size) : value;
+				}
+			} catch (NumberFormatException e) {
+				// Not a number; the database will make of it what it will
+			}
+			return value;
+		}
+	}
+	
+	/**
+	 * Read the types of the given columns of a table.
+	 */
+	private ColumnFormat[] columnFormats(String tableName, String[] columns) throws SQLException {
+		Statement stat = con.createStatement();
+		try {
+			ResultSetMetaData meta = stat.executeQuery("SELECT "+String.join(", ", columns)+" FROM "+tableName+" LIMIT 0").getMetaData();
+			ColumnFormat[] formats = new ColumnFormat[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				formats[i] = new ColumnFormat(meta.getColumnType(i+1), meta.getPrecision(i+1), meta.getScale(i+1), meta.isCaseSensitive(i+1));
+			}
+			return formats;
+		} finally {
+			stat.close();
+		}
+	}
+	
+	/**
+	 * Report what a LOAD DATA statement (just run on the connection) left out: the server's warnings,
+	 * and how many rows it skipped.
+	 * @param lines Number of rows in the loaded file.
+	 * @param loaded Number of rows the load reported adding.
+	 * @return The number of warnings the load raised.
+	 */
+	private int checkLoad(String tableName, int lines, int loaded) throws SQLException {
+		Statement stat = con.createStatement();
+		try {
+			// (both diagnostic statements, so neither clears the load's warnings)
+			int warnings = 0;
+			ResultSet rs = stat.executeQuery("SHOW COUNT(*) WARNINGS");
+			if (rs.next()) {
+				warnings = rs.getInt(1);
+			}
+			rs.close();
+			if (warnings > 0 || loaded != lines) {
+				System.err.println("Loading "+tableName+" skipped "+(lines - loaded)+" of "+lines+" rows, with "+warnings+" warnings"
+						+((warnings > 0)? ", eg.:" : "."));
+				rs = stat.executeQuery("SHOW WARNINGS LIMIT 5");
+				while (rs.next()) {
+					System.err.println("  "+rs.getString("Level")+" "+rs.getInt("Code")+": "+rs.getString("Message"));
+				}
+				rs.close();
+			}
+			return warnings;
+		} finally {
+			stat.close();
+		}
+	}
+	
+	/**
+	 * Bring an existing table up to date with its DDL, by adding the columns the DDL defines that the
+	 * table lacks (eg. Course's subject/number/level, or CourseRequirement's query, on tables made before
+	 * those were added), and the DDL's indexes over them. Rows already there have NULL in the new columns
+	 * until they are next written.
+	 * @return True if the table has every column now; false (with the reason reported) if they couldn't be added.
+	 */
+	private boolean addMissingColumns(String tableName, String ddl) throws SQLException {
+		Set<String> existing = new HashSet<String>();
+		ResultSet columns = con.getMetaData().getColumns(con.getCatalog(), null, tableName, null);
+		try {
+			while (columns.next()) {
+				existing.add(columns.getString("COLUMN_NAME").toLowerCase());
+			}
+		} finally {
+			columns.close();
+		}
+		String alter = addColumnsSQL(tableName, ddl, existing);
+		if (alter == null) {
+			return true;
+		}
+		
+		Statement stat = con.createStatement();
+		try {
+			stat.executeUpdate(alter);
+			System.out.println("Added missing columns to "+tableName+": "+alter);
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Table "+tableName+" is missing columns of its DDL, and they could not be added ("+alter+"):");
+			e.printStackTrace();
+			metrics.recordFailure(e);
+			return false;
+		} finally {
+			stat.close();
+		}
+	}
+	
+	/**
+	 * Build the "ALTER TABLE" statement adding the columns a DDL defines that aren't in the given set
+	 * (each after the column it follows in the DDL), and the DDL's indexes that cover any of them.
+	 * @param existing Names of the table's columns, in lower case.
+	 * @return The statement, or null if no columns are missing.
+	 */
+	static String addColumnsSQL(String tableName, String ddl, Set<String> existing) {
+		// Split the definitions between the outer parentheses at top-level commas
+		List<String> definitions = new ArrayList<String>();
+		int depth = 0, start = ddl.indexOf('(') + 1;
+		for (int i = start; i < ddl.length() && depth >= 0; i++) {
+			char ch = ddl.charAt(i);
+			if (ch == '(') depth++;
+			else if (ch == ')') depth--;
+			if ((ch == ',' && depth == 0) || depth < 0) {
+				definitions.add(ddl.substring(start, i).trim());
+				start = i+1;
+			}
+		}
+		
+		List<String> adds = new ArrayList<String>();
+		Set<String> added = new HashSet<String>();
+		String previous = null;
+		for (String definition : definitions) {
+			String first = definition.split("[\\s(]", 2)[0];
+			if (first.isEmpty()) continue;
+			if (TABLE_CONSTRAINTS.contains(first.toUpperCase())) {
+				// An index over a new column is added with it (other constraints are left as they are)
+				if (first.equalsIgnoreCase("INDEX") || first.equalsIgnoreCase("KEY")) {
+					String indexed = definition.substring(definition.indexOf('(')+1, definition.lastIndexOf(')'));
+					for (String column : indexed.split(",")) {
+						if (added.contains(column.trim().toLowerCase())) {
+							adds.add("ADD "+definition);
+							break;
+						}
+					}
+				}
+				continue;
+			}
+			if (!existing.contains(first.toLowerCase())) {
+				adds.add("ADD COLUMN "+definition+((previous == null)? " FIRST" : " AFTER "+previous));
+				added.add(first.toLowerCase());
+			}
+			previous = first;
+		}
+		return added.isEmpty()? null : "ALTER TABLE "+tableName+" "+String.join(", ", adds);
+	}
+	
+	/**
+	 * Whether the named table exists in the connected database.
+	 */
+	private boolean tableExists(String tableName) throws SQLException {
+		ResultSet tables = con.getMetaData().getTables(con.getCatalog(), null, tableName, new String[] {"TABLE"});
+		try {
+			return tables.next();
+		} finally {
+			tables.close();
+		}
+	}
+	
+	/**
+	 * Escape text for use inside a single-quoted MySQL string literal.
+	 */
+	private static String quote(String text) {
+		return text.replace("\\", "\\\\").replace("'", "\\'");
+	}
+	
+	/**
+	 * Build an "UPDATE" statement setting every column (in order) of the row with the given key.
+	 * (The key columns are set too, in case the key's case or trailing spaces changed.)
+	 */
+	private static String updateSQL(String tableName, String[] columns, String[] keys) {
+		StringBuilder sets = new StringBuilder(), where = new StringBuilder();
+		for (String column : columns) {
+			if (sets.length() > 0) sets.append(", ");
+			sets.append(column).append("=?");
+		}
+		for (String key : keys) {
+			if (where.length() > 0) where.append(" AND ");
+			where.append(key).append("=?");
+		}
+		return "UPDATE "+tableName+" SET "+sets+" WHERE "+where;
+	}
+	
+	/**
+	 * Borrows a connection to the specified MySQL database from the pool
+	 * (setting up this handler's own pool first if necessary).
 	 * @return True if successfully opened connection.
 	 */
 	private boolean openConnection() {
 		try {
-			Class.forName("com.mysql.jdbc.Driver");
-			con = DriverManager.getConnection(path, user, pass);
+			if (pool == null) {
+				String url = path;
+				if (rewriteBatches) {
+					url += (url.contains("?")? "&" : "?")+"rewriteBatchedStatements=true";
+				}
+				pool = new ConnectionPool(url, user, pass, 1);
+			}
+			con = pool.borrow();
 			return true;
 		} catch (SQLException e) {
 			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+			metrics.recordFailure(e);
 		}
+		con = null;
 		return false;
 	}
 	
@@ -140,18 +928,21 @@ public class MySQLTableInput {
 	 * (Called when done updating the table.)
 	 */
 	private void finish() {
-		// For now, just close the connection.
-		closeConnection();
+		// Hand the connection back for the next call (it stays open until close())
+		if (pool != null) {
+			pool.release(con);
+		}
+		con = null;
 	}
 	
 	/**
-	 * Close the connection to the SQL server.
+	 * Close this handler's connections (unless the pool is shared, in which case its owner closes it).
 	 */
-	private void closeConnection() {
-		try {
-			con.close();
-		} catch (SQLException e) {
-			e.printStackTrace();
+	@Override
+	public void close() {
+		if (ownsPool && pool != null) {
+			pool.close();
+			pool = null;
 		}
 	}
 }
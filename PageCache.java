@@ -0,0 +1,246 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * EZ-Plan
+ * Persistent on-disk cache of fetched calendar pages, keyed by URL.
+ * Each page is kept as two files named after a hash of its URL: the body itself (.html),
+ * and its validators (.properties) so the page can be revalidated with a conditional GET.
+ *
+ * In offline mode, the crawler serves pages only from this cache and never touches the network.
+ *
+ * Pages can also be read and written as streams (openBody, begin), so a page being parsed as it
+ * downloads is cached as it goes rather than held in memory whole.
+ */
+public class PageCache {
+
+	/**
+	 * A cached copy of a page, with whichever validators the server sent for it (either may be null).
+	 */
+	public static class Entry {
+		public final String url;
+		public final String body;
+		public final String etag, lastModified;
+
+		public Entry(String url, String body, String etag, String lastModified) {
+			this.url = url;
+			this.body = body;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * A page being written into the cache as it is read. Nothing replaces the cached copy until
+	 * commit(); closing without committing throws away what was written.
+	 */
+	public class Pending extends Writer {
+		private final String url, etag, lastModified;
+		private final File bodyTemp;
+		private final Writer out;
+		private boolean done;
+
+		private Pending(String url, String etag, String lastModified) throws IOException {
+			this.url = url;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			// (a name of its own, in case the same page is being fetched twice at once)
+			bodyTemp = File.createTempFile(keyFor(url)+"-", ".html.tmp", dir);
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(bodyTemp), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void write(char[] chars, int off, int len) throws IOException {
+			out.write(chars, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		/**
+		 * Store what was written as the page's cached copy.
+		 */
+		public void commit() throws IOException {
+			if (done) return;
+			done = true;
+			out.close();
+			store(url, bodyTemp, etag, lastModified);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (done) return;
+			done = true;
+			try {
+				out.close();
+			} finally {
+				Files.deleteIfExists(bodyTemp.toPath());
+			}
+		}
+	}
+
+	private File dir;
+	private boolean offline;
+
+	/**
+	 * Sets up a cache in the given directory (created if necessary).
+	 * @param dir Directory to keep cached pages in.
+	 */
+	public PageCache(File dir) throws IOException {
+		this.dir = dir;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create page cache directory "+dir);
+		}
+	}
+
+	/**
+	 * @param offline True to serve pages only from the cache (pages not cached will fail to load).
+	 */
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+	}
+
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * Look up a page in the cache.
+	 * @param url Page address.
+	 * @return The cached copy, or null if the page has not been cached.
+	 */
+	public synchronized Entry get(String url) throws IOException {
+		Properties meta = meta(url);
+		if (meta == null) {
+			return null;
+		}
+		String body = new String(Files.readAllBytes(new File(dir, keyFor(url)+".html").toPath()), StandardCharsets.UTF_8);
+		return new Entry(url, body, meta.getProperty("etag"), meta.getProperty("lastModified"));
+	}
+
+	/**
+	 * Look up a page's validators, without reading its body (see openBody).
+	 * @param url Page address.
+	 * @return The cached copy, with a null body, or null if the page has not been cached.
+	 */
+	public synchronized Entry getValidators(String url) throws IOException {
+		Properties meta = meta(url);
+		return (meta == null)? null : new Entry(url, null, meta.getProperty("etag"), meta.getProperty("lastModified"));
+	}
+
+	/**
+	 * Read a cached page's body as a stream.
+	 * @param url Page address.
+	 * @return The body (close it when done), or null if the page has not been cached.
+	 */
+	public synchronized Reader openBody(String url) throws IOException {
+		if (meta(url) == null) {
+			return null;
+		}
+		return new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, keyFor(url)+".html")), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The page's validators file, or null if the page has not been cached.
+	 */
+	private Properties meta(String url) throws IOException {
+		String key = keyFor(url);
+		File bodyFile = new File(dir, key+".html"), metaFile = new File(dir, key+".properties");
+		if (!bodyFile.isFile() || !metaFile.isFile()) {
+			return null;
+		}
+
+		Properties meta = new Properties();
+		InputStream in = new FileInputStream(metaFile);
+		try {
+			meta.load(in);
+		} finally {
+			in.close();
+		}
+		// Guard against (very unlikely) hash collisions
+		if (!url.equals(meta.getProperty("url"))) {
+			return null;
+		}
+		return meta;
+	}
+
+	/**
+	 * Store (or replace) a page in the cache.
+	 * Files are written to a temporary name first, so an interrupted run never leaves a half-written page.
+	 * @param url Page address.
+	 * @param body Page contents.
+	 * @param etag ETag header value, or null.
+	 * @param lastModified Last-Modified header value, or null.
+	 */
+	public synchronized void put(String url, String body, String etag, String lastModified) throws IOException {
+		File bodyTemp = new File(dir, keyFor(url)+".html.tmp");
+		Files.write(bodyTemp.toPath(), body.getBytes(StandardCharsets.UTF_8));
+		store(url, bodyTemp, etag, lastModified);
+	}
+
+	/**
+	 * Start storing (or replacing) a page in the cache, written as it is read.
+	 * @param url Page address.
+	 * @param etag ETag header value, or null.
+	 * @param lastModified Last-Modified header value, or null.
+	 * @return Writer for the page's body; commit() it once the whole body is written.
+	 */
+	public Pending begin(String url, String etag, String lastModified) throws IOException {
+		return new Pending(url, etag, lastModified);
+	}
+
+	/**
+	 * Move a fully written body into place, along with its validators.
+	 */
+	private synchronized void store(String url, File bodyTemp, String etag, String lastModified) throws IOException {
+		String key = keyFor(url);
+		Properties meta = new Properties();
+		meta.setProperty("url", url);
+		if (etag != null) meta.setProperty("etag", etag);
+		if (lastModified != null) meta.setProperty("lastModified", lastModified);
+
+		File metaTemp = new File(dir, key+".properties.tmp");
+		OutputStream out = new FileOutputStream(metaTemp);
+		try {
+			meta.store(out, null);
+		} finally {
+			out.close();
+		}
+		Files.move(bodyTemp.toPath(), new File(dir, key+".html").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Files.move(metaTemp.toPath(), new File(dir, key+".properties").toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * File name (without extension) used for a URL: hex SHA-1 of the URL.
+	 */
+	private static String keyFor(String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length*2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // SHA-1 is always available
+		}
+	}
+}
@@ -0,0 +1,505 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * EZ-Plan
+ * HTTP layer for the crawler: every request goes through one HttpClient, which keeps connections
+ * alive between requests (and uses HTTP/2 where the server supports it), asks for compressed
+ * responses and decodes them, and applies the configured connect and read timeouts (the read timeout
+ * both to the wait for the headers and to every wait for more of the body, so a server that stalls
+ * partway through a page fails the request rather than holding it forever).
+ * Requests can be made asynchronously (fetchAsync), waited for (fetch), or read as a stream (open).
+ * The decoded bytes are left for jsoup to parse.
+ */
+public class PageFetcher {
+
+	/**
+	 * Default time allowed to connect, and to wait for (each part of) a response once connected.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000, DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+	private static PageFetcher shared;
+
+	// Checks on bodies being received in the background, failing any that stop arriving (see BodyCollector)
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "page-fetcher-watchdog");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// Charset declared in a page's markup, when the response headers don't give one
+	private static final Pattern META_CHARSET = Pattern.compile(
+			"<meta[^>]+charset=[\"']?([-\\w.:]+)", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * A response: its status, headers, and decoded body (either whole, or as a stream).
+	 */
+	public static class Response {
+		private HttpResponse<?> response;
+		private String encoding;
+		// The body as received: all of it (from fetch), or a stream of it (from open)
+		private byte[] raw;
+		private CountingInputStream wire;
+		private byte[] body;
+		private InputStream stream;
+
+		private Response(HttpResponse<?> response, byte[] raw, CountingInputStream wire) {
+			this.response = response;
+			this.raw = raw;
+			this.wire = wire;
+			encoding = response.headers().firstValue("Content-Encoding").orElse(null);
+		}
+
+		public int statusCode() {
+			return response.statusCode();
+		}
+
+		/**
+		 * @return The first value of the named header, or null.
+		 */
+		public String header(String name) {
+			return response.headers().firstValue(name).orElse(null);
+		}
+
+		/**
+		 * @return The decoded body (read in full on first call).
+		 */
+		public synchronized byte[] bodyAsBytes() throws IOException {
+			if (body == null) {
+				try (InputStream in = bodyStream()) {
+					body = in.readAllBytes();
+				}
+			}
+			return body;
+		}
+
+		/**
+		 * @return The decoded body as text, in the charset given by the headers
+		 * (or else by the page's markup, or else UTF-8).
+		 */
+		public String body() throws IOException {
+			byte[] bytes = bodyAsBytes();
+			return new String(bytes, charset(bytes));
+		}
+
+		/**
+		 * @return The decoded body as a stream (decompressed as it is read).
+		 */
+		public synchronized InputStream bodyStream() throws IOException {
+			if (stream == null) {
+				stream = decode((raw != null)? new ByteArrayInputStream(raw) : wire, encoding);
+			}
+			return stream;
+		}
+
+		/**
+		 * @return The charset given by the headers, or null if they don't give one.
+		 */
+		public String headerCharset() {
+			String contentType = header("Content-Type");
+			if (contentType == null) return null;
+			int at = contentType.toLowerCase().indexOf("charset=");
+			if (at < 0) return null;
+			String name = contentType.substring(at+8).replace("\"", "").trim();
+			int end = name.indexOf(';');
+			return (end >= 0)? name.substring(0, end).trim() : name;
+		}
+
+		/**
+		 * @return Bytes received over the network (ie. before decompression; so far, for a stream).
+		 */
+		public long transferredBytes() {
+			return (raw != null)? raw.length : wire.count;
+		}
+
+		private Charset charset(byte[] bytes) {
+			String name = headerCharset();
+			if (name == null) {
+				Matcher m = META_CHARSET.matcher(new String(bytes, 0, Math.min(bytes.length, 1024), StandardCharsets.ISO_8859_1));
+				if (m.find()) name = m.group(1);
+			}
+			try {
+				if (name != null && Charset.isSupported(name)) return Charset.forName(name);
+			} catch (IllegalArgumentException e) {
+				// Not a legal charset name; fall back on the default
+			}
+			return StandardCharsets.UTF_8;
+		}
+	}
+
+	private HttpClient client;
+	private Duration readTimeout;
+
+	/**
+	 * Sets up a fetcher with the default timeouts.
+	 */
+	public PageFetcher() {
+		this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Sets up a fetcher with its own client.
+	 * @param connectTimeoutMillis Time allowed to connect to a server.
+	 * @param readTimeoutMillis Time allowed for a response to start arriving once a request is sent,
+	 * and for each further part of its body to arrive.
+	 */
+	public PageFetcher(int connectTimeoutMillis, int readTimeoutMillis) {
+		client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2) // (falls back to HTTP/1.1 where the server doesn't support it)
+				.connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+		readTimeout = Duration.ofMillis(readTimeoutMillis);
+	}
+
+	/**
+	 * @return The fetcher shared by every crawler that isn't given one of its own (so they all share connections).
+	 */
+	public static synchronized PageFetcher shared() {
+		if (shared == null) {
+			shared = new PageFetcher();
+		}
+		return shared;
+	}
+
+	/**
+	 * Start a GET request, receiving the whole body without blocking any thread.
+	 * @param url Page to load.
+	 * @param etag ETag of a cached copy (sent as If-None-Match), or null.
+	 * @param lastModified Last-Modified of a cached copy (sent as If-Modified-Since), or null.
+	 * @return The response, once all of it has arrived.
+	 */
+	public CompletableFuture<Response> fetchAsync(String url, String etag, String lastModified) {
+		HttpRequest request;
+		try {
+			request = request(url, etag, lastModified);
+		} catch (IllegalArgumentException e) {
+			CompletableFuture<Response> failed = new CompletableFuture<Response>();
+			failed.completeExceptionally(new IOException("Bad URL: "+url, e));
+			return failed;
+		}
+		return client.sendAsync(request, info -> new BodyCollector(readTimeout))
+				.thenApply(res -> new Response(res, res.body(), null));
+	}
+
+	/**
+	 * Make a GET request and wait for the whole response (see fetchAsync).
+	 */
+	public Response fetch(String url, String etag, String lastModified) throws IOException {
+		try {
+			return fetchAsync(url, etag, lastModified).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted fetching "+url);
+		} catch (ExecutionException e) {
+			throw unwrap(e.getCause(), url);
+		}
+	}
+
+	/**
+	 * Make a GET request, and return as soon as the headers have arrived;
+	 * the body is read (and decompressed) as its stream is read. Close the stream when done.
+	 * @param url Page to load.
+	 */
+	public Response open(String url) throws IOException {
+		return open(url, null, null);
+	}
+
+	/**
+	 * Same as open(url), but conditional on the page having changed since a cached copy (see fetchAsync).
+	 */
+	public Response open(String url, String etag, String lastModified) throws IOException {
+		try {
+			HttpResponse<InputStream> res = client.send(request(url, etag, lastModified), info -> new BodyStream(readTimeout));
+			return new Response(res, null, new CountingInputStream(res.body()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted fetching "+url);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Bad URL: "+url, e);
+		}
+	}
+
+	private HttpRequest request(String url, String etag, String lastModified) {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+				.timeout(readTimeout)
+				.header("Accept-Encoding", "gzip, deflate")
+				.GET();
+		if (etag != null) request.header("If-None-Match", etag);
+		if (lastModified != null) request.header("If-Modified-Since", lastModified);
+		return request.build();
+	}
+
+	private static IOException unwrap(Throwable cause, String url) {
+		while (cause instanceof CompletionException) {
+			cause = cause.getCause();
+		}
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		return new IOException("Could not fetch "+url, cause);
+	}
+
+	/**
+	 * Undo the response's Content-Encoding.
+	 */
+	private static InputStream decode(InputStream in, String encoding) throws IOException {
+		if (encoding == null || encoding.equalsIgnoreCase("identity")) {
+			return in;
+		}
+		if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+			return new GZIPInputStream(in, 1 << 13);
+		}
+		if (encoding.equalsIgnoreCase("deflate")) {
+			// Meant to be zlib-wrapped, but some servers send raw deflate; tell them apart by the header
+			InputStream buffered = new BufferedInputStream(in);
+			buffered.mark(2);
+			int cmf = buffered.read(), flg = buffered.read();
+			buffered.reset();
+			boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+			return new InflaterInputStream(buffered, new Inflater(!zlib), 1 << 13);
+		}
+		throw new IOException("Unsupported Content-Encoding: "+encoding);
+	}
+
+	private static HttpTimeoutException stalled(long timeoutNanos) {
+		return new HttpTimeoutException("Response body stalled: nothing received for "+TimeUnit.NANOSECONDS.toMillis(timeoutNanos)+" ms");
+	}
+
+	/**
+	 * Receives a whole body in the background (for fetchAsync), failing it if nothing more arrives for the read timeout.
+	 */
+	private static class BodyCollector implements HttpResponse.BodySubscriber<byte[]> {
+		private final long timeoutNanos;
+		private final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private volatile long lastReceived = System.nanoTime();
+		private volatile Flow.Subscription subscription;
+		private volatile ScheduledFuture<?> watch;
+
+		BodyCollector(Duration timeout) {
+			timeoutNanos = timeout.toNanos();
+		}
+
+		@Override
+		public CompletionStage<byte[]> getBody() {
+			return result;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos) / 4);
+			watch = WATCHDOG.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers) {
+			lastReceived = System.nanoTime();
+			synchronized (bytes) {
+				for (ByteBuffer buffer : buffers) {
+					byte[] chunk = new byte[buffer.remaining()];
+					buffer.get(chunk);
+					bytes.write(chunk, 0, chunk.length);
+				}
+			}
+		}
+
+		@Override
+		public void onError(Throwable e) {
+			watch.cancel(false);
+			result.completeExceptionally(e);
+		}
+
+		@Override
+		public void onComplete() {
+			watch.cancel(false);
+			synchronized (bytes) {
+				result.complete(bytes.toByteArray());
+			}
+		}
+
+		private void check() {
+			if (!result.isDone() && System.nanoTime() - lastReceived > timeoutNanos) {
+				subscription.cancel();
+				result.completeExceptionally(stalled(timeoutNanos));
+			}
+			if (result.isDone() && watch != null) {
+				watch.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * A body read as it arrives (for open): each read waits at most the read timeout for more of it,
+	 * then gives up on the response.
+	 */
+	private static class BodyStream extends InputStream implements HttpResponse.BodySubscriber<InputStream> {
+		// Queued after the last of the body (or after a failure)
+		private static final List<ByteBuffer> END = new ArrayList<ByteBuffer>();
+
+		private final long timeoutNanos;
+		private final BlockingQueue<List<ByteBuffer>> received = new LinkedBlockingQueue<List<ByteBuffer>>();
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable failure;
+		private Iterator<ByteBuffer> buffers = Collections.emptyIterator();
+		private ByteBuffer buffer;
+		private boolean ended, closed;
+
+		BodyStream(Duration timeout) {
+			timeoutNanos = timeout.toNanos();
+		}
+
+		@Override
+		public CompletionStage<InputStream> getBody() {
+			return CompletableFuture.completedFuture(this);
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> item) {
+			received.add(item);
+		}
+
+		@Override
+		public void onError(Throwable e) {
+			failure = e;
+			received.add(END);
+		}
+
+		@Override
+		public void onComplete() {
+			received.add(END);
+		}
+
+		/**
+		 * @return The buffer to read from next, or null at the end of the body.
+		 */
+		private ByteBuffer current() throws IOException {
+			while (buffer == null || !buffer.hasRemaining()) {
+				if (closed) throw new IOException("Stream closed");
+				if (ended) return null;
+				if (buffers.hasNext()) {
+					buffer = buffers.next();
+					continue;
+				}
+				List<ByteBuffer> next;
+				try {
+					next = received.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted reading response");
+				}
+				if (next == null) {
+					close();
+					throw stalled(timeoutNanos);
+				}
+				if (next == END) {
+					ended = true;
+					if (failure != null) {
+						throw (failure instanceof IOException)? (IOException) failure : new IOException(failure);
+					}
+					return null;
+				}
+				buffers = next.iterator();
+				subscription.request(1);
+			}
+			return buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			ByteBuffer b = current();
+			return (b == null)? -1 : b.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			ByteBuffer b = current();
+			if (b == null) return -1;
+			int n = Math.min(len, b.remaining());
+			b.get(bytes, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (buffer == null)? 0 : buffer.remaining();
+		}
+
+		@Override
+		public void close() {
+			if (closed) return;
+			closed = true;
+			if (!ended && subscription != null) {
+				subscription.cancel(); // (lets go of the connection, rather than reading the rest)
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes read through it.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		volatile long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int off, int len) throws IOException {
+			int n = super.read(buffer, off, len);
+			if (n > 0) count += n;
+			return n;
+		}
+	}
+}
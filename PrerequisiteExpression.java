@@ -0,0 +1,212 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * EZ-Plan
+ * A course's prerequisites (or corequisites) as an AND/OR expression over course codes,
+ * parsed from the plain text the calendar gives, eg.
+ * 	"COSC 111 or COSC 123."                         -> COSC 111 | COSC 123
+ * 	"One of MATH 100, 101 and one of ENGL 112, 114." -> (MATH 100 | MATH 101) & (ENGL 112 | ENGL 114)
+ * 	"COSC 221; and third-year standing."             -> COSC 221
+ * Conditions that aren't courses (standing, grades, permission) are ignored; only the course
+ * structure is kept. Within a clause "or" binds tighter than "and", semicolons separate
+ * clauses that all must hold, and a list's commas take on the connective that ends the list.
+ */
+public abstract class PrerequisiteExpression {
+
+	/**
+	 * @param taken Course codes already completed (eg. "COSC 111").
+	 * @return True if those courses satisfy this expression.
+	 */
+	public abstract boolean isSatisfiedBy(Set<String> taken);
+
+	/**
+	 * @param out List to add every course code mentioned in this expression to.
+	 */
+	public abstract void collectCourses(List<String> out);
+
+	/**
+	 * A single course.
+	 */
+	public static class Ref extends PrerequisiteExpression {
+		public final String code;
+
+		Ref(String code) {
+			this.code = code;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(Set<String> taken) {
+			return taken.contains(code);
+		}
+
+		@Override
+		public void collectCourses(List<String> out) {
+			out.add(code);
+		}
+
+		@Override
+		public String toString() {
+			return code;
+		}
+	}
+
+	/**
+	 * All (And) or any (Or) of several expressions.
+	 */
+	public static class Group extends PrerequisiteExpression {
+		public final boolean all;
+		public final List<PrerequisiteExpression> terms;
+
+		Group(boolean all, List<PrerequisiteExpression> terms) {
+			this.all = all;
+			this.terms = Collections.unmodifiableList(terms);
+		}
+
+		@Override
+		public boolean isSatisfiedBy(Set<String> taken) {
+			for (PrerequisiteExpression term : terms) {
+				if (term.isSatisfiedBy(taken) != all) return !all;
+			}
+			return all;
+		}
+
+		@Override
+		public void collectCourses(List<String> out) {
+			for (PrerequisiteExpression term : terms) {
+				term.collectCourses(out);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder s = new StringBuilder("(");
+			for (PrerequisiteExpression term : terms) {
+				if (s.length() > 1) s.append(all? " & " : " | ");
+				s.append(term);
+			}
+			return s.append(")").toString();
+		}
+	}
+
+	// Tokens: a course code (subject optional, carried over from the previous code),
+	// a connective, a list opener, or a comma. Only the words are matched in any case: a subject
+	// is capitals (and not a capitalized connective), so "MATH 100 and 101" or "both 121" don't
+	// read "and"/"both" as subjects, and "300-level" is a year level rather than a course number.
+	private static final Pattern TOKENS = Pattern.compile(
+			"\\b(?:(?-i:(?!(?:AND|ALL|ANY|ONE|BOTH|FROM)\\b)([A-Z]{3,4})) ?)?(\\d{3})\\b(?!-level)"
+			+"|\\b(and|or)\\b|\\b(one of|either|any of|all of|both)\\b|(,)",
+			Pattern.CASE_INSENSITIVE);
+
+	// Token kinds
+	private static final int COURSE = 0, AND = 1, OR = 2, ANY_OF = 3, ALL_OF = 4, COMMA = 5, EITHER = 6;
+
+	/**
+	 * Parse prerequisite text.
+	 * @param text eg. Course.getPrereqs() (may be null).
+	 * @return The expression, or null if the text mentions no courses.
+	 */
+	public static PrerequisiteExpression parse(String text) {
+		if (text == null) return null;
+		List<PrerequisiteExpression> clauses = new ArrayList<PrerequisiteExpression>();
+		String[] subject = {null};
+		for (String clause : text.split(";")) {
+			PrerequisiteExpression e = parseClause(clause, subject);
+			if (e != null) clauses.add(e);
+		}
+		return combine(true, clauses);
+	}
+
+	private static PrerequisiteExpression parseClause(String clause, String[] subject) {
+		// Tokenize, keeping course codes as (kind, code) pairs
+		List<Integer> kinds = new ArrayList<Integer>();
+		List<String> codes = new ArrayList<String>();
+		Matcher m = TOKENS.matcher(clause);
+		while (m.find()) {
+			if (m.group(2) != null) {
+				if (m.group(1) != null) {
+					subject[0] = m.group(1).toUpperCase();
+				}
+				if (subject[0] == null) continue; // a number with no subject yet (eg. a grade)
+				kinds.add(COURSE);
+				codes.add(subject[0]+" "+m.group(2));
+			} else {
+				String word = m.group().toLowerCase();
+				kinds.add(word.equals("and")? AND : word.equals("or")? OR : word.equals(",")? COMMA
+						: (word.equals("all of") || word.equals("both"))? ALL_OF
+						: word.equals("either")? EITHER : ANY_OF);
+				codes.add(null);
+			}
+		}
+		
+		// Commas take on the connective that ends their list ("A, B, or C"); "and" if there is none
+		for (int i = 0; i < kinds.size(); i++) {
+			if (kinds.get(i) != COMMA) continue;
+			int connective = AND;
+			for (int j = i+1; j < kinds.size(); j++) {
+				int k = kinds.get(j);
+				if (k == AND || k == OR) {
+					connective = k;
+					break;
+				}
+				if (k != COURSE && k != COMMA) break;
+			}
+			kinds.set(i, connective);
+		}
+		
+		// Build "or" runs joined by "and"; a list opener groups the courses that follow it
+		List<PrerequisiteExpression> conjuncts = new ArrayList<PrerequisiteExpression>();
+		List<PrerequisiteExpression> disjuncts = new ArrayList<PrerequisiteExpression>();
+		int i = 0;
+		while (i < kinds.size()) {
+			int kind = kinds.get(i);
+			if (kind == COURSE) {
+				disjuncts.add(new Ref(codes.get(i)));
+				i++;
+			} else if (kind == ANY_OF || kind == ALL_OF || kind == EITHER) {
+				// The list runs while courses keep following separators ("either ... or ..." only continues on "or")
+				List<PrerequisiteExpression> members = new ArrayList<PrerequisiteExpression>();
+				i++;
+				while (i < kinds.size()) {
+					if (kinds.get(i) == COURSE) {
+						members.add(new Ref(codes.get(i)));
+						i++;
+					} else if ((kinds.get(i) == OR || (kinds.get(i) == AND && kind != EITHER)) && !members.isEmpty()
+							&& i+1 < kinds.size() && kinds.get(i+1) == COURSE) {
+						i++;
+					} else {
+						break;
+					}
+				}
+				PrerequisiteExpression list = combine(kind == ALL_OF, members);
+				if (list != null) disjuncts.add(list);
+			} else if (kind == AND) {
+				// Only separates terms if there is a term on both sides
+				if (!disjuncts.isEmpty()) {
+					conjuncts.add(combine(false, disjuncts));
+					disjuncts = new ArrayList<PrerequisiteExpression>();
+				}
+				i++;
+			} else {
+				i++; // "or" just continues the current run
+			}
+		}
+		if (!disjuncts.isEmpty()) {
+			conjuncts.add(combine(false, disjuncts));
+		}
+		return combine(true, conjuncts);
+	}
+
+	/**
+	 * Join terms with AND/OR, without wrapping a single term.
+	 */
+	private static PrerequisiteExpression combine(boolean all, List<PrerequisiteExpression> terms) {
+		if (terms.isEmpty()) return null;
+		if (terms.size() == 1) return terms.get(0);
+		return new Group(all, terms);
+	}
+}
@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EZ-Plan
+ * Catalog-wide prerequisite graph: every course's prerequisite text is parsed once
+ * (see PrerequisiteExpression), and for each course the full set of courses that may be
+ * required before it (directly or through a chain of prerequisites) is precomputed as a bitset,
+ * along with the inverse (every course it may eventually unlock).
+ * Questions like "is X anywhere before Y?" are then a single bit lookup.
+ *
+ * Both directions treat AND and OR alike (any course mentioned counts), so the closures are
+ * "may be required" sets; use getPrereqs(...).isSatisfiedBy(...) for exact eligibility checks.
+ * Courses mentioned in prerequisites but missing from the catalog are left out.
+ */
+public class PrerequisiteGraph {
+
+	private List<Course> courses;
+	private Map<String, Integer> ids;
+	private PrerequisiteExpression[] prereqs, coreqs;
+	private BitSet[] requiredBefore, unlockedBy;
+
+	/**
+	 * Build the graph for a catalog.
+	 * @param catalog Crawled courses (non-course tuples are ignored).
+	 */
+	public PrerequisiteGraph(Collection<? extends Tuple> catalog) {
+		courses = new ArrayList<Course>(catalog.size());
+		ids = new HashMap<String, Integer>(catalog.size()*2);
+		for (Tuple t : catalog) {
+			if (t instanceof Course) {
+				Course c = (Course) t;
+				ids.put(c.getCourseCode(), courses.size());
+				courses.add(c);
+			}
+		}
+		int n = courses.size();
+		
+		// Parse each course's requisites, and note its direct prerequisites
+		prereqs = new PrerequisiteExpression[n];
+		coreqs = new PrerequisiteExpression[n];
+		int[][] direct = new int[n][];
+		List<String> mentioned = new ArrayList<String>();
+		for (int i = 0; i < n; i++) {
+			prereqs[i] = PrerequisiteExpression.parse(courses.get(i).getPrereqs());
+			coreqs[i] = PrerequisiteExpression.parse(courses.get(i).getCoreqs());
+			mentioned.clear();
+			if (prereqs[i] != null) prereqs[i].collectCourses(mentioned);
+			BitSet deps = new BitSet(n);
+			for (String code : mentioned) {
+				Integer id = ids.get(code);
+				if (id != null && id != i) deps.set(id);
+			}
+			direct[i] = deps.stream().toArray();
+		}
+		
+		// Transitive closure: visit courses after their prerequisites (depth-first post-order),
+		// then repeat until nothing changes (one extra pass for an acyclic catalog; more only
+		// if the calendar has prerequisite cycles)
+		int[] order = postOrder(direct);
+		requiredBefore = new BitSet[n];
+		for (int i = 0; i < n; i++) {
+			requiredBefore[i] = new BitSet(n);
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int y : order) {
+				BitSet closure = requiredBefore[y];
+				int before = closure.cardinality();
+				for (int d : direct[y]) {
+					closure.set(d);
+					closure.or(requiredBefore[d]);
+				}
+				closure.clear(y); // a cycle shouldn't make a course its own prerequisite
+				changed |= closure.cardinality() != before;
+			}
+		}
+		
+		unlockedBy = new BitSet[n];
+		for (int i = 0; i < n; i++) {
+			unlockedBy[i] = new BitSet(n);
+		}
+		for (int y = 0; y < n; y++) {
+			for (int x = requiredBefore[y].nextSetBit(0); x >= 0; x = requiredBefore[y].nextSetBit(x+1)) {
+				unlockedBy[x].set(y);
+			}
+		}
+	}
+
+	/**
+	 * @return Number of courses in the graph.
+	 */
+	public int size() {
+		return courses.size();
+	}
+
+	/**
+	 * @param code Course code, eg. "COSC 310".
+	 * @return The course's position in the graph (used by the bitsets), or -1 if not in the catalog.
+	 */
+	public int indexOf(String code) {
+		Integer id = ids.get(code);
+		return (id == null)? -1 : id;
+	}
+
+	public Course get(int index) {
+		return courses.get(index);
+	}
+
+	/**
+	 * @return Parsed prerequisites of a course, or null if it has none (or isn't in the catalog).
+	 */
+	public PrerequisiteExpression getPrereqs(String code) {
+		int i = indexOf(code);
+		return (i < 0)? null : prereqs[i];
+	}
+
+	/**
+	 * @return Parsed corequisites of a course, or null if it has none (or isn't in the catalog).
+	 */
+	public PrerequisiteExpression getCoreqs(String code) {
+		int i = indexOf(code);
+		return (i < 0)? null : coreqs[i];
+	}
+
+	/**
+	 * @return True if course x may be required (at any depth) before course y.
+	 */
+	public boolean isRequiredBefore(String x, String y) {
+		int xi = indexOf(x), yi = indexOf(y);
+		return xi >= 0 && yi >= 0 && requiredBefore[yi].get(xi);
+	}
+
+	/**
+	 * Every course that may be required before the given one, as positions in the graph.
+	 * (The returned bitset is shared; do not modify it.)
+	 */
+	public BitSet requiredBeforeBits(String code) {
+		int i = indexOf(code);
+		return (i < 0)? new BitSet() : requiredBefore[i];
+	}
+
+	/**
+	 * Every course the given one may eventually unlock, as positions in the graph.
+	 * (The returned bitset is shared; do not modify it.)
+	 */
+	public BitSet unlockedByBits(String code) {
+		int i = indexOf(code);
+		return (i < 0)? new BitSet() : unlockedBy[i];
+	}
+
+	/**
+	 * @return Every course that may be required before the given one, in catalog order.
+	 */
+	public List<Course> requiredBefore(String code) {
+		return toCourses(requiredBeforeBits(code));
+	}
+
+	/**
+	 * @return Every course the given one may eventually unlock, in catalog order.
+	 */
+	public List<Course> unlockedBy(String code) {
+		return toCourses(unlockedByBits(code));
+	}
+
+	private List<Course> toCourses(BitSet bits) {
+		List<Course> list = new ArrayList<Course>(bits.cardinality());
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i+1)) {
+			list.add(courses.get(i));
+		}
+		return list;
+	}
+
+	/**
+	 * Depth-first post-order over the prerequisite edges (iterative, so long chains can't overflow the stack).
+	 */
+	private static int[] postOrder(int[][] direct) {
+		int n = direct.length;
+		int[] order = new int[n], stack = new int[n], next = new int[n];
+		boolean[] visited = new boolean[n];
+		int count = 0;
+		for (int root = 0; root < n; root++) {
+			if (visited[root]) continue;
+			int top = 0;
+			stack[0] = root;
+			visited[root] = true;
+			while (top >= 0) {
+				int node = stack[top];
+				if (next[node] < direct[node].length) {
+					int dep = direct[node][next[node]++];
+					if (!visited[dep]) {
+						visited[dep] = true;
+						stack[++top] = dep;
+					}
+				} else {
+					order[count++] = node;
+					top--;
+				}
+			}
+		}
+		return order;
+	}
+}
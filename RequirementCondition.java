@@ -0,0 +1,411 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * EZ-Plan
+ * A CourseRequirement condition (the SQL fragment in its "cond" field), parsed once into
+ * a form that can be checked without a database. The conditions built in CrawlerExecute are
+ * all of the forms
+ * 	cname = 'COSC 121'
+ * 	cname RLIKE 'COSC (111|123)'               (subject, numbers starting with one of these)
+ * 	cname RLIKE '^[a-zA-Z]+ (3|4)'             (any subject, 3rd/4th year)
+ * 	cname RLIKE '^ANTH |^ECON |...'            (any number in a set of subjects)
+ * 	cname RLIKE '^(ANTH|ECON|...) (3|4)'       (the same, as one group of subjects; here 3rd/4th year)
+ * which become an exact course code or a list of subject/number-prefix alternatives.
+ * Anything else (eg. '[\s\S]*') is kept as a regular expression and matched the way MySQL would.
+ *
+ * toIndexedPredicate() rewrites a condition over the Course table's derived subject/number/level
+ * columns instead of the course code, eg.
+ * 	cname RLIKE '^COSC (3|4)'        ->  subject = 'COSC' AND level BETWEEN 3 AND 4
+ * 	cname RLIKE '^ANTH |^ECON |...'  ->  subject IN ('ANTH','ECON',...)
+ * so the database can answer it with an index range scan rather than a regex on every row.
+ */
+public class RequirementCondition {
+
+	public static enum Kind { EXACT, ALTERNATIVES, REGEX };
+
+	/**
+	 * Longest subject code in the calendar (eg. "COSC").
+	 */
+	private static final int MAX_SUBJECT_LENGTH = 4;
+
+	/**
+	 * One alternative of a subject/number pattern.
+	 */
+	public static class Alternative {
+		/**
+		 * True if the pattern starts at the beginning of the course code (^);
+		 * otherwise the subject only has to end with the given one.
+		 */
+		public final boolean anchored;
+		/**
+		 * Subject code (upper case), or null for any subject.
+		 */
+		public final String subject;
+		/**
+		 * Course numbers must start with one of these (eg. "3" for third year, "111" for exactly 111);
+		 * empty for any number.
+		 */
+		public final List<String> numberPrefixes;
+
+		Alternative(boolean anchored, String subject, List<String> numberPrefixes) {
+			this.anchored = anchored;
+			this.subject = subject;
+			this.numberPrefixes = Collections.unmodifiableList(numberPrefixes);
+		}
+
+		/**
+		 * @param subj Subject code, in upper case (eg. "COSC").
+		 * @param number Course number as text (eg. "310").
+		 * @return True if that course matches this alternative.
+		 */
+		public boolean matches(String subj, String number) {
+			if (subject != null && !(anchored? subj.equals(subject) : subj.endsWith(subject))) {
+				return false;
+			}
+			return matchesNumber(number);
+		}
+
+		public boolean matchesNumber(String number) {
+			if (numberPrefixes.isEmpty()) return true;
+			for (String prefix : numberPrefixes) {
+				if (number.startsWith(prefix)) return true;
+			}
+			return false;
+		}
+	}
+
+	private String cond, key;
+	private Kind kind;
+	private String exactCode;
+	private List<Alternative> alternatives;
+	private Pattern regex;
+
+	private RequirementCondition(String cond) {
+		this.cond = cond;
+	}
+
+	/**
+	 * Parse a requirement condition.
+	 * @param cond Condition text, eg. "cname RLIKE 'COSC (111|123)'".
+	 * @param key Column the condition tests (see Course.getKeyHeadings()).
+	 * @return The parsed condition.
+	 * @throws IllegalArgumentException If the condition is not a comparison of the key with a string.
+	 */
+	public static RequirementCondition parse(String cond, String key) {
+		RequirementCondition c = new RequirementCondition(cond);
+		c.key = key;
+		String text = cond.trim();
+		if (!text.regionMatches(true, 0, key, 0, key.length())) {
+			throw new IllegalArgumentException("Unsupported requirement condition: "+cond);
+		}
+		text = text.substring(key.length()).trim();
+		
+		// Operator, then a single quoted string to the end
+		String op;
+		if (text.startsWith("=")) {
+			op = "=";
+		} else if (text.regionMatches(true, 0, "RLIKE", 0, 5)) {
+			op = "RLIKE";
+		} else if (text.regionMatches(true, 0, "REGEXP", 0, 6)) {
+			op = "REGEXP";
+		} else {
+			throw new IllegalArgumentException("Unsupported requirement condition: "+cond);
+		}
+		text = text.substring(op.length()).trim();
+		String value = unquote(text);
+		if (value == null) {
+			throw new IllegalArgumentException("Unsupported requirement condition: "+cond);
+		}
+		
+		if (op.equals("=")) {
+			c.kind = Kind.EXACT;
+			c.exactCode = value.toUpperCase();
+		} else {
+			c.alternatives = parseAlternatives(value);
+			if (c.alternatives != null) {
+				c.kind = Kind.ALTERNATIVES;
+			} else {
+				// MySQL regexes are case-insensitive for ordinary (non-binary) columns
+				c.kind = Kind.REGEX;
+				c.regex = Pattern.compile(value, Pattern.CASE_INSENSITIVE);
+			}
+		}
+		return c;
+	}
+
+	public String getCond() {
+		return cond;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return The course code for an EXACT condition (upper case).
+	 */
+	public String getExactCode() {
+		return exactCode;
+	}
+
+	/**
+	 * @return The alternatives of an ALTERNATIVES condition (any one may match).
+	 */
+	public List<Alternative> getAlternatives() {
+		return alternatives;
+	}
+
+	/**
+	 * @return The regular expression of a REGEX condition.
+	 */
+	public Pattern getRegex() {
+		return regex;
+	}
+
+	/**
+	 * Check a single course code against this condition.
+	 * @param subject eg. "COSC"
+	 * @param number eg. 310
+	 * @return True if the condition holds for that course.
+	 */
+	public boolean matches(String subject, int number) {
+		switch (kind) {
+		case EXACT:
+			return exactCode.equals(subject.toUpperCase()+" "+number);
+		case ALTERNATIVES:
+			String subj = subject.toUpperCase(), num = Integer.toString(number);
+			for (Alternative alt : alternatives) {
+				if (alt.matches(subj, num)) return true;
+			}
+			return false;
+		default:
+			return regex.matcher(subject+" "+number).find(); // RLIKE matches anywhere in the value
+		}
+	}
+
+	/**
+	 * Rewrite this condition as an equivalent predicate on Course's indexed columns (subject, number
+	 * and level; see Course.getTableDDL()). Exact course codes already use the primary key, and
+	 * regexes that aren't subject/number alternatives are kept as they are (RLIKE on the key),
+	 * as are alternatives that can't be expressed exactly with the indexed columns.
+	 * (Course numbers are assumed to have three digits, as they do throughout the calendar.)
+	 * @return A SQL condition selecting the same courses.
+	 */
+	public String toIndexedPredicate() {
+		switch (kind) {
+		case EXACT:
+			return cond;
+		case REGEX:
+			// A regex that can match nothing at all matches every course (eg. '[\s\S]*')
+			return regex.matcher("").find()? key+" IS NOT NULL" : cond;
+		default:
+			break;
+		}
+		
+		// Subjects allowed for each distinct number predicate (null in the set for any subject)
+		Map<String, Set<String>> subjectsByNumbers = new LinkedHashMap<String, Set<String>>();
+		for (Alternative alt : alternatives) {
+			// Unanchored, a short subject could also be the end of a longer one
+			if (alt.subject != null && !alt.anchored && alt.subject.length() < MAX_SUBJECT_LENGTH) {
+				return cond;
+			}
+			String numbers = numberPredicate(alt.numberPrefixes);
+			if (numbers == null) {
+				return cond;
+			}
+			if (!subjectsByNumbers.containsKey(numbers)) {
+				subjectsByNumbers.put(numbers, new LinkedHashSet<String>());
+			}
+			subjectsByNumbers.get(numbers).add(alt.subject);
+		}
+		
+		List<String> terms = new ArrayList<String>();
+		for (Map.Entry<String, Set<String>> entry : subjectsByNumbers.entrySet()) {
+			Set<String> subjects = entry.getValue();
+			String subjectTerm = subjects.contains(null)? ""
+					: (subjects.size() == 1)? "subject = '"+subjects.iterator().next()+"'"
+					: "subject IN ('"+String.join("','", subjects)+"')";
+			String numberTerm = entry.getKey();
+			if (subjectTerm.isEmpty() && numberTerm.isEmpty()) {
+				return key+" IS NOT NULL"; // one alternative matches every course
+			}
+			terms.add(subjectTerm.isEmpty()? numberTerm
+					: numberTerm.isEmpty()? subjectTerm : subjectTerm+" AND "+numberTerm);
+		}
+		if (terms.size() == 1) {
+			return terms.get(0);
+		}
+		StringBuilder predicate = new StringBuilder();
+		for (String term : terms) {
+			if (predicate.length() > 0) predicate.append(" OR ");
+			predicate.append('(').append(term).append(')');
+		}
+		return predicate.toString();
+	}
+	
+	/**
+	 * Predicate on the number/level columns for numbers starting with any of the given prefixes:
+	 * one digit is a year level, two a range of numbers, three an exact number.
+	 * @return The predicate ("" for any number), or null if a prefix can't be expressed that way.
+	 */
+	private static String numberPredicate(List<String> prefixes) {
+		if (prefixes.isEmpty()) return "";
+		TreeSet<Integer> levels = new TreeSet<Integer>(), numbers = new TreeSet<Integer>();
+		List<String> parts = new ArrayList<String>();
+		for (String prefix : prefixes) {
+			if (prefix.length() > 3 || prefix.charAt(0) == '0') return null;
+			int value = Integer.parseInt(prefix);
+			if (prefix.length() == 1) {
+				levels.add(value);
+			} else if (prefix.length() == 2) {
+				parts.add("number BETWEEN "+(value*10)+" AND "+(value*10+9));
+			} else {
+				numbers.add(value);
+			}
+		}
+		if (!levels.isEmpty()) {
+			if (levels.size() == 1) {
+				parts.add(0, "level = "+levels.first());
+			} else if (levels.last() - levels.first() == levels.size() - 1) {
+				parts.add(0, "level BETWEEN "+levels.first()+" AND "+levels.last());
+			} else {
+				parts.add(0, "level IN ("+join(levels)+")");
+			}
+		}
+		if (!numbers.isEmpty()) {
+			parts.add((numbers.size() == 1)? "number = "+numbers.first() : "number IN ("+join(numbers)+")");
+		}
+		return (parts.size() == 1)? parts.get(0) : "("+String.join(" OR ", parts)+")";
+	}
+	
+	private static String join(Set<Integer> values) {
+		StringBuilder text = new StringBuilder();
+		for (Integer value : values) {
+			if (text.length() > 0) text.append(',');
+			text.append(value);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Read a MySQL string literal making up the whole text (with MySQL's backslash escapes).
+	 * @return The string's value, or null if the text is not a single quoted string.
+	 */
+	private static String unquote(String text) {
+		if (text.length() < 2) return null;
+		char quote = text.charAt(0);
+		if (quote != '\'' && quote != '"') return null;
+		StringBuilder value = new StringBuilder();
+		int i = 1;
+		for (; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (ch == '\\' && i+1 < text.length()) {
+				char next = text.charAt(++i);
+				switch (next) {
+				case 'n': value.append('\n'); break;
+				case 't': value.append('\t'); break;
+				case 'r': value.append('\r'); break;
+				case '0': value.append('\0'); break;
+				case '%': case '_': value.append('\\').append(next); break; // kept as-is by MySQL
+				default: value.append(next); // (including unknown escapes such as \s, which become "s")
+				}
+			} else if (ch == quote) {
+				if (i+1 < text.length() && text.charAt(i+1) == quote) {
+					value.append(quote); // doubled quote
+					i++;
+				} else {
+					break;
+				}
+			} else {
+				value.append(ch);
+			}
+		}
+		// The closing quote must end the condition
+		return (i == text.length()-1)? value.toString() : null;
+	}
+
+	/**
+	 * Parse a regex made only of alternatives like "^SUBJ (1|2)", "SUBJ 111", "^[a-zA-Z]+ 3"
+	 * or "^(SUBJ|SUBJ) 3" (one alternative per subject of the group).
+	 * @return The alternatives, or null if the regex uses anything else.
+	 */
+	private static List<Alternative> parseAlternatives(String regex) {
+		List<Alternative> alternatives = new ArrayList<Alternative>();
+		int depth = 0, start = 0;
+		for (int i = 0; i <= regex.length(); i++) {
+			char ch = (i < regex.length())? regex.charAt(i) : '|';
+			if (ch == '(') depth++;
+			else if (ch == ')') depth--;
+			else if (ch == '|' && depth == 0) {
+				List<Alternative> alts = parseAlternative(regex.substring(start, i));
+				if (alts == null) return null;
+				alternatives.addAll(alts);
+				start = i+1;
+			}
+		}
+		return alternatives;
+	}
+
+	private static List<Alternative> parseAlternative(String alt) {
+		int i = 0;
+		boolean anchored = alt.startsWith("^");
+		if (anchored) i++;
+		
+		// Subject: literal letters, a group of them, or any letters
+		List<String> subjects = new ArrayList<String>();
+		if (alt.startsWith("[a-zA-Z]+", i)) {
+			i += 9;
+			subjects.add(null);
+		} else {
+			boolean group = i < alt.length() && alt.charAt(i) == '(';
+			if (group) i++;
+			while (true) {
+				int subjectStart = i;
+				while (i < alt.length() && Character.isLetter(alt.charAt(i))) i++;
+				if (i == subjectStart) return null;
+				subjects.add(alt.substring(subjectStart, i).toUpperCase());
+				if (!group || i >= alt.length() || alt.charAt(i) != '|') break;
+				i++;
+			}
+			if (group) {
+				if (i >= alt.length() || alt.charAt(i) != ')') return null;
+				i++;
+			}
+		}
+		if (i >= alt.length() || alt.charAt(i) != ' ') return null;
+		i++;
+		
+		// Number prefixes: nothing, digits, or a group of digit alternatives
+		List<String> prefixes = new ArrayList<String>();
+		if (i < alt.length()) {
+			boolean group = alt.charAt(i) == '(';
+			String numbers = group? alt.substring(i+1, alt.length()-1) : alt.substring(i);
+			if (group && alt.charAt(alt.length()-1) != ')') return null;
+			for (String prefix : numbers.split("\\|", -1)) {
+				if (prefix.isEmpty()) return null;
+				for (int d = 0; d < prefix.length(); d++) {
+					if (!Character.isDigit(prefix.charAt(d))) return null;
+				}
+				prefixes.add(prefix);
+			}
+		}
+		List<Alternative> alternatives = new ArrayList<Alternative>(subjects.size());
+		for (String subject : subjects) {
+			alternatives.add(new Alternative(anchored, subject, prefixes));
+		}
+		return alternatives;
+	}
+
+	@Override
+	public String toString() {
+		return cond;
+	}
+}
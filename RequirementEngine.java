@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EZ-Plan
+ * Evaluates CourseRequirement conditions against an in-memory course catalog
+ * (eg. the output of Crawler.fullCrawl), rather than running each one as a query.
+ * Conditions are parsed once (see RequirementCondition) and answered from subject
+ * and leading-digit (year level) indexes, so most requirements never look at
+ * courses outside their own subjects.
+ */
+public class RequirementEngine {
+
+	// The catalog, in its original order (results keep this order)
+	private List<Course> courses;
+	// Catalog positions by subject (upper case), by leading digit of the course number, and by course code
+	private Map<String, int[]> bySubject;
+	private int[][] byLeadingDigit;
+	private Map<String, Integer> byCode;
+	
+	// Conditions already parsed
+	private Map<String, RequirementCondition> compiled;
+	private String key;
+
+	/**
+	 * Index the given catalog.
+	 * @param catalog Crawled courses (non-course tuples are ignored).
+	 */
+	public RequirementEngine(Collection<? extends Tuple> catalog) {
+		courses = new ArrayList<Course>(catalog.size());
+		for (Tuple t : catalog) {
+			if (t instanceof Course) {
+				courses.add((Course) t);
+			}
+		}
+		key = new Course().getKeyHeadings()[0];
+		compiled = new HashMap<String, RequirementCondition>();
+		
+		Map<String, List<Integer>> subjects = new LinkedHashMap<String, List<Integer>>();
+		List<List<Integer>> digits = new ArrayList<List<Integer>>();
+		for (int d = 0; d < 10; d++) {
+			digits.add(new ArrayList<Integer>());
+		}
+		byCode = new HashMap<String, Integer>(courses.size()*2);
+		for (int i = 0; i < courses.size(); i++) {
+			Course c = courses.get(i);
+			String subject = c.getSubject().toUpperCase();
+			List<Integer> list = subjects.get(subject);
+			if (list == null) {
+				list = new ArrayList<Integer>();
+				subjects.put(subject, list);
+			}
+			list.add(i);
+			digits.get(Integer.toString(c.getNumber()).charAt(0) - '0').add(i);
+			byCode.put(subject+" "+c.getNumber(), i);
+		}
+		bySubject = new LinkedHashMap<String, int[]>();
+		for (Map.Entry<String, List<Integer>> entry : subjects.entrySet()) {
+			bySubject.put(entry.getKey(), toArray(entry.getValue()));
+		}
+		byLeadingDigit = new int[10][];
+		for (int d = 0; d < 10; d++) {
+			byLeadingDigit[d] = toArray(digits.get(d));
+		}
+	}
+
+	/**
+	 * Parse a condition (or reuse it if parsed before).
+	 * @param cond Requirement condition text.
+	 * @return The parsed condition.
+	 */
+	public synchronized RequirementCondition compile(String cond) {
+		RequirementCondition c = compiled.get(cond);
+		if (c == null) {
+			c = RequirementCondition.parse(cond, key);
+			compiled.put(cond, c);
+		}
+		return c;
+	}
+
+	/**
+	 * Find the courses that satisfy a requirement.
+	 * @param req
+	 * @return Matching courses, in catalog order.
+	 */
+	public List<Course> matching(CourseRequirement req) {
+		return matching(compile(req.getCond()));
+	}
+
+	/**
+	 * Find the courses that satisfy each requirement of a degree.
+	 * @param reqs Requirements (eg. DegreeType.getAll()).
+	 * @return Matching courses for each requirement, in the order given.
+	 */
+	public Map<CourseRequirement, List<Course>> matching(List<CourseRequirement> reqs) {
+		Map<CourseRequirement, List<Course>> result = new LinkedHashMap<CourseRequirement, List<Course>>();
+		for (CourseRequirement req : reqs) {
+			result.put(req, matching(req));
+		}
+		return result;
+	}
+
+	/**
+	 * Find the courses that satisfy a parsed condition.
+	 * @param cond
+	 * @return Matching courses, in catalog order.
+	 */
+	public List<Course> matching(RequirementCondition cond) {
+		BitSet hits = new BitSet(courses.size());
+		switch (cond.getKind()) {
+		case EXACT:
+			Integer i = byCode.get(cond.getExactCode());
+			if (i != null) hits.set(i);
+			break;
+		case ALTERNATIVES:
+			for (RequirementCondition.Alternative alt : cond.getAlternatives()) {
+				collect(alt, hits);
+			}
+			break;
+		default:
+			for (int c = 0; c < courses.size(); c++) {
+				if (cond.getRegex().matcher(courses.get(c).getCourseCode()).find()) hits.set(c);
+			}
+		}
+		
+		List<Course> result = new ArrayList<Course>(hits.cardinality());
+		for (int c = hits.nextSetBit(0); c >= 0; c = hits.nextSetBit(c+1)) {
+			result.add(courses.get(c));
+		}
+		return result;
+	}
+
+	/**
+	 * Mark the courses matching one alternative, starting from whichever index narrows it down most.
+	 */
+	private void collect(RequirementCondition.Alternative alt, BitSet hits) {
+		if (alt.subject == null) {
+			// Any subject: go by year level (leading digit) if that's all the numbers say
+			boolean digitsOnly = !alt.numberPrefixes.isEmpty();
+			for (String prefix : alt.numberPrefixes) {
+				digitsOnly &= prefix.length() == 1;
+			}
+			if (digitsOnly) {
+				for (String prefix : alt.numberPrefixes) {
+					for (int c : byLeadingDigit[prefix.charAt(0) - '0']) hits.set(c);
+				}
+			} else {
+				collect(alt, hits, null);
+			}
+		} else if (alt.anchored) {
+			collect(alt, hits, bySubject.get(alt.subject));
+		} else {
+			// Unanchored subjects also match longer subject codes ending in them
+			for (Map.Entry<String, int[]> subject : bySubject.entrySet()) {
+				if (subject.getKey().endsWith(alt.subject)) {
+					collect(alt, hits, subject.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark the candidates (or the whole catalog, if null) whose numbers match the alternative.
+	 */
+	private void collect(RequirementCondition.Alternative alt, BitSet hits, int[] candidates) {
+		if (candidates == null) {
+			if (alt.subject != null) return; // subject not in the catalog
+			for (int c = 0; c < courses.size(); c++) {
+				if (alt.matchesNumber(Integer.toString(courses.get(c).getNumber()))) hits.set(c);
+			}
+			return;
+		}
+		for (int c : candidates) {
+			if (alt.matchesNumber(Integer.toString(courses.get(c).getNumber()))) hits.set(c);
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,324 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EZ-Plan
+ * Coordinator of a crawl split across several worker processes (see ShardWorker).
+ * The coordinator reads the subject list from the course root page, and hands out shards of a
+ * few subjects at a time to whichever workers connect to its socket. Workers send back each
+ * subject's courses as they finish it; if a worker dies (or stops responding), the subjects of its
+ * shard it hadn't finished are handed to another worker. The subject it was on when lost counts as
+ * a failed attempt, so a subject that brings down every worker fails the crawl rather than being
+ * handed out forever. Likewise, if no worker is connected for a while (none ever came, or every one
+ * died and none came back), the crawl fails rather than waiting forever (see setWorkerTimeout).
+ *
+ * Protocol (one line per message, fields TSV-escaped as in CheckpointJournal):
+ * 	coordinator: H	[source name]	[course root URL]      once, on connecting
+ * 	coordinator: W	[subject code]	[subject code]...      a shard to crawl
+ * 	worker:      C	[course values]                        a course from the current subject
+ * 	worker:      S	[subject code]                         current subject done (after its courses)
+ * 	worker:      F	[subject code]	[message]               current subject failed
+ * 	coordinator: Q                                         no more work; disconnect
+ *
+ * To run on one machine: "java ShardCoordinator 7000" (or with a course root URL to crawl a
+ * different calendar), then "java ShardWorker localhost 7000" in as many other processes as wanted.
+ */
+public class ShardCoordinator implements AutoCloseable {
+
+	/**
+	 * Subjects per shard when not given, times a subject may fail before the crawl gives up,
+	 * how long a worker may take on one subject before it is presumed dead, and how long
+	 * the crawl may go without any worker connected when not given.
+	 */
+	public static final int DEFAULT_SHARD_SIZE = 4;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final int SUBJECT_TIMEOUT_MILLIS = 120000;
+	public static final long DEFAULT_WORKER_TIMEOUT_MILLIS = 300000;
+
+	private Crawler crawler;
+	private int shardSize;
+	private ServerSocket server;
+	private List<Socket> workers = Collections.synchronizedList(new ArrayList<Socket>());
+
+	// Shards not yet handed out (reassigned ones go to the front), and subjects finished so far
+	private LinkedBlockingDeque<List<String>> pending = new LinkedBlockingDeque<List<String>>();
+	private Map<String, List<Course>> completed = new ConcurrentHashMap<String, List<Course>>();
+	private Map<String, Integer> attempts = new HashMap<String, Integer>();
+	private int total = -1;
+	private IOException failure;
+	private boolean closed;
+
+	// Workers connected now, and since when there have been none
+	private int connected;
+	private long idleSince;
+	private long workerTimeoutMillis = DEFAULT_WORKER_TIMEOUT_MILLIS;
+
+	/**
+	 * Sets up a coordinator listening on the given port (workers can connect as soon as this returns).
+	 * @param crawler Crawler for the calendar to crawl (used to read its subject list).
+	 * @param port Port to listen on (0 for any free port; see getPort()).
+	 * @param shardSize Subjects handed to a worker at a time.
+	 */
+	public ShardCoordinator(Crawler crawler, int port, int shardSize) throws IOException {
+		this.crawler = crawler;
+		this.shardSize = Math.max(1, shardSize);
+		server = new ServerSocket(port);
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * @param millis How long the crawl may go without any worker connected (from the start, or from
+	 * when the last one was lost) before it fails.
+	 */
+	public synchronized void setWorkerTimeout(long millis) {
+		workerTimeoutMillis = millis;
+	}
+
+	/**
+	 * Crawl the calendar's courses on whichever workers connect, and wait for every subject to be done.
+	 * @return The course list, in the same order as Crawler.fullCrawl.
+	 */
+	public ArrayList<Tuple> run() throws IOException {
+		List<String> subjectCodes = crawler.getSubjectCodes();
+		synchronized (this) {
+			for (int i = 0; i < subjectCodes.size(); i += shardSize) {
+				pending.add(new ArrayList<String>(subjectCodes.subList(i, Math.min(i+shardSize, subjectCodes.size()))));
+			}
+			total = subjectCodes.size();
+			idleSince = System.nanoTime();
+		}
+
+		Thread acceptor = new Thread(this::acceptWorkers, "shard-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		try {
+			synchronized (this) {
+				while (failure == null && completed.size() < total) {
+					if (connected > 0) {
+						wait();
+						continue;
+					}
+					long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSince);
+					if (idle >= workerTimeoutMillis) {
+						throw new IOException("No workers connected for "+idle/1000+" s, with "+(total - completed.size())
+								+" of "+total+" subjects still to crawl (start some with \"java ShardWorker [host] "+getPort()+"\")");
+					}
+					wait(workerTimeoutMillis - idle);
+				}
+				if (failure != null) {
+					throw failure;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Crawl interrupted", e);
+		} finally {
+			close();
+		}
+
+		ArrayList<Tuple> courseList = new ArrayList<Tuple>();
+		for (String subjectCode : subjectCodes) {
+			courseList.addAll(completed.get(subjectCode));
+		}
+		return courseList;
+	}
+
+	/**
+	 * Stop listening, and disconnect any workers still connected.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		server.close();
+		synchronized (workers) {
+			for (Socket worker : workers) {
+				worker.close();
+			}
+		}
+	}
+
+	private void acceptWorkers() {
+		while (true) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				return; // closed
+			}
+			workers.add(socket);
+			synchronized (this) {
+				connected++;
+				notifyAll();
+			}
+			Thread handler = new Thread(() -> serve(socket), "shard-worker-"+socket.getPort());
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+
+	/**
+	 * Hand shards to one worker until there are none left (or the worker is lost).
+	 */
+	private void serve(Socket socket) {
+		String worker = socket.getRemoteSocketAddress().toString();
+		List<String> remaining = new ArrayList<String>();
+		try {
+			socket.setSoTimeout(SUBJECT_TIMEOUT_MILLIS);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			CalendarSource source = crawler.getSource();
+			send(out, "H", source.getName(), source.getCoursesUrl());
+
+			while (!isDone()) {
+				List<String> shard = pending.poll(200, TimeUnit.MILLISECONDS);
+				if (shard == null) continue; // (another worker's shard may still come back)
+				remaining.addAll(shard);
+				List<String> message = new ArrayList<String>(shard);
+				message.add(0, "W");
+				send(out, message.toArray(new String[message.size()]));
+
+				// Collect each subject's courses until the whole shard is accounted for
+				List<Course> courses = new ArrayList<Course>();
+				while (!remaining.isEmpty()) {
+					String line = in.readLine();
+					if (line == null) {
+						throw new SocketException("Worker disconnected");
+					}
+					String[] fields = TsvFormat.split(line);
+					if (fields[0].equals("C")) {
+						courses.add(Course.fromValues(Arrays.copyOfRange(fields, 1, fields.length)));
+					} else if (fields[0].equals("S")) {
+						remaining.remove(fields[1]);
+						complete(fields[1], courses);
+						courses = new ArrayList<Course>();
+					} else if (fields[0].equals("F")) {
+						remaining.remove(fields[1]);
+						fail(fields[1], fields.length > 2? fields[2] : null);
+						courses = new ArrayList<Course>();
+					} else {
+						throw new IOException("Unexpected message from worker: "+line);
+					}
+				}
+			}
+			send(out, "Q");
+		} catch (IOException e) {
+			if (!isClosed()) {
+				System.err.println("Lost worker "+worker+" ("+e.getMessage()+")"
+						+ (remaining.isEmpty()? "" : "; reassigning "+remaining));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (!remaining.isEmpty()) {
+				lost(remaining, "worker "+worker+" was lost");
+			}
+			workers.remove(socket);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			disconnected();
+		}
+	}
+
+	private synchronized void disconnected() {
+		if (--connected == 0) {
+			idleSince = System.nanoTime();
+			notifyAll();
+		}
+	}
+
+	private static void send(PrintWriter out, String... fields) throws IOException {
+		out.print(TsvFormat.join(fields));
+		out.print('\n');
+		out.flush();
+		if (out.checkError()) {
+			throw new SocketException("Could not write to worker");
+		}
+	}
+
+	private synchronized void complete(String subjectCode, List<Course> courses) {
+		completed.putIfAbsent(subjectCode, courses);
+		notifyAll();
+	}
+
+	/**
+	 * A worker could not crawl a subject: try it again (on whichever worker is free),
+	 * or give up on the whole crawl if it keeps failing.
+	 */
+	private synchronized void fail(String subjectCode, String message) {
+		int tries = attempts.getOrDefault(subjectCode, 0) + 1;
+		attempts.put(subjectCode, tries);
+		System.err.println("Could not crawl "+subjectCode+" (attempt "+tries+"): "+message);
+		if (tries >= MAX_ATTEMPTS) {
+			failure = new IOException("Could not crawl "+subjectCode+": "+message);
+			notifyAll();
+		} else {
+			pending.add(new ArrayList<String>(Collections.singletonList(subjectCode)));
+		}
+	}
+
+	/**
+	 * A worker was lost with subjects of its shard unfinished: the one it was working on (the first,
+	 * since shards are crawled in order) counts as a failed attempt, and the rest go back to be handed out.
+	 */
+	private synchronized void lost(List<String> remaining, String message) {
+		if (closed || failure != null) return;
+		if (remaining.size() > 1) {
+			pending.addFirst(new ArrayList<String>(remaining.subList(1, remaining.size())));
+		}
+		fail(remaining.get(0), message);
+	}
+
+	private synchronized boolean isDone() {
+		return closed || failure != null || completed.size() >= total;
+	}
+
+	private synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Run a coordinator, and save the crawled catalog as a snapshot (see CatalogSnapshot).
+	 * @param args Port, then optionally the course root URL to crawl and the shard size.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = Integer.parseInt(args[0]);
+		CalendarSource source = (args.length > 1)? new CalendarSource("calendar", args[1], null) : CalendarSource.OKANAGAN;
+		int shardSize = (args.length > 2)? Integer.parseInt(args[2]) : DEFAULT_SHARD_SIZE;
+
+		Crawler crawler = new Crawler(source, new FetchScheduler(1, Crawler.DEFAULT_MAX_PER_HOST));
+		try (ShardCoordinator coordinator = new ShardCoordinator(crawler, port, shardSize)) {
+			System.out.println("Waiting for workers on port "+coordinator.getPort()+"...");
+			long start = System.nanoTime();
+			ArrayList<Tuple> courseList = coordinator.run();
+			System.out.println("Crawled "+courseList.size()+" courses in "+(System.nanoTime() - start)/1000000+" ms.");
+			CatalogSnapshot.write(new File("catalog.snap"), courseList);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * EZ-Plan
+ * Worker of a crawl split across several processes: connects to a ShardCoordinator,
+ * crawls the subjects it is handed, and streams each subject's courses back as soon as it is done.
+ * (See ShardCoordinator for the protocol.)
+ */
+public class ShardWorker {
+
+	private String host;
+	private int port;
+	private PageCache pageCache;
+
+	/**
+	 * @param host Coordinator's host.
+	 * @param port Coordinator's port.
+	 */
+	public ShardWorker(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Use the given on-disk cache for page fetches (see Crawler.setPageCache).
+	 * @param pageCache
+	 */
+	public void setPageCache(PageCache pageCache) {
+		this.pageCache = pageCache;
+	}
+
+	/**
+	 * Crawl shards until the coordinator has no more.
+	 * @return The number of subjects crawled.
+	 */
+	public int run() throws IOException {
+		int count = 0;
+		try (Socket socket = new Socket(host, port)) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			Crawler crawler = null;
+
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = TsvFormat.split(line);
+				if (fields[0].equals("H")) {
+					crawler = new Crawler(new CalendarSource(fields[1], fields[2], null),
+							new FetchScheduler(1, Crawler.DEFAULT_MAX_PER_HOST));
+					crawler.setPageCache(pageCache);
+				} else if (fields[0].equals("W") && crawler != null) {
+					for (int i = 1; i < fields.length; i++) {
+						out.write(crawlSubject(crawler, fields[i]));
+						out.flush();
+						count++;
+					}
+				} else if (fields[0].equals("Q")) {
+					break;
+				} else {
+					throw new IOException("Unexpected message from coordinator: "+line);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Crawl one subject.
+	 * @return The messages reporting it: its courses and a commit line, or a failure line.
+	 */
+	private static String crawlSubject(Crawler crawler, String subjectCode) {
+		StringBuilder record = new StringBuilder();
+		try {
+			List<Course> courses = crawler.parseCoursesFrom(subjectCode);
+			for (Course c : courses) {
+				record.append("C\t").append(TsvFormat.join(c.getValues())).append('\n');
+			}
+			record.append(TsvFormat.join(new String[] {"S", subjectCode})).append('\n');
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			record.setLength(0);
+			record.append(TsvFormat.join(new String[] {"F", subjectCode, String.valueOf(e)})).append('\n');
+		}
+		return record.toString();
+	}
+
+	/**
+	 * Run a worker.
+	 * @param args Coordinator host and port, then optionally a page cache directory.
+	 */
+	public static void main(String[] args) throws IOException {
+		ShardWorker worker = new ShardWorker(args[0], Integer.parseInt(args[1]));
+		if (args.length > 2) {
+			worker.setPageCache(new PageCache(new File(args[2])));
+		}
+		int count = worker.run();
+		System.out.println("Worker done. (subjects="+count+")");
+	}
+}
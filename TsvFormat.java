@@ -0,0 +1,96 @@
+/**
+ * EZ-Plan
+ * Tab-separated text encoding for tuple values, in the escaping MySQL uses for
+ * LOAD DATA / SELECT ... INTO OUTFILE: null is \N, and backslash, tab, newline,
+ * carriage return and NUL characters are backslash-escaped, so any value
+ * (including multi-line descriptions) fits on one line.
+ */
+public class TsvFormat {
+
+	/**
+	 * @param value A value (may be null).
+	 * @return The escaped field.
+	 */
+	public static String escape(String value) {
+		if (value == null) return "\\N";
+		StringBuilder out = null;
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			String replacement;
+			switch (ch) {
+			case '\\': replacement = "\\\\"; break;
+			case '\t': replacement = "\\t"; break;
+			case '\n': replacement = "\\n"; break;
+			case '\r': replacement = "\\r"; break;
+			case '\0': replacement = "\\0"; break;
+			default: replacement = null;
+			}
+			if (replacement != null && out == null) {
+				out = new StringBuilder(value.length()+8).append(value, 0, i);
+			}
+			if (out != null) {
+				if (replacement != null) out.append(replacement); else out.append(ch);
+			}
+		}
+		return (out == null)? value : out.toString();
+	}
+
+	/**
+	 * @param field An escaped field.
+	 * @return The original value (null for \N).
+	 */
+	public static String unescape(String field) {
+		if (field.equals("\\N")) return null;
+		if (field.indexOf('\\') < 0) return field;
+		StringBuilder out = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char ch = field.charAt(i);
+			if (ch == '\\' && i+1 < field.length()) {
+				char next = field.charAt(++i);
+				switch (next) {
+				case 't': out.append('\t'); break;
+				case 'n': out.append('\n'); break;
+				case 'r': out.append('\r'); break;
+				case '0': out.append('\0'); break;
+				default: out.append(next);
+				}
+			} else {
+				out.append(ch);
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @param values Tuple values (eg. from Tuple.getValues()).
+	 * @return One line of escaped, tab-separated fields (without a line terminator).
+	 */
+	public static String join(String[] values) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) line.append('\t');
+			line.append(escape(values[i]));
+		}
+		return line.toString();
+	}
+
+	/**
+	 * @param line One line written by join().
+	 * @return The values.
+	 */
+	public static String[] split(String line) {
+		int count = 1;
+		for (int i = 0; i < line.length(); i++) {
+			if (line.charAt(i) == '\t') count++;
+		}
+		String[] values = new String[count];
+		int start = 0;
+		for (int v = 0; v < count; v++) {
+			int end = line.indexOf('\t', start);
+			if (end < 0) end = line.length();
+			values[v] = unescape(line.substring(start, end));
+			start = end+1;
+		}
+		return values;
+	}
+}
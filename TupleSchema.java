@@ -0,0 +1,281 @@
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * EZ-Plan
+ * Everything about a kind of tuple that is the same for every tuple of that kind, worked out once
+ * per Tuple class: its columns and their SQL types, its key, DDL and table title, and its INSERT and
+ * upsert statements (per table name). Each column reads its value straight from the tuple, so writing
+ * a row binds each value with the setter for its type (setBigDecimal, setInt, ...) rather than building
+ * a String[] of every value first and having the server convert them back.
+ *
+ * Tuple classes declare their schema as a constant, which registers it; of() finds the schema for
+ * any tuple (for tuple classes without one, a schema of string columns is made from the tuple itself).
+ * @param <T> The tuple class.
+ */
+public class TupleSchema<T extends Tuple> {
+
+	/**
+	 * One column: its name, SQL type (from java.sql.Types) and how to read its value from a tuple.
+	 * @param <T> The tuple class.
+	 */
+	public static class Column<T> {
+		private final String name;
+		private final int sqlType;
+		private final Function<? super T, ?> accessor;
+
+		/**
+		 * @param name Column name.
+		 * @param sqlType Type of the column (eg. Types.DECIMAL), which decides the setter used to bind it.
+		 * @param accessor Reads the column's value from a tuple (eg. Course::getCredits); may return null.
+		 */
+		public Column(String name, int sqlType, Function<? super T, ?> accessor) {
+			this.name = name;
+			this.sqlType = sqlType;
+			this.accessor = accessor;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getSqlType() {
+			return sqlType;
+		}
+
+		/**
+		 * Bind this column's value from the given tuple to a statement parameter.
+		 */
+		void bind(PreparedStatement pstat, int index, T t) throws SQLException {
+			Object value = accessor.apply(t);
+			if (value instanceof BigDecimal && (sqlType == Types.DECIMAL || sqlType == Types.NUMERIC)) {
+				pstat.setBigDecimal(index, (BigDecimal) value);
+			} else if (value instanceof Number && isInteger(sqlType)) {
+				pstat.setInt(index, ((Number) value).intValue());
+			} else {
+				bindText(pstat, index, sqlType, (value == null)? null : value.toString());
+			}
+		}
+
+		/**
+		 * @return This column's value from the given tuple, as text (as in Tuple.getValues()).
+		 */
+		String valueOf(T t) {
+			Object value = accessor.apply(t);
+			return (value == null)? null : value.toString();
+		}
+	}
+
+	private static final Map<Class<?>, TupleSchema<?>> REGISTRY = new ConcurrentHashMap<Class<?>, TupleSchema<?>>();
+
+	private final Class<T> type;
+	private final String tableTitle, ddl;
+	private final List<Column<T>> columnList;
+	private final String[] columns, keyHeadings;
+	private final int[] sqlTypes;
+
+	// Statements already built, by table name (tagged tuples of the same class go to several tables)
+	private final Map<String, String> insertSQL = new ConcurrentHashMap<String, String>(),
+			upsertSQL = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Sets up (and registers) the schema of a tuple class.
+	 * @param type The tuple class (its subclasses share this schema, unless they register their own).
+	 * @param tableTitle Name of the table (see Tuple.getTableTitle).
+	 * @param ddl Full DDL to create the table (see Tuple.getTableDDL).
+	 * @param keyHeadings Name(s) of the primary key column(s).
+	 * @param columns Every column, in table order.
+	 */
+	public TupleSchema(Class<T> type, String tableTitle, String ddl, String[] keyHeadings, List<Column<T>> columns) {
+		this.type = type;
+		this.tableTitle = tableTitle;
+		this.ddl = ddl;
+		this.keyHeadings = keyHeadings;
+		this.columnList = columns;
+		this.columns = new String[columns.size()];
+		sqlTypes = new int[columns.size()];
+		for (int i = 0; i < columns.size(); i++) {
+			this.columns[i] = columns.get(i).getName();
+			sqlTypes[i] = columns.get(i).getSqlType();
+		}
+		REGISTRY.put(type, this);
+	}
+
+	/**
+	 * Schema of a tuple class that has not declared one: every column bound as text, from getValues().
+	 */
+	private TupleSchema(Tuple t) {
+		type = null;
+		tableTitle = t.getTableTitle();
+		ddl = t.getTableDDL();
+		keyHeadings = t.getKeyHeadings();
+		columns = t.getColumns();
+		columnList = null;
+		sqlTypes = new int[columns.length];
+		Arrays.fill(sqlTypes, Types.VARCHAR);
+	}
+
+	/**
+	 * Find the schema of the given tuple's class (the tuple itself, for one tagged with its source).
+	 * @param t
+	 * @return The schema (made up from the tuple, and kept for its class, if the class doesn't declare one).
+	 */
+	public static TupleSchema<?> of(Tuple t) {
+		Tuple tuple = unwrap(t);
+		Class<?> c = tuple.getClass();
+		TupleSchema<?> schema = REGISTRY.get(c);
+		if (schema == null) {
+			for (Class<?> s = c.getSuperclass(); s != null && schema == null; s = s.getSuperclass()) {
+				schema = REGISTRY.get(s);
+			}
+			if (schema == null) {
+				schema = new TupleSchema<Tuple>(tuple);
+			}
+			REGISTRY.putIfAbsent(c, schema);
+		}
+		return schema;
+	}
+
+	private static Tuple unwrap(Tuple t) {
+		while (t instanceof CalendarSource.Tagged) {
+			t = ((CalendarSource.Tagged) t).getTuple();
+		}
+		return t;
+	}
+
+	/**
+	 * @return The column names, in table order. (The same array every time; don't modify it.)
+	 */
+	public String[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return The key column name(s). (The same array every time; don't modify it.)
+	 */
+	public String[] getKeyHeadings() {
+		return keyHeadings;
+	}
+
+	/**
+	 * @return Each column's type, from java.sql.Types. (The same array every time; don't modify it.)
+	 */
+	public int[] getSqlTypes() {
+		return sqlTypes;
+	}
+
+	public String getTableDDL() {
+		return ddl;
+	}
+
+	public String getTableTitle() {
+		return tableTitle;
+	}
+
+	/**
+	 * @return The tuple's values as text, in column order (for Tuple.getValues()).
+	 */
+	public String[] valuesOf(T t) {
+		String[] values = new String[columnList.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = columnList.get(i).valueOf(t);
+		}
+		return values;
+	}
+
+	/**
+	 * Bind every column of a tuple to a statement from insertSQL or upsertSQL, each with the setter for its type.
+	 * @param pstat
+	 * @param t A tuple of this schema's class (or one tagged with its source).
+	 */
+	public void bind(PreparedStatement pstat, Tuple t) throws SQLException {
+		Tuple tuple = unwrap(t);
+		if (columnList == null) {
+			String[] values = tuple.getValues();
+			for (int i = 0; i < values.length; i++) {
+				pstat.setString(i+1, values[i]);
+			}
+			return;
+		}
+		T row = type.cast(tuple);
+		for (int i = 0; i < columnList.size(); i++) {
+			// (note, prepared statements 1-indexed, lists 0-indexed)
+			columnList.get(i).bind(pstat, i+1, row);
+		}
+	}
+
+	/**
+	 * Bind a value given as text (as in Tuple.getValues()) to a statement parameter, with the setter for
+	 * the given type. (Text that doesn't read as a number of a numeric type is bound as it is, for the
+	 * database to make of what it will.)
+	 * @param sqlType Type of the column, from java.sql.Types (see getSqlTypes).
+	 * @param value The value, or null.
+	 */
+	public static void bindText(PreparedStatement pstat, int index, int sqlType, String value) throws SQLException {
+		if (value == null) {
+			pstat.setNull(index, sqlType);
+			return;
+		}
+		try {
+			if (sqlType == Types.DECIMAL || sqlType == Types.NUMERIC) {
+				pstat.setBigDecimal(index, new BigDecimal(value.trim()));
+				return;
+			} else if (isInteger(sqlType)) {
+				pstat.setInt(index, Integer.parseInt(value.trim()));
+				return;
+			}
+		} catch (NumberFormatException e) {
+			// Not a number after all
+		}
+		pstat.setString(index, value);
+	}
+
+	private static boolean isInteger(int sqlType) {
+		return sqlType == Types.TINYINT || sqlType == Types.SMALLINT || sqlType == Types.INTEGER;
+	}
+
+	/**
+	 * @return An "INSERT" statement for every column into the given table.
+	 */
+	public String insertSQL(String tableName) {
+		String sql = insertSQL.get(tableName);
+		if (sql == null) {
+			String[] marks = new String[columns.length];
+			Arrays.fill(marks, "?");
+			sql = "INSERT INTO "+tableName+" ("+String.join(", ", columns)+") VALUES ("+String.join(",", marks)+")";
+			insertSQL.put(tableName, sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * @return An "INSERT ... ON DUPLICATE KEY UPDATE" statement into the given table that overwrites the non-key columns.
+	 */
+	public String upsertSQL(String tableName) {
+		String sql = upsertSQL.get(tableName);
+		if (sql == null) {
+			List<String> keyList = Arrays.asList(keyHeadings);
+			List<String> updates = new ArrayList<String>();
+			for (String column : columns) {
+				if (!keyList.contains(column)) {
+					updates.add(column+"=VALUES("+column+")");
+				}
+			}
+			if (updates.isEmpty()) {
+				// Every column is part of the key; nothing to update, but the duplicate should still be ignored
+				updates.add(keyHeadings[0]+"="+keyHeadings[0]);
+			}
+			sql = insertSQL(tableName)+" ON DUPLICATE KEY UPDATE "+String.join(", ", updates);
+			upsertSQL.put(tableName, sql);
+		}
+		return sql;
+	}
+}
@@ -0,0 +1,27 @@
+import java.io.IOException;
+
+/**
+ * EZ-Plan
+ * Somewhere crawled tuples can be written: the database (MySQLSink), an export file
+ * (JsonLinesSink, GzipTsvSink), or several of them at once (FanOutSink).
+ * Sinks may buffer what they are given; nothing is guaranteed written until flush() or close().
+ */
+public interface TupleSink extends AutoCloseable {
+
+	/**
+	 * Write (or buffer) one tuple.
+	 * @param t
+	 */
+	public void write(Tuple t) throws IOException;
+
+	/**
+	 * Write out anything buffered so far.
+	 */
+	public void flush() throws IOException;
+
+	/**
+	 * Flush, and release whatever the sink holds (files, threads, connections).
+	 */
+	@Override
+	public void close() throws IOException;
+}
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EZ-Plan
+ * Hands tuples to another sink on a writer thread of its own, through a bounded queue:
+ * write() returns as soon as the tuple is queued, so a slow sink (eg. the database) only holds up
+ * the crawl once it has fallen a whole queue behind. Memory stays at (queue capacity) tuples
+ * plus whatever the other sink buffers.
+ *
+ * If the other sink fails (with any exception or error), the failure is reported and writing carries on
+ * with the following tuples, so the crawl is never left blocked on a full queue; flush() and close() then
+ * throw the first failure, with a count of any since. Only the first is logged in full, so a sink that fails
+ * every tuple does not flood the log with a stack trace apiece. Should the writer thread die anyway,
+ * callers waiting on it fail instead of hanging.
+ */
+public class WriteBehindSink implements TupleSink {
+
+	/**
+	 * A request for the writer thread to flush (and, if closing, to stop), answered through its latch.
+	 */
+	private static class Marker {
+		final boolean close;
+		final CountDownLatch done = new CountDownLatch(1);
+
+		Marker(boolean close) {
+			this.close = close;
+		}
+	}
+
+	private TupleSink sink;
+	private BlockingQueue<Object> queue;
+	private Thread writer;
+	private volatile IOException failure;
+	private volatile int written, failures;
+	private volatile boolean sinkClosed;
+	private boolean closed;
+
+	/**
+	 * Start a writer thread for the given sink.
+	 * @param sink Sink to write to (closed along with this one).
+	 * @param queueCapacity How far (in tuples) the caller may run ahead of the sink.
+	 */
+	public WriteBehindSink(TupleSink sink, int queueCapacity) {
+		this.sink = sink;
+		queue = new ArrayBlockingQueue<Object>(Math.max(1, queueCapacity));
+		writer = new Thread(this::drain, "write-behind-"+sink.getClass().getSimpleName());
+		writer.start();
+	}
+
+	/**
+	 * Queue a tuple, waiting for room if the queue is full.
+	 */
+	@Override
+	public void write(Tuple t) throws IOException {
+		if (closed) {
+			throw new IOException("Sink is closed");
+		}
+		put(t);
+	}
+
+	/**
+	 * Wait until everything queued so far has been written, and the other sink flushed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed) {
+			throw new IOException("Sink is closed");
+		}
+		await(new Marker(false));
+		if (failure != null) {
+			throw failed();
+		}
+	}
+
+	/**
+	 * Write out everything queued, close the other sink, and stop the writer thread.
+	 * (If the writer thread has died, the other sink is still closed, here.)
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			await(new Marker(true));
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for writer to finish");
+		} finally {
+			if (!writer.isAlive() && !sinkClosed) {
+				closeSink();
+			}
+		}
+		if (failure != null) {
+			throw failed();
+		}
+	}
+
+	/**
+	 * Close the other sink in place of a writer thread that died before it could.
+	 * (Any failure is only reported; the writer's is the one thrown.)
+	 */
+	private void closeSink() {
+		sinkClosed = true;
+		try {
+			sink.close();
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Could not close "+sink.getClass().getSimpleName()+":");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return The number of tuples the other sink has accepted so far (ie. without failing).
+	 */
+	public int getWritten() {
+		return written;
+	}
+
+	/**
+	 * @return The number of times the other sink has failed so far (on writes, flushes or closing).
+	 */
+	public int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * The first failure, or (if there were more) a failure counting them, caused by the first.
+	 */
+	private IOException failed() {
+		int count = failures;
+		if (count <= 1) {
+			return failure;
+		}
+		return new IOException(count+" failures writing to "+sink.getClass().getSimpleName()
+				+"; the first: "+failure.getMessage(), failure);
+	}
+
+	// How often callers waiting on the writer check that it is still alive
+	private static final long CHECK_MILLIS = 100;
+
+	private void put(Object item) throws IOException {
+		try {
+			while (!queue.offer(item, CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+				checkWriter();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for room in write-behind queue");
+		}
+	}
+
+	private void await(Marker marker) throws IOException {
+		put(marker);
+		try {
+			while (!marker.done.await(CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+				checkWriter();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for writer to flush");
+		}
+	}
+
+	private void checkWriter() throws IOException {
+		if (!writer.isAlive()) {
+			throw new IOException("Writer thread for "+sink.getClass().getSimpleName()+" has stopped", failure);
+		}
+	}
+
+	/**
+	 * Writer thread: pass tuples on until told to close.
+	 */
+	private void drain() {
+		while (true) {
+			Object item;
+			try {
+				item = queue.take();
+			} catch (InterruptedException e) {
+				fail(new InterruptedIOException("Writer interrupted"));
+				return;
+			}
+			if (!(item instanceof Marker)) {
+				try {
+					sink.write((Tuple) item);
+					written++;
+				} catch (Throwable e) {
+					fail(e);
+				}
+				continue;
+			}
+
+			Marker marker = (Marker) item;
+			try {
+				if (marker.close) {
+					sink.close();
+				} else {
+					sink.flush();
+				}
+			} catch (Throwable e) {
+				fail(e);
+			} finally {
+				if (marker.close) {
+					sinkClosed = true;
+				}
+				marker.done.countDown();
+			}
+			if (marker.close) {
+				return;
+			}
+		}
+	}
+
+	private void fail(Throwable e) {
+		// (only ever called on the writer thread)
+		if (failures++ == 0) {
+			System.err.println("Could not write to "+sink.getClass().getSimpleName()+" (any further failures are only counted):");
+			e.printStackTrace();
+			failure = (e instanceof IOException)? (IOException) e : new IOException(e);
+		}
+	}
+}
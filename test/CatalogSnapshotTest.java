@@ -0,0 +1,73 @@
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * A catalog written to a snapshot reads back the same: every course in crawl order (nulls and
+ * non-ASCII text included), and every course found by code, through views over the mapped file.
+ */
+public class CatalogSnapshotTest {
+
+	public static void main(String[] args) throws Exception {
+		List<Tuple> courses = recordedCourses();
+		courses.add(new Course("FREN", 101, new BigDecimal("3"), new BigDecimal("3.0"), "Français – élémentaire", null, null, null));
+		courses.add(new Course("ZOOL", 999, new BigDecimal("1.5"), null, "Last 😀", "", "ZOOL 100.", "ZOOL 101."));
+		File file = File.createTempFile("catalog", ".snap");
+		try {
+			CatalogSnapshot.write(file, courses);
+			CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+			Check.equal(courses.size(), snapshot.size(), "courses in the snapshot");
+			boolean same = true, found = true;
+			for (int i = 0; i < courses.size(); i++) {
+				Course c = (Course) courses.get(i);
+				same &= describe(c).equals(describe(snapshot.get(i)));
+				Course byCode = snapshot.find(c.getSubject(), c.getNumber());
+				// (a code repeated in the catalog may find either copy)
+				found &= byCode != null && byCode.getCourseCode().equals(c.getCourseCode());
+			}
+			Check.isTrue(same, "every course reads back as written, in crawl order");
+			Check.isTrue(found, "every course is found by its code");
+			Check.equal(describe((Course) courses.get(courses.size()-2)), describe(snapshot.find("FREN", 101)), "non-ASCII text and a null field");
+			Check.equal(null, snapshot.find("COSC", 1), "a missing number");
+			Check.equal(null, snapshot.find("AAAA", 100), "a subject before every other");
+			Check.equal(null, snapshot.find("ZZZZ", 100), "a subject after every other");
+			Check.equal(null, snapshot.find("COS", 111), "a prefix of a subject");
+			Check.equal(courses.size(), snapshot.toList().size(), "toList has every course");
+			Check.equal(TsvFormat.join(courses.get(0).getValues()), TsvFormat.join(snapshot.asList().get(0).getValues()),
+					"views give the same tuple values");
+			
+			Files.write(file.toPath(), "not a snapshot at all, but long enough".getBytes(StandardCharsets.UTF_8));
+			try {
+				CatalogSnapshot.open(file);
+				Check.isTrue(false, "a file that isn't a snapshot is refused");
+			} catch (IOException e) {
+				Check.isTrue(true, "a file that isn't a snapshot is refused");
+			}
+		} finally {
+			Files.deleteIfExists(file.toPath());
+		}
+		Check.done("CatalogSnapshotTest");
+	}
+
+	private static List<Tuple> recordedCourses() throws IOException {
+		Crawler crawler = new Crawler();
+		List<Tuple> courses = new ArrayList<Tuple>();
+		File[] pages = new File(Check.fixtures()).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+		for (File page : pages) {
+			courses.addAll(crawler.parseCourses(Jsoup.parse(page, "UTF-8", "http://localhost/"+page.getName())));
+		}
+		return courses;
+	}
+
+	private static String describe(Course c) {
+		return (c == null)? null : c.getCourseCode()+"|"+c.getCredits()+"|"+c.getMaxCredits()+"|"+c.getTitle()
+				+"|"+c.getDescription()+"|"+c.getPrereqs()+"|"+c.getCoreqs();
+	}
+}
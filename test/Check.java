@@ -0,0 +1,52 @@
+import java.util.Objects;
+
+/**
+ * EZ-Plan
+ * Minimal assertions for the tests under test/ (each test is a class with a main method; see run-tests.sh).
+ * Failures are counted and printed rather than thrown, so one run reports every check that failed.
+ */
+public class Check {
+
+	private static int checks, failures;
+
+	public static void equal(Object expected, Object actual, String what) {
+		checks++;
+		if (!Objects.equals(expected, actual)) {
+			failures++;
+			System.err.println("FAILED: "+what+"\n  expected: "+expected+"\n  actual:   "+actual);
+		}
+	}
+
+	public static void isTrue(boolean condition, String what) {
+		checks++;
+		if (!condition) {
+			failures++;
+			System.err.println("FAILED: "+what);
+		}
+	}
+
+	/**
+	 * Print the outcome and exit (non-zero if any check failed).
+	 * @param name Name of the test.
+	 */
+	public static void done(String name) {
+		System.out.println(name+": "+(checks-failures)+"/"+checks+" checks passed");
+		System.exit(failures == 0? 0 : 1);
+	}
+
+	/**
+	 * @return Directory of the recorded pages and expected outputs (-Dtest.fixtures, default test/fixtures).
+	 */
+	public static String fixtures() {
+		return System.getProperty("test.fixtures", "test/fixtures");
+	}
+
+	/**
+	 * @return JDBC URL of a scratch database to test against (-Dtest.jdbc.url or TEST_JDBC_URL),
+	 * or null if there is none, in which case database tests are skipped.
+	 */
+	public static String jdbcUrl() {
+		String url = System.getProperty("test.jdbc.url", System.getenv("TEST_JDBC_URL"));
+		return (url == null || url.isEmpty())? null : url;
+	}
+}
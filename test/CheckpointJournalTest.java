@@ -0,0 +1,124 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * EZ-Plan
+ * CheckpointJournal replays only what was committed before a crash: a half-written course line or a
+ * commit line whose newline never reached the disk is cut off, and the journal can be appended to again.
+ */
+public class CheckpointJournalTest {
+
+	private static Course course(String subject, int number) {
+		return new Course(subject, number, new BigDecimal("3"), null, subject+" "+number+"\ttitle", "Line one\nline two", null, null);
+	}
+
+	private static List<Course> courses(String subject, int count) {
+		List<Course> courses = new ArrayList<Course>();
+		for (int i = 0; i < count; i++) {
+			courses.add(course(subject, 100+i));
+		}
+		return courses;
+	}
+
+	public static void main(String[] args) throws Exception {
+		File file = File.createTempFile("checkpoint", ".journal");
+		file.deleteOnExit();
+		try {
+			tornCourseLine(file, "C\tTEST 1"); // cut partway through its values
+			tornCourseLine(file, "C"); // cut before its tab
+			commitWithoutNewline(file);
+		} finally {
+			file.delete();
+		}
+		Check.done("CheckpointJournalTest");
+	}
+
+	/**
+	 * Two committed subjects, then the start of a third that never got its commit line.
+	 */
+	private static void tornCourseLine(File file, String torn) throws IOException {
+		long committed = writeCommitted(file);
+		append(file, courseLine(course("MATH", 100))+torn);
+
+		CheckpointJournal journal = new CheckpointJournal(file);
+		Check.equal(2, journal.size(), "["+torn+"] only the committed subjects are replayed");
+		Check.isTrue(!journal.isCompleted("MATH"), "["+torn+"] the unfinished subject is not completed");
+		sameCourses(courses("COSC", 3), journal.getCourses("COSC"), "["+torn+"] replayed courses");
+		Check.equal(committed, file.length(), "["+torn+"] the torn tail is cut off");
+		appendAndReplay(file, journal, "["+torn+"]");
+	}
+
+	/**
+	 * The last commit line made it to the disk, but not its newline: that subject doesn't count.
+	 */
+	private static void commitWithoutNewline(File file) throws IOException {
+		file.delete();
+		long first;
+		try (CheckpointJournal journal = new CheckpointJournal(file)) {
+			journal.commit("COSC", courses("COSC", 3));
+			first = file.length();
+			journal.commit("PHYS", courses("PHYS", 2));
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 1);
+		}
+
+		CheckpointJournal journal = new CheckpointJournal(file);
+		Check.equal(1, journal.size(), "a commit line without its newline is not replayed");
+		Check.isTrue(journal.isCompleted("COSC"), "the subject committed before it is");
+		Check.isTrue(!journal.isCompleted("PHYS"), "the subject whose commit was cut off is not");
+		Check.equal(first, file.length(), "the journal is cut back to the last whole commit");
+		appendAndReplay(file, journal, "[no newline]");
+	}
+
+	/**
+	 * Commit another subject after a cut-off journal was opened, and check it all replays.
+	 */
+	private static void appendAndReplay(File file, CheckpointJournal journal, String what) throws IOException {
+		journal.commit("MATH", courses("MATH", 2));
+		journal.close();
+		try (CheckpointJournal reopened = new CheckpointJournal(file)) {
+			Check.isTrue(reopened.isCompleted("COSC"), what+" earlier subjects replay after appending");
+			sameCourses(courses("MATH", 2), reopened.getCourses("MATH"), what+" the subject appended after the cut replays");
+		}
+	}
+
+	/**
+	 * Start a fresh journal with two committed subjects.
+	 * @return Its length.
+	 */
+	private static long writeCommitted(File file) throws IOException {
+		file.delete();
+		try (CheckpointJournal journal = new CheckpointJournal(file)) {
+			journal.commit("COSC", courses("COSC", 3));
+			journal.commit("PHYS", courses("PHYS", 2));
+		}
+		return file.length();
+	}
+
+	private static String courseLine(Course c) {
+		return "C\t"+TsvFormat.join(c.getValues())+"\n";
+	}
+
+	private static void append(File file, String text) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static void sameCourses(List<Course> expected, List<Course> actual, String what) {
+		Check.isTrue(actual != null, what+": recorded");
+		if (actual == null) return;
+		Check.equal(expected.size(), actual.size(), what+": count");
+		for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+			Check.equal(Arrays.asList(expected.get(i).getValues()), Arrays.asList(actual.get(i).getValues()), what+": course "+i);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * A CompactCatalog's views give back every course's values exactly as crawled (credits keep the scale
+ * they were written with), and looking courses up by subject ID, packed code or credits finds the same
+ * rows as scanning the original courses. An index over the views answers like one over the originals.
+ */
+public class CompactCatalogTest {
+
+	public static void main(String[] args) throws Exception {
+		List<Course> courses = courses();
+		List<Tuple> tuples = new ArrayList<Tuple>(courses);
+		tuples.add(new DegreeType(DegreeType.DegreeLevel.B, "Science", "Computer Science", 120));
+		CompactCatalog catalog = new CompactCatalog(tuples);
+		Check.equal(courses.size(), catalog.size(), "every course is stored (and nothing else)");
+
+		int mismatches = 0;
+		for (int row = 0; row < courses.size(); row++) {
+			Course original = courses.get(row), view = catalog.get(row);
+			int packed = (catalog.subjectId(original.getSubject()) << 16) | original.getNumber();
+			if (!Arrays.equals(original.getValues(), view.getValues())
+					|| packed != catalog.getPackedCode(row)
+					|| original.getCredits().movePointRight(1).intValueExact() != catalog.getCreditTenths(row)
+					|| !Arrays.equals(original.getValues(), catalog.asList().get(row).getValues())) {
+				mismatches++;
+				Check.equal(Arrays.asList(original.getValues()), Arrays.asList(view.getValues()), "row "+row);
+			}
+		}
+		Check.equal(0, mismatches, "every row reads back as crawled");
+		Check.equal(courses.size(), catalog.asList().size(), "asList() has every course");
+
+		// Rows by packed code and by subject, against a scan of the originals
+		for (String code : new String[] {"COSC 111", "COSC 499", "MATH 100", "ANTH 350", "ZZZZ 100"}) {
+			String subject = code.substring(0, 4);
+			int number = Integer.parseInt(code.substring(5)), id = catalog.subjectId(subject);
+			List<Integer> found = new ArrayList<Integer>(), scanned = new ArrayList<Integer>();
+			for (int row = 0; row < catalog.size(); row++) {
+				if (id >= 0 && catalog.getPackedCode(row) == ((id << 16) | number)) found.add(row);
+				if (courses.get(row).getCourseCode().equals(code)) scanned.add(row);
+			}
+			Check.equal(scanned, found, code+" by packed code");
+		}
+		Check.equal(-1, catalog.subjectId("ZZZZ"), "an unknown subject has no ID");
+
+		// Identical text is stored once
+		int first = -1, second = -1;
+		for (int row = 0; row < courses.size() && second < 0; row++) {
+			if ("Shared description".equals(courses.get(row).getDescription())) {
+				if (first < 0) first = row; else second = row;
+			}
+		}
+		Check.isTrue(second >= 0 && catalog.get(first).getDescription() == catalog.get(second).getDescription(), "identical descriptions share one string");
+
+		// An index over the views answers like one over the originals
+		CourseIndex overViews = new CourseIndex(catalog.asList()), overOriginals = new CourseIndex(courses);
+		int[][] levels = {{1, 1}, {3, 4}, {CourseIndex.ANY_MIN, CourseIndex.ANY_MAX}};
+		for (String subject : new String[] {"COSC", "MATH", "ANTH"}) {
+			for (int[] level : levels) {
+				List<String> viaViews = new ArrayList<String>(), viaOriginals = new ArrayList<String>();
+				overViews.forEach(new int[] {overViews.subjectId(subject)}, level[0], level[1], 15, 30, row -> viaViews.add(overViews.get(row).getCourseCode()));
+				overOriginals.forEach(new int[] {overOriginals.subjectId(subject)}, level[0], level[1], 15, 30, row -> viaOriginals.add(overOriginals.get(row).getCourseCode()));
+				Check.equal(viaOriginals, viaViews, subject+" levels "+level[0]+"-"+level[1]+" through views");
+			}
+		}
+
+		rejects(new Course("COSC", 100, null, null, "t", "d", null, null), "a course without credits");
+		rejects(new Course("COSC", 100000, BigDecimal.ONE, BigDecimal.ONE, "t", "d", null, null), "a number over 16 bits");
+		rejects(new Course("COSC", 100, new BigDecimal("1.25"), new BigDecimal("1.25"), "t", "d", null, null), "credits finer than tenths");
+		try {
+			catalog.get(catalog.size());
+			Check.isTrue(false, "a row past the end is refused");
+		} catch (IndexOutOfBoundsException e) {
+			Check.isTrue(true, "a row past the end is refused");
+		}
+		Check.done("CompactCatalogTest");
+	}
+
+	private static void rejects(Course course, String what) {
+		try {
+			new CompactCatalog(Collections.singletonList(course));
+			Check.isTrue(false, what+" is refused");
+		} catch (IllegalArgumentException e) {
+			Check.isTrue(true, what+" is refused");
+		}
+	}
+
+	/**
+	 * The courses on the subject page fixtures, and a seeded spread over a few subjects with credits
+	 * written at different scales and some descriptions in common.
+	 */
+	private static List<Course> courses() throws Exception {
+		List<Course> courses = new ArrayList<Course>();
+		File[] pages = new File(Check.fixtures()).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+		Arrays.sort(pages);
+		for (File page : pages) {
+			String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+			for (Course c : new Crawler().parseCourses(Jsoup.parse(html, "http://localhost/"+page.getName()))) {
+				if (c.getSubject() != null && c.getCredits() != null && c.getMaxCredits() != null) courses.add(c);
+			}
+		}
+		Random random = new Random(7);
+		String[] subjects = {"COSC", "MATH", "ANTH"}, credits = {"3", "3.0", "1.5", "6", "0", "12.0"};
+		for (int i = 0; i < 300; i++) {
+			String subject = subjects[random.nextInt(subjects.length)];
+			int number = 100 + random.nextInt(400);
+			BigDecimal credit = new BigDecimal(credits[random.nextInt(credits.length)]);
+			BigDecimal max = (i % 7 == 0)? credit.add(new BigDecimal("3")) : credit;
+			courses.add(new Course(subject, number, credit, max, "Title "+(i % 40),
+					(i % 3 == 0)? "Shared description" : "Course "+i, (i % 5 == 0)? "COSC 111" : null, null));
+		}
+		return courses;
+	}
+}
@@ -0,0 +1,230 @@
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * EZ-Plan
+ * ConnectionPool against a stand-in driver whose connections can be made slow or stale, and against
+ * a real driver: an in-memory H2 database in MySQL mode (lib/h2-*.jar), or the scratch database
+ * given by -Dtest.jdbc.url as well.
+ */
+public class ConnectionPoolTest {
+
+	/**
+	 * Driver for "jdbc:fakepool:" URLs. Each connection's isValid() sleeps for validMillis and
+	 * answers valid; statements do nothing.
+	 */
+	static class FakeDriver implements Driver {
+		static final AtomicInteger opened = new AtomicInteger(), closed = new AtomicInteger();
+		static volatile long validMillis;
+		static volatile boolean valid = true;
+
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			if (!acceptsURL(url)) return null;
+			opened.incrementAndGet();
+			boolean[] autoCommit = {true};
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+					(proxy, method, args) -> {
+						switch (method.getName()) {
+						case "isValid":
+							Thread.sleep(validMillis);
+							return valid;
+						case "getAutoCommit":
+							return autoCommit[0];
+						case "setAutoCommit":
+							autoCommit[0] = (Boolean) args[0];
+							return null;
+						case "close":
+							closed.incrementAndGet();
+							return null;
+						case "prepareStatement":
+							return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class},
+									(p, m, a) -> m.getReturnType() == boolean.class? Boolean.FALSE : null);
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+						}
+					});
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith("jdbc:fakepool:");
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() {
+			return Logger.getGlobal();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		DriverManager.registerDriver(new FakeDriver());
+		slowValidationDoesNotBlockOthers();
+		staleConnectionsReplaced();
+		statementsCached();
+		realDatabase("jdbc:h2:mem:pooltest;MODE=MySQL;DB_CLOSE_DELAY=-1", "H2");
+		String url = Check.jdbcUrl();
+		if (url == null) {
+			System.out.println("ConnectionPoolTest: no test.jdbc.url; checked against H2 only");
+		} else {
+			realDatabase(url, "test.jdbc.url");
+		}
+		Check.done("ConnectionPoolTest");
+	}
+
+	private static void slowValidationDoesNotBlockOthers() throws Exception {
+		try (ConnectionPool pool = new ConnectionPool("jdbc:fakepool:", "", "", 2)) {
+			pool.release(pool.borrow());
+			FakeDriver.validMillis = 1500;
+			// This borrower gets the idle connection, and spends a while checking it
+			Thread slow = new Thread(() -> {
+				try {
+					pool.release(pool.borrow());
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			});
+			slow.start();
+			Thread.sleep(200);
+			long start = System.nanoTime();
+			Connection con = pool.borrow();
+			long millis = (System.nanoTime()-start)/1_000_000;
+			FakeDriver.validMillis = 0;
+			Check.isTrue(millis < 1000, "another borrower opens a connection meanwhile (took "+millis+" ms)");
+			pool.release(con);
+			slow.join();
+		}
+	}
+
+	private static void staleConnectionsReplaced() throws Exception {
+		int before = FakeDriver.opened.get(), closedBefore = FakeDriver.closed.get();
+		try (ConnectionPool pool = new ConnectionPool("jdbc:fakepool:", "", "", 1)) {
+			Connection first = pool.borrow();
+			pool.release(first);
+			FakeDriver.valid = false;
+			Connection second = pool.borrow();
+			FakeDriver.valid = true;
+			Check.isTrue(first != second, "a stale idle connection is replaced");
+			Check.equal(2, FakeDriver.opened.get()-before, "connections opened");
+			Check.equal(1, FakeDriver.closed.get()-closedBefore, "the stale one is closed");
+			pool.release(second);
+		}
+		Check.equal(2, FakeDriver.closed.get()-closedBefore, "closing the pool closes idle connections");
+	}
+
+	private static void statementsCached() throws Exception {
+		try (ConnectionPool pool = new ConnectionPool("jdbc:fakepool:", "", "", 1)) {
+			Connection con = pool.borrow();
+			PreparedStatement a = pool.prepare(con, "SELECT 1");
+			pool.release(con);
+			con = pool.borrow();
+			Check.isTrue(a == pool.prepare(con, "SELECT 1"), "a statement is reused on the same connection");
+			// Full pool: the next borrower waits for this release
+			Connection held = con;
+			Thread releaser = new Thread(() -> {
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					return;
+				}
+				pool.release(held);
+			});
+			releaser.start();
+			Check.isTrue(pool.borrow() == held, "a full pool hands over the next released connection");
+			releaser.join();
+		}
+	}
+
+	/**
+	 * Borrow, validation and release through a real driver.
+	 */
+	private static void realDatabase(String url, String which) throws Exception {
+		String table = "pool_test";
+		try (ConnectionPool pool = new ConnectionPool(url, null, null, 2)) {
+			Connection con = pool.borrow();
+			PreparedStatement pstat = pool.prepare(con, "SELECT 1");
+			try (ResultSet rs = pstat.executeQuery()) {
+				Check.isTrue(rs.next() && rs.getInt(1) == 1, which+": SELECT 1 on a pooled connection");
+			}
+			try (Statement stat = con.createStatement()) {
+				stat.executeUpdate("DROP TABLE IF EXISTS "+table);
+				stat.executeUpdate("CREATE TABLE "+table+" (id INT PRIMARY KEY)");
+			}
+			
+			// Released mid-transaction: rolled back, and back in autocommit mode
+			con.setAutoCommit(false);
+			try (Statement stat = con.createStatement()) {
+				stat.executeUpdate("INSERT INTO "+table+" VALUES (1)");
+			}
+			pool.release(con);
+			Connection again = pool.borrow();
+			Check.isTrue(again == con, which+": the released connection is reused");
+			Check.isTrue(again.getAutoCommit(), which+": and is back in autocommit mode");
+			Check.equal(0, count(again, table), which+": its unfinished transaction was rolled back");
+			Check.isTrue(pool.prepare(again, "SELECT 1") == pstat, which+": with its statement cache");
+			
+			// A connection that has died while idle is replaced on the next borrow
+			pool.release(again);
+			again.close(); // (as if the server had dropped it)
+			Connection fresh = pool.borrow();
+			Check.isTrue(fresh != again && fresh.isValid(2), which+": a closed idle connection is replaced by a working one");
+			Check.equal(0, count(fresh, table), which+": which can be used straight away");
+			
+			// Both connections at once, from two threads
+			Connection other = pool.borrow();
+			Check.isTrue(other != fresh, which+": a second connection while the first is out");
+			Thread releaser = new Thread(() -> pool.release(other));
+			releaser.start();
+			Connection third = pool.borrow(); // (waits for the release, the pool being full)
+			releaser.join();
+			Check.isTrue(third == other, which+": a full pool hands over the next released connection");
+			try (Statement stat = third.createStatement()) {
+				stat.executeUpdate("DROP TABLE IF EXISTS "+table);
+			}
+			pool.release(third);
+			pool.release(fresh);
+		}
+	}
+
+	private static int count(Connection con, String table) throws SQLException {
+		try (Statement stat = con.createStatement();
+				ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM "+table)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
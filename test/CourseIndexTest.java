@@ -0,0 +1,142 @@
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * CourseIndex finds the same courses as a linear scan of the catalog, for every mix of subject,
+ * year-level and credit constraints (including open bounds and levels outside 1-9), and reports
+ * them in subject, then number, order when subjects are given.
+ */
+public class CourseIndexTest {
+
+	private static final String[] SUBJECTS = {"COSC", "MATH", "ANTH", "ECON", "PHIL", "CHEM"};
+	private static final int ANY_MIN = CourseIndex.ANY_MIN, ANY_MAX = CourseIndex.ANY_MAX;
+
+	public static void main(String[] args) throws Exception {
+		List<Tuple> catalog = catalog();
+		CourseIndex index = new CourseIndex(catalog);
+		Check.equal(catalog.size() - 1, index.size(), "every course is indexed (and nothing else)");
+		Check.equal(-1, index.subjectId("ZZZZ"), "an unknown subject has no ID");
+		Check.equal(0, index.subjectIds(new Subject[] {new Subject("ZZZZ", "None")}).length, "unknown subjects are left out of a group");
+
+		int[][] subjectGroups = {
+				null,
+				{index.subjectId("COSC")},
+				{index.subjectId("MATH"), index.subjectId("COSC")},
+				index.subjectIds(Faculties.ARTS_SUBJECTS),
+				{}};
+		int[][] levels = {{ANY_MIN, ANY_MAX}, {3, 4}, {1, 1}, {0, 0}, {9, 9}, {5, ANY_MAX}, {ANY_MIN, 2}, {4, 3}, {10, 12}, {-3, -1}};
+		int[][] credits = {{ANY_MIN, ANY_MAX}, {30, 30}, {15, 30}, {31, ANY_MAX}, {ANY_MIN, 0}};
+		int queries = 0, mismatches = 0;
+		for (int[] subjectIds : subjectGroups) {
+			for (int[] level : levels) {
+				for (int[] credit : credits) {
+					List<Integer> found = new ArrayList<Integer>();
+					int count = index.forEach(subjectIds, level[0], level[1], credit[0], credit[1], found::add);
+					Set<Integer> expected = scan(index, subjectIds, level[0], level[1], credit[0], credit[1]);
+					String query = describe(subjectIds, level, credit);
+					queries++;
+					if (!expected.equals(new TreeSet<Integer>(found)) || found.size() != expected.size()) {
+						mismatches++;
+						Check.equal(expected, found, query);
+					}
+					if (count != found.size() || index.count(subjectIds, level[0], level[1], credit[0], credit[1]) != count) {
+						mismatches++;
+						Check.isTrue(false, query+": count() and forEach() agree with the matches ("+count+" vs "+found.size()+")");
+					}
+					if (subjectIds != null && !inSubjectOrder(index, subjectIds, found)) {
+						mismatches++;
+						Check.isTrue(false, query+": matches in subject, then number, order");
+					}
+				}
+			}
+		}
+		Check.equal(0, mismatches, "all "+queries+" queries agree with a linear scan");
+		Check.isTrue(index.count(new int[] {index.subjectId("COSC")}, 3, 4, ANY_MIN, ANY_MAX) > 0, "the queries find something");
+
+		// A course with no credits counts as 0
+		Check.equal(1, index.count(new int[] {index.subjectId("NONE")}, ANY_MIN, ANY_MAX, 0, 0), "a course without credits has 0");
+		Check.done("CourseIndexTest");
+	}
+
+	/**
+	 * The courses on the subject page fixtures, a seeded spread over a few subjects (numbers from
+	 * below 100 to above 999, in no particular order), one course without credits and one non-course tuple.
+	 */
+	static List<Tuple> catalog() throws Exception {
+		List<Tuple> catalog = new ArrayList<Tuple>();
+		File[] pages = new File(Check.fixtures()).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+		Arrays.sort(pages);
+		for (File page : pages) {
+			String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+			for (Course c : new Crawler().parseCourses(Jsoup.parse(html, "http://localhost/"+page.getName()))) {
+				if (c.getSubject() != null && c.getCredits() != null) catalog.add(c);
+			}
+		}
+		Random random = new Random(42);
+		String[] credits = {"3", "3.0", "1.5", "6", "0", "4"};
+		for (int i = 0; i < 600; i++) {
+			String subject = SUBJECTS[random.nextInt(SUBJECTS.length)];
+			int number = (i % 50 == 0)? random.nextInt(100) : (i % 50 == 1)? 1000 + random.nextInt(500) : 100 + random.nextInt(900);
+			BigDecimal credit = new BigDecimal(credits[random.nextInt(credits.length)]);
+			catalog.add(new Course(subject, number, credit, credit, subject+" "+number, "Course "+i, null, null));
+		}
+		catalog.add(new Course("NONE", 101, null, null, "No credits", "", null, null));
+		catalog.add(new DegreeType(DegreeType.DegreeLevel.B, "Science", "Computer Science", 120));
+		return catalog;
+	}
+
+	private static Set<Integer> scan(CourseIndex index, int[] subjectIds, int minLevel, int maxLevel, int minCredits, int maxCredits) {
+		Set<Integer> rows = new TreeSet<Integer>();
+		for (int row = 0; row < index.size(); row++) {
+			Course c = index.get(row);
+			int level = Math.max(0, Math.min(9, c.getNumber()/100));
+			int tenths = (c.getCredits() == null)? 0 : c.getCredits().movePointRight(1).intValue();
+			if ((subjectIds == null || contains(subjectIds, index.subjectId(c.getSubject()))) && level >= minLevel && level <= maxLevel
+					&& tenths >= minCredits && tenths <= maxCredits) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int v : values) {
+			if (v == value) return true;
+		}
+		return false;
+	}
+
+	private static boolean inSubjectOrder(CourseIndex index, int[] subjectIds, List<Integer> found) {
+		int position = 0, lastNumber = Integer.MIN_VALUE;
+		for (int row : found) {
+			int id = index.subjectId(index.get(row).getSubject());
+			while (position < subjectIds.length && subjectIds[position] != id) {
+				position++;
+				lastNumber = Integer.MIN_VALUE;
+			}
+			if (position == subjectIds.length || index.get(row).getNumber() < lastNumber) return false;
+			lastNumber = index.get(row).getNumber();
+		}
+		return true;
+	}
+
+	private static String describe(int[] subjectIds, int[] level, int[] credit) {
+		return "subjects "+Arrays.toString(subjectIds)+", levels "+bound(level[0])+"-"+bound(level[1])
+				+", credits "+bound(credit[0])+"-"+bound(credit[1]);
+	}
+
+	private static String bound(int value) {
+		return (value == ANY_MIN || value == ANY_MAX)? "any" : Integer.toString(value);
+	}
+}
@@ -0,0 +1,98 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * EZ-Plan
+ * Courses parsed from each recorded subject page (test/fixtures/subject-*.html) match the page's
+ * .expected.tsv, which was produced by the original parser (before parseCourseDetails stopped
+ * re-rendering each description with html() and splitting it on "<br>"). Descriptions made up of random
+ * inline and block children (text, entities, comments, links, paragraphs, lists, labels and breaks) are
+ * split into the same fields as the original parser splits them.
+ */
+public class CourseParseTest {
+
+	public static void main(String[] args) throws Exception {
+		Crawler crawler = new Crawler();
+		File[] pages = new File(Check.fixtures()).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+		Check.isTrue(pages != null && pages.length > 0, "fixture pages found");
+		for (File page : pages) {
+			File expectedFile = new File(page.getPath().replace(".html", ".expected.tsv"));
+			List<String> expected = Files.readAllLines(expectedFile.toPath(), StandardCharsets.UTF_8);
+			Document doc = Jsoup.parse(page, "UTF-8", "http://localhost/"+page.getName());
+			List<Course> courses = crawler.parseCourses(doc);
+			Check.equal(expected.size(), courses.size(), page.getName()+": courses");
+			for (int i = 0; i < Math.min(expected.size(), courses.size()); i++) {
+				Check.equal(expected.get(i), TsvFormat.join(courses.get(i).getValues()), page.getName()+": course "+(i+1));
+			}
+		}
+		mixedChildren(crawler);
+		Check.done("CourseParseTest");
+	}
+
+	// Pieces a description is made up of (ones with a block inside an inline, and vice versa, included)
+	private static final String[] CHILDREN = {
+		"Text", " more text ", "\n  spaced\n", "a &amp; b &lt; c &nbsp;&copy; é", "<!-- comment -->",
+		"<a href=\"x?a=1&amp;b=2\">COSC 111</a>", "<b>bold</b>", "<span class=\"s\">in <em>line</em></span>",
+		"<p>Para</p>", "<div>div <span>in</span></div>", "<ul><li>one</li><li>two</li></ul>", "<span><p>block in inline</p></span>",
+		"<i>Prerequisite:</i>", "<i>Corequisite:</i>", "<i class=\"x\">Prerequisite:</i>", "<i>Prerequisite: </i>",
+		"<br>", "<br>", "<br>\n", "<br/>",
+	};
+
+	private static void mixedChildren(Crawler crawler) {
+		Random random = new Random(7);
+		StringBuilder page = new StringBuilder("<html><body><dl>\n");
+		int count = 400;
+		for (int i = 0; i < count; i++) {
+			page.append("<dt>TEST ").append(100+i).append(" (3)  <b>T</b></dt><dd>");
+			for (int n = random.nextInt(8); n > 0; n--) {
+				page.append(CHILDREN[random.nextInt(CHILDREN.length)]);
+			}
+			page.append("</dd>\n");
+		}
+		page.append("</dl></body></html>");
+		Document doc = Jsoup.parse(page.toString(), "http://localhost/mixed");
+
+		List<Course> courses = crawler.parseCourses(doc);
+		List<Element> descs = doc.getElementsByTag("dd");
+		Check.equal(count, courses.size(), "mixed descriptions: courses");
+		int same = 0;
+		for (int i = 0; i < Math.min(count, courses.size()); i++) {
+			String[] values = courses.get(i).getValues();
+			List<String> fields = Arrays.asList(values[4], values[5], values[6]), expected = originalFields(descs.get(i));
+			if (fields.equals(expected)) {
+				same++;
+			} else {
+				Check.equal(expected, fields, "mixed description "+descs.get(i).html().replace("\n", "\\n"));
+			}
+		}
+		Check.equal(count, same, "mixed descriptions split into the original parser's fields");
+	}
+
+	/**
+	 * The original parser's description, prerequisites and corequisites of a <dd> element.
+	 */
+	private static List<String> originalFields(Element descElement) {
+		String description = null, prereqs = null, coreqs = null;
+		for (String piece : descElement.html().split("<br>")) {
+			if (piece.contains("Prerequisite")) {
+				prereqs = piece.replace("<i>Prerequisite:</i>", "").trim();
+			} else if (piece.contains("Corequisite")) {
+				coreqs = piece.replace("<i>Corequisite:</i>", "").trim();
+			} else {
+				description = piece.trim();
+				if (description.equals("")) {
+					description = null;
+				}
+			}
+		}
+		return Arrays.asList(description, prereqs, coreqs);
+	}
+}
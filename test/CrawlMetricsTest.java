@@ -0,0 +1,198 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * EZ-Plan
+ * CrawlMetrics' JSON report is well-formed JSON and its Prometheus output is valid text exposition
+ * format (every sample after its HELP/TYPE, cumulative buckets ending in +Inf = _count), both with the
+ * values recorded, whether recorded from one thread or many.
+ */
+public class CrawlMetricsTest {
+
+	private static final long MS = 1000000L;
+	private static final Pattern SAMPLE = Pattern.compile("([a-z_]+)(\\{([a-z]+=\"[^\"]*\"(,[a-z]+=\"[^\"]*\")*)\\})? (-?[0-9]+(\\.[0-9]+)?|\\+Inf)");
+
+	public static void main(String[] args) throws Exception {
+		CrawlMetrics empty = new CrawlMetrics();
+		Check.isTrue(isJson(empty.toJson()), "an empty report is valid JSON");
+		Check.isTrue(samples(empty.toPrometheus()) != null, "empty metrics are valid Prometheus text");
+
+		CrawlMetrics metrics = new CrawlMetrics();
+		metrics.recordFetch("subject", 3*MS, 1000);
+		metrics.recordFetch("subject", 27*MS, 500);
+		metrics.recordFetch("root", 12*MS, 0);
+		metrics.recordCacheHit();
+		metrics.recordParse(MS, 40);
+		metrics.recordBatch(100, 20*MS);
+		metrics.recordBatch(7, 4*MS);
+		metrics.recordPhase("crawl", 1500*MS);
+		metrics.recordPhase("crawl", 500*MS);
+		metrics.recordFailure(new IOException());
+		metrics.recordFailure(new IOException());
+		metrics.recordFailure(new IllegalStateException());
+
+		String json = metrics.toJson();
+		Check.isTrue(isJson(json), "the report is valid JSON");
+		Check.isTrue(json.contains("\"subject\": {\"count\": 2, \"sum\": 0.030000, \"mean\": 0.015000, \"buckets\": {\"0.005000\": 1, \"0.010000\": 1, \"0.025000\": 1, \"0.050000\": 2,"),
+				"fetch latency by class, with cumulative buckets");
+		Check.isTrue(json.contains("\"bytesDownloaded\": 1500,") && json.contains("\"cacheHits\": 1,") && json.contains("\"coursesParsed\": 40,"), "counters in the report");
+		Check.isTrue(json.contains("\"batchSize\": {\"count\": 2, \"sum\": 107, \"mean\": 53.500000, \"buckets\": {\"1\": 0, \"10\": 1, \"50\": 1, \"100\": 2,"),
+				"batch sizes are counted, not timed");
+		Check.isTrue(json.contains("\"phaseSeconds\": {\"crawl\": 2.000000}"), "a phase recorded twice is added up");
+		Check.isTrue(json.contains("\"failures\": {\"IOException\": 2, \"IllegalStateException\": 1}"), "failures by type");
+
+		Map<String, String> samples = samples(metrics.toPrometheus());
+		Check.isTrue(samples != null, "the metrics are valid Prometheus text");
+		if (samples != null) {
+			Check.equal("2", samples.get("crawler_fetch_seconds_bucket{class=\"subject\",le=\"0.050000\"}"), "a labelled histogram bucket");
+			Check.equal("2", samples.get("crawler_fetch_seconds_count{class=\"subject\"}"), "a labelled histogram count");
+			Check.equal("0.030000", samples.get("crawler_fetch_seconds_sum{class=\"subject\"}"), "a labelled histogram sum");
+			Check.equal("1", samples.get("crawler_parse_seconds_bucket{le=\"0.001000\"}"), "an unlabelled histogram bucket");
+			Check.equal("107", samples.get("crawler_batch_rows_sum"), "batch rows sum");
+			Check.equal("1500", samples.get("crawler_downloaded_bytes_total"), "bytes downloaded");
+			Check.equal("2.000000", samples.get("crawler_phase_seconds{phase=\"crawl\"}"), "phase seconds");
+			Check.equal("2", samples.get("crawler_failures_total{type=\"IOException\"}"), "failures by type");
+		}
+
+		// Recording from many threads at once loses nothing
+		CrawlMetrics shared = new CrawlMetrics();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					shared.recordFetch((i % 2 == 0)? "subject" : "degree", i*MS/10, 1);
+					shared.recordParse(MS, 1);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) thread.join();
+		Map<String, String> concurrent = samples(shared.toPrometheus());
+		Check.equal("4000", (concurrent == null)? null : concurrent.get("crawler_fetch_seconds_count{class=\"degree\"}"), "concurrent fetches all counted");
+		Check.equal("8000", (concurrent == null)? null : concurrent.get("crawler_courses_parsed_total"), "concurrent parses all counted");
+
+		// Written whole, with nothing left behind
+		File dir = Files.createTempDirectory("metrics").toFile();
+		File jsonFile = new File(dir, "run.json"), promFile = new File(dir, "crawler.prom");
+		metrics.writeJson(jsonFile);
+		metrics.writePrometheus(promFile);
+		Check.isTrue(isJson(new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8)), "the written report is valid JSON");
+		Check.isTrue(samples(new String(Files.readAllBytes(promFile.toPath()), StandardCharsets.UTF_8)) != null, "the written metrics are valid");
+		Check.equal(2, dir.list().length, "no temporary files are left behind");
+		jsonFile.delete();
+		promFile.delete();
+		dir.delete();
+		Check.done("CrawlMetricsTest");
+	}
+
+	/**
+	 * Check Prometheus text exposition format: every sample's metric is declared first (a histogram's
+	 * _bucket/_sum/_count by its base name), bucket counts never go down, and +Inf equals _count.
+	 * @return Each sample's value by its name and labels, or null (with the reason printed) if invalid.
+	 */
+	private static Map<String, String> samples(String text) {
+		Map<String, String> samples = new LinkedHashMap<String, String>();
+		Map<String, String> types = new LinkedHashMap<String, String>();
+		Set<String> helped = new HashSet<String>();
+		Map<String, Long> lastBucket = new LinkedHashMap<String, Long>();
+		for (String line : text.split("\n")) {
+			if (line.startsWith("# HELP ")) {
+				helped.add(line.split(" ")[2]);
+				continue;
+			} else if (line.startsWith("# TYPE ")) {
+				String[] parts = line.split(" ");
+				if (!helped.contains(parts[2]) || types.put(parts[2], parts[3]) != null) return invalid("TYPE without HELP, or declared twice", line);
+				continue;
+			}
+			Matcher m = SAMPLE.matcher(line);
+			if (!m.matches()) return invalid("not a sample", line);
+			String name = m.group(1), labels = (m.group(3) == null)? "" : m.group(3);
+			String base = name.replaceFirst("_(bucket|sum|count)$", "");
+			if (!types.containsKey(name) && !"histogram".equals(types.get(base))) return invalid("undeclared metric", line);
+			if (samples.put(name+((m.group(2) == null)? "" : m.group(2)), m.group(5)) != null) return invalid("repeated sample", line);
+			if (name.endsWith("_bucket")) {
+				String series = base+"{"+labels.replaceFirst(",?le=\"[^\"]*\"", "")+"}";
+				long value = Long.parseLong(m.group(5));
+				Long last = lastBucket.put(series, value);
+				if (last != null && value < last) return invalid("bucket counts go down", line);
+				if (labels.contains("le=\"+Inf\"")) lastBucket.put(series+"+Inf", value);
+			} else if (name.endsWith("_count") && "histogram".equals(types.get(base))) {
+				String series = base+"{"+labels+"}";
+				if (!m.group(5).equals(String.valueOf(lastBucket.get(series+"+Inf")))) return invalid("+Inf bucket differs from _count", line);
+			}
+		}
+		return samples;
+	}
+
+	private static Map<String, String> invalid(String why, String line) {
+		System.err.println("Invalid Prometheus text ("+why+"): "+line);
+		return null;
+	}
+
+	/**
+	 * @return True if the text is a single JSON value (with surrounding whitespace).
+	 */
+	private static boolean isJson(String text) {
+		int[] pos = {0};
+		return value(text, pos) && skip(text, pos) == text.length();
+	}
+
+	private static boolean value(String s, int[] pos) {
+		int i = skip(s, pos);
+		if (i >= s.length()) return false;
+		char ch = s.charAt(i);
+		if (ch == '{' || ch == '[') {
+			char close = (ch == '{')? '}' : ']';
+			pos[0] = i+1;
+			if (skip(s, pos) < s.length() && s.charAt(pos[0]) == close) {
+				pos[0]++;
+				return true;
+			}
+			while (true) {
+				if (ch == '{') {
+					if (skip(s, pos) >= s.length() || s.charAt(pos[0]) != '"' || !string(s, pos)) return false;
+					if (skip(s, pos) >= s.length() || s.charAt(pos[0]++) != ':') return false;
+				}
+				if (!value(s, pos) || skip(s, pos) >= s.length()) return false;
+				char next = s.charAt(pos[0]++);
+				if (next == close) return true;
+				if (next != ',') return false;
+			}
+		} else if (ch == '"') {
+			return string(s, pos);
+		}
+		Matcher m = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?|true|false|null").matcher(s);
+		if (!m.find(i) || m.start() != i) return false;
+		pos[0] = m.end();
+		return true;
+	}
+
+	private static boolean string(String s, int[] pos) {
+		for (int i = pos[0]+1; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch == '\\') i++;
+			else if (ch < 0x20) return false;
+			else if (ch == '"') {
+				pos[0] = i+1;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int skip(String s, int[] pos) {
+		while (pos[0] < s.length() && Character.isWhitespace(s.charAt(pos[0]))) pos[0]++;
+		return pos[0];
+	}
+}
@@ -0,0 +1,94 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * An incremental crawl reports exactly the courses added, modified and removed since the state it was
+ * given (saved and loaded between runs), and nothing for pages that are unchanged or only changed
+ * outside their courses.
+ */
+public class CrawlStateTest {
+
+	public static void main(String[] args) throws Exception {
+		File file = File.createTempFile("crawl-state", ".properties");
+		file.delete();
+		try (FixtureServer server = new FixtureServer()) {
+			Crawler crawler = new Crawler(new CalendarSource("fixture", server.coursesUrl(), null), new FetchScheduler(1, 4));
+			Set<String> all = new TreeSet<String>();
+			for (String subject : server.subjects()) {
+				all.addAll(codes(subject, server.page(subject)));
+			}
+
+			// First run: everything is new
+			CrawlState state = CrawlState.load(file);
+			CourseDelta delta = crawler.incrementalCrawl(state);
+			Check.equal(all, codes(delta.getAdded()), "a first run adds every course");
+			Check.isTrue(delta.getModified().isEmpty() && delta.getRemoved().isEmpty(), "a first run modifies and removes nothing");
+			state.save(file);
+
+			// Nothing changed (and the state survives saving and loading)
+			state = CrawlState.load(file);
+			delta = crawler.incrementalCrawl(state);
+			Check.isTrue(delta.isEmpty(), "an unchanged calendar gives an empty delta ("+delta+")");
+
+			// A page that changed only outside its courses
+			String cosc = server.page("COSC");
+			server.addSubject("COSC", cosc.replace("<div id=\"content\">", "<div id=\"content\"><!-- updated -->"));
+			delta = crawler.incrementalCrawl(state);
+			Check.isTrue(delta.isEmpty(), "a page changed outside its courses gives an empty delta ("+delta+")");
+
+			// One course retitled, one dropped, one new
+			String changed = cosc
+					.replace("<b>Computer Programming II</b>", "<b>Computer Programming 2</b>")
+					.replaceFirst("(?s)<dt><a name=\"499\">.*?</dd>\n", "")
+					.replace("</dl>", "<dt><a name=\"310\"></a>COSC 310 (3)  <b>Software Engineering</b></dt>\n<dd>Teams.<br>\n</dd>\n</dl>");
+			server.addSubject("COSC", changed);
+			state.save(file);
+			state = CrawlState.load(file);
+			delta = crawler.incrementalCrawl(state);
+			Check.equal(set("COSC 310"), codes(delta.getAdded()), "the new course is added");
+			Check.equal(set("COSC 121"), codes(delta.getModified()), "the retitled course is modified");
+			Check.equal("Computer Programming 2", delta.getModified().isEmpty()? null : delta.getModified().get(0).getTitle(), "the modified course carries its new values");
+			Check.equal(set("COSC 499"), new TreeSet<String>(delta.getRemoved()), "the dropped course is removed");
+
+			// A whole subject dropped from the calendar
+			List<String> subjects = server.subjects();
+			String dropped = subjects.get(subjects.size() - 1);
+			Set<String> droppedCodes = codes(dropped, server.page(dropped));
+			server.removeSubject(dropped);
+			delta = crawler.incrementalCrawl(state);
+			Check.equal(droppedCodes, new TreeSet<String>(delta.getRemoved()), "every course of a dropped subject is removed");
+			Check.isTrue(delta.getAdded().isEmpty() && delta.getModified().isEmpty(), "dropping a subject adds and modifies nothing");
+
+			// ... and stays gone once the state is saved
+			state.save(file);
+			delta = crawler.incrementalCrawl(CrawlState.load(file));
+			Check.isTrue(delta.isEmpty(), "a dropped subject isn't removed again ("+delta+")");
+		} finally {
+			Files.deleteIfExists(file.toPath());
+		}
+		Check.done("CrawlStateTest");
+	}
+
+	private static Set<String> codes(String subject, String page) {
+		return codes(new Crawler().parseCourses(Jsoup.parse(page, "http://localhost/"+subject)));
+	}
+
+	private static Set<String> codes(List<Course> courses) {
+		Set<String> codes = new TreeSet<String>();
+		for (Course c : courses) {
+			codes.add(c.getCourseCode());
+		}
+		return codes;
+	}
+
+	private static Set<String> set(String... codes) {
+		return new TreeSet<String>(Arrays.asList(codes));
+	}
+}
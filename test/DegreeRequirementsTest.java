@@ -0,0 +1,70 @@
+import java.io.File;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * EZ-Plan
+ * Crawler.parseRequirementsFrom on a program page in the calendar's markup: the degree from the
+ * heading, the credit total, one requirement per course list or elective row (rows with the same
+ * condition in several years merged), and conditions that fit the requirements table and match
+ * the courses they describe.
+ */
+public class DegreeRequirementsTest {
+
+	public static void main(String[] args) throws Exception {
+		Document page = Jsoup.parse(new File(Check.fixtures(), "program-BA-ECON.html"), "UTF-8");
+		DegreeType degree = new Crawler().parseRequirementsFrom(page);
+		Check.isTrue(degree != null, "the program page is read as a degree");
+		if (degree == null) {
+			Check.done("DegreeRequirementsTest");
+			return;
+		}
+		Check.equal("Bachelor of Arts, Major in Economics", degree.toString(), "degree from the heading");
+		Check.equal("120", degree.getValues()[1], "credit total from the page text");
+
+		List<CourseRequirement> reqs = degree.getAll();
+		Check.equal(10, reqs.size(), "one requirement per distinct condition (totals and year headings left out)");
+		CourseRequirement econ = find(reqs, "ECON 101 and 102");
+		Check.equal("cname RLIKE 'ECON (101|102)'", (econ == null)? null : econ.getCond(), "course list condition");
+		Check.equal(2, (econ == null)? null : econ.getCount(), "both courses of an \"and\" list");
+		CourseRequirement two = find(reqs, "Two of ECON 310, 311, 320");
+		Check.equal(2, (two == null)? null : two.getCount(), "\"Two of\" sets the count");
+
+		// Rows repeated across the years are one requirement
+		CourseRequirement electives = find(reqs, "Electives");
+		Check.equal(30, (electives == null)? null : electives.getCredits(), "electives merged across all three tables");
+		CourseRequirement arts = find(reqs, "Arts electives");
+		Check.equal(21, (arts == null)? null : arts.getCredits(), "Arts electives merged (footnote marker left out)");
+
+		// A whole faculty's upper-level electives must still fit the cond column
+		CourseRequirement upperArts = find(reqs, "Upper-level Arts electives");
+		Check.isTrue(upperArts != null, "upper-level Arts electives are kept");
+		if (upperArts != null) {
+			Check.isTrue(upperArts.getCond().length() <= 255, "and their condition fits the cond column ("+upperArts.getCond().length()+")");
+			RequirementCondition cond = RequirementCondition.parse(upperArts.getCond(), "cname");
+			Check.equal(RequirementCondition.Kind.ALTERNATIVES, cond.getKind(), "grouped subjects read as alternatives");
+			Check.isTrue(cond.matches("PHIL", 331) && cond.matches("ENGL", 470), "upper-level Arts courses match");
+			Check.isTrue(!cond.matches("PHIL", 231) && !cond.matches("COSC", 310), "lower-level and Science courses don't");
+			Check.isTrue(upperArts.getQuery().startsWith("subject IN ('ANTH','ECON',") && upperArts.getQuery().endsWith(" AND level BETWEEN 3 AND 4"),
+					"indexed query for grouped subjects");
+		}
+		CourseRequirement upperEcon = find(reqs, "Upper-level Economics electives");
+		Check.equal("cname RLIKE '^ECON (3|4)'", (upperEcon == null)? null : upperEcon.getCond(), "single-subject elective condition");
+
+		// Pages that aren't degree programs
+		Check.isTrue(new Crawler().parseRequirementsFrom(Jsoup.parse("<h1>Faculty of Arts and Social Sciences</h1>")) == null,
+				"a page without a degree heading");
+		Check.isTrue(new Crawler().parseRequirementsFrom(Jsoup.parse("<h1>Master of Arts, Major in Economics</h1>")) == null,
+				"a graduate program without a credit total");
+		Check.done("DegreeRequirementsTest");
+	}
+
+	private static CourseRequirement find(List<CourseRequirement> reqs, String description) {
+		for (CourseRequirement req : reqs) {
+			if (req.getDescription().equals(description)) return req;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EZ-Plan
+ * FetchScheduler is fair per host and per source: crawlers on the same host share one request limit
+ * (never exceeded, and let through in arrival order) while other hosts go ahead regardless, and
+ * workers take each source's tasks in turn, so a source with few pages isn't stuck behind one with many.
+ */
+public class FetchSchedulerTest {
+
+	public static void main(String[] args) throws Exception {
+		sharedHostLimit();
+		takesTurns();
+		resultsAndFailures();
+		Check.done("FetchSchedulerTest");
+	}
+
+	/**
+	 * Two sources on one host and one on another, with more workers than the per-host limit.
+	 */
+	private static void sharedHostLimit() throws Exception {
+		try (FetchScheduler scheduler = new FetchScheduler(8, 2)) {
+			Semaphore shared = scheduler.permitsFor("http://calendar.example.edu/okanagan?go=code");
+			Check.isTrue(shared == scheduler.permitsFor("http://calendar.example.edu/vancouver?go=code"), "sources on the same host share its limit");
+			Check.isTrue(shared != scheduler.permitsFor("http://other.example.edu/courses"), "another host has its own limit");
+			Check.isTrue(shared.isFair(), "requests waiting on a busy host are let through in arrival order");
+
+			AtomicInteger[] running = {new AtomicInteger(), new AtomicInteger()}, most = {new AtomicInteger(), new AtomicInteger()};
+			AtomicInteger overlapped = new AtomicInteger();
+			List<Thread> crawlers = new ArrayList<Thread>();
+			String[][] sources = {{"okanagan", "http://calendar.example.edu/okanagan"}, {"vancouver", "http://calendar.example.edu/vancouver"},
+					{"other", "http://other.example.edu/courses"}};
+			for (String[] source : sources) {
+				int host = source[1].contains("other")? 1 : 0;
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				for (int i = 0; i < 12; i++) {
+					tasks.add(() -> {
+						Semaphore permits = scheduler.permitsFor(source[1]);
+						permits.acquire();
+						try {
+							int now = running[host].incrementAndGet();
+							most[host].accumulateAndGet(now, Math::max);
+							if (running[1 - host].get() > 0) overlapped.incrementAndGet();
+							Thread.sleep(10);
+							running[host].decrementAndGet();
+						} finally {
+							permits.release();
+						}
+						return null;
+					});
+				}
+				Thread crawler = new Thread(() -> {
+					try {
+						scheduler.invokeAll(source[0], tasks);
+					} catch (IOException e) {
+						Check.isTrue(false, source[0]+" crawl: "+e);
+					}
+				});
+				crawlers.add(crawler);
+				crawler.start();
+			}
+			for (Thread crawler : crawlers) crawler.join(10000);
+			Check.equal(2, most[0].get(), "two sources on one host stay within its limit together");
+			Check.isTrue(most[1].get() >= 1 && most[1].get() <= 2, "the other host within its own limit");
+			Check.isTrue(overlapped.get() > 0, "the other host's pages load while the shared host is busy");
+		}
+	}
+
+	/**
+	 * One worker: a source that arrives while another has many tasks queued gets every other turn.
+	 */
+	private static void takesTurns() throws Exception {
+		try (FetchScheduler scheduler = new FetchScheduler(1, 1)) {
+			List<String> order = Collections.synchronizedList(new ArrayList<String>());
+			CountDownLatch started = new CountDownLatch(1), gate = new CountDownLatch(1);
+			List<Callable<Void>> big = new ArrayList<Callable<Void>>(), small = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < 20; i++) {
+				String name = "big"+i;
+				big.add(() -> {
+					if (name.equals("big0")) {
+						started.countDown();
+						gate.await(5, TimeUnit.SECONDS);
+					}
+					order.add(name);
+					return null;
+				});
+			}
+			for (int i = 0; i < 3; i++) {
+				String name = "small"+i;
+				small.add(() -> {
+					order.add(name);
+					return null;
+				});
+			}
+			Thread bigCrawl = new Thread(() -> {
+				try {
+					scheduler.invokeAll("big", big);
+				} catch (IOException e) {
+					Check.isTrue(false, "big crawl: "+e);
+				}
+			});
+			bigCrawl.start();
+			started.await(5, TimeUnit.SECONDS);
+			Thread smallCrawl = new Thread(() -> {
+				try {
+					scheduler.invokeAll("small", small);
+				} catch (IOException e) {
+					Check.isTrue(false, "small crawl: "+e);
+				}
+			});
+			smallCrawl.start();
+			Thread.sleep(200); // (for the small source's tasks to be queued)
+			gate.countDown();
+			bigCrawl.join(5000);
+			smallCrawl.join(5000);
+			Check.equal(Arrays.asList("big0", "big1", "small0", "big2", "small1", "big3", "small2", "big4"),
+					order.subList(0, Math.min(8, order.size())), "sources take turns (each its own tasks in order)");
+			Check.equal(23, order.size(), "every task ran");
+		}
+	}
+
+	private static void resultsAndFailures() throws Exception {
+		FetchScheduler scheduler = new FetchScheduler(4, 2);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			int value = i;
+			tasks.add(() -> {
+				Thread.sleep(10 - value);
+				return value*value;
+			});
+		}
+		Check.equal(Arrays.asList(0, 1, 4, 9, 16, 25, 36, 49, 64, 81), scheduler.invokeAll("squares", tasks), "results come back in task order");
+
+		List<Callable<Integer>> failing = new ArrayList<Callable<Integer>>();
+		failing.add(() -> 1);
+		failing.add(() -> {
+			throw new IOException("page 2 failed");
+		});
+		try {
+			scheduler.invokeAll("failing", failing);
+			Check.isTrue(false, "a failing task fails the crawl");
+		} catch (IOException e) {
+			Check.equal("page 2 failed", e.getMessage(), "a failing task's IOException is thrown as it is");
+		}
+
+		scheduler.close();
+		try {
+			scheduler.invokeAll("late", tasks);
+			Check.isTrue(false, "a closed scheduler takes no more tasks");
+		} catch (IOException e) {
+			Check.isTrue(true, "a closed scheduler takes no more tasks");
+		}
+	}
+}
@@ -0,0 +1,169 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * EZ-Plan
+ * Serves the recorded subject pages (test/fixtures/subject-[code].html) the way the calendar does:
+ * a course root page listing the subject codes, and each subject's page at "&code=[code]".
+ * Subject pages carry an ETag, and are answered "304 Not Modified" to a request that sends it back.
+ */
+public class FixtureServer implements AutoCloseable {
+
+	private final HttpServer server;
+	private final Map<String, String> pages = new LinkedHashMap<String, String>();
+	private volatile Consumer<String> listener = code -> {};
+	private final AtomicInteger notModified = new AtomicInteger();
+	// A subject page to send in two parts, holding back the rest (after the marker) until the gate opens
+	private volatile String heldCode, heldAfter;
+	private volatile CountDownLatch gate;
+
+	/**
+	 * Start serving the subject pages in the fixtures directory (on any free port).
+	 */
+	public FixtureServer() throws IOException {
+		File[] files = new File(Check.fixtures()).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+		Arrays.sort(files);
+		for (File file : files) {
+			String code = file.getName().substring("subject-".length(), file.getName().length() - ".html".length());
+			pages.put(code, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		}
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/courses", this::handle);
+		server.setExecutor(Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "fixture-server");
+			t.setDaemon(true);
+			return t;
+		}));
+		server.start();
+	}
+
+	/**
+	 * Serve another subject page (listed after the recorded ones), or replace one.
+	 */
+	public synchronized void addSubject(String code, String page) {
+		pages.put(code, page);
+	}
+
+	/**
+	 * Stop serving (and listing) a subject page.
+	 */
+	public synchronized void removeSubject(String code) {
+		pages.remove(code);
+	}
+
+	/**
+	 * @return The recorded page of the given subject.
+	 */
+	public synchronized String page(String code) {
+		return pages.get(code);
+	}
+
+	/**
+	 * Have the given listener called with the subject code of each subject page requested
+	 * (before it is answered).
+	 */
+	public void onRequest(Consumer<String> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Send the given subject's page up to (and including) the first occurrence of the marker, then
+	 * wait (up to 5 seconds) for the gate to open before sending the rest.
+	 */
+	public void holdAfter(String code, String marker, CountDownLatch gate) {
+		this.gate = gate;
+		heldAfter = marker;
+		heldCode = code;
+	}
+
+	/**
+	 * @return The number of requests answered "304 Not Modified" so far.
+	 */
+	public int notModified() {
+		return notModified.get();
+	}
+
+	public synchronized List<String> subjects() {
+		return new ArrayList<String>(pages.keySet());
+	}
+
+	public String coursesUrl() {
+		return "http://127.0.0.1:"+server.getAddress().getPort()+"/courses?go=code";
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		String body, subject = null;
+		int code = query.indexOf("code=", query.indexOf("go=code") + 7);
+		if (code < 0) {
+			StringBuilder root = new StringBuilder("<html><body><table>");
+			for (String listed : subjects()) {
+				root.append("<tr class=\"row-highlight\"><td><a href=\"?go=code&amp;code=").append(listed).append("\">")
+						.append(listed).append("</a></td></tr>");
+			}
+			body = root.append("</table></body></html>").toString();
+		} else {
+			subject = query.substring(code + 5);
+			listener.accept(subject);
+			body = page(subject);
+		}
+		exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+		if (body == null) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		String etag = "\""+Integer.toHexString(body.hashCode())+"\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+		if (subject != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			notModified.incrementAndGet();
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		int split = (subject != null && subject.equals(heldCode))? body.indexOf(heldAfter) : -1;
+		if (split < 0) {
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+			return;
+		}
+		exchange.sendResponseHeaders(200, 0); // (chunked)
+		try (OutputStream out = exchange.getResponseBody()) {
+			byte[] first = body.substring(0, split + heldAfter.length()).getBytes(StandardCharsets.UTF_8);
+			out.write(first);
+			out.flush();
+			try {
+				gate.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			out.write(bytes, first.length, bytes.length - first.length);
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
@@ -0,0 +1,261 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * EZ-Plan
+ * MySQLTableInput's table handling. The statement building is checked on its own; the checks against
+ * a real database run only given a scratch one (-Dtest.jdbc.url or TEST_JDBC_URL, user and password
+ * in the URL, and allowLoadLocalInfile=true for the bulk loads). They use tables named *_test,
+ * which they drop afterwards.
+ */
+public class MySQLTableInputTest {
+
+	private static final String COURSE_TEST = "Course_test";
+
+	public static void main(String[] args) throws Exception {
+		addColumnsSQL();
+		keysMatchAsCollated();
+		bulkReplaceCleansUpAfterFailure();
+		String url = Check.jdbcUrl();
+		if (url == null) {
+			System.out.println("MySQLTableInputTest: no test.jdbc.url; skipping the database checks");
+		} else {
+			try (Connection con = DriverManager.getConnection(url);
+					MySQLTableInput table = new MySQLTableInput(url, null, null)) {
+				migratesOldTable(con, table);
+				bulkReplace(con, table);
+				sinkOnExistingTable(con, url);
+				syncRoundTrip(con, table);
+				syncNonAscii(con, table);
+			}
+		}
+		Check.done("MySQLTableInputTest");
+	}
+
+	private static void addColumnsSQL() {
+		String ddl = Course.SCHEMA.getTableDDL();
+		Check.equal("ALTER TABLE Course ADD COLUMN subject VARCHAR(4) AFTER coreq, ADD COLUMN number SMALLINT AFTER subject, "
+				+"ADD COLUMN level TINYINT AFTER number, ADD INDEX(subject, level, number), ADD INDEX(level, number)",
+				MySQLTableInput.addColumnsSQL("Course", ddl, lower("cname", "title", "credits", "maxcredits", "description", "prereq", "coreq")),
+				"columns added to a Course table from before subject/number/level");
+		Check.equal(null, MySQLTableInput.addColumnsSQL("Course", ddl, lower(Course.SCHEMA.getColumns())),
+				"nothing to add to an up-to-date Course table");
+		Check.equal("ALTER TABLE CourseRequirement ADD COLUMN query VARCHAR(1000) AFTER credits",
+				MySQLTableInput.addColumnsSQL("CourseRequirement", CourseRequirement.SCHEMA.getTableDDL(),
+						lower("degree", "cond", "description", "count", "credits")),
+				"query column added to an older CourseRequirement table");
+	}
+
+	private static void keysMatchAsCollated() {
+		MySQLTableInput.ColumnFormat ci = new MySQLTableInput.ColumnFormat(Types.VARCHAR, 10, 0, false),
+				bin = new MySQLTableInput.ColumnFormat(Types.VARCHAR, 10, 0, true),
+				number = new MySQLTableInput.ColumnFormat(Types.INTEGER, 10, 0, false);
+		Check.equal(MySQLTableInput.keyOf(new String[] {"COSC 111"}, new MySQLTableInput.ColumnFormat[] {ci}),
+				MySQLTableInput.keyOf(new String[] {"cosc 111  "}, new MySQLTableInput.ColumnFormat[] {ci}),
+				"case and trailing spaces are ignored under a case-insensitive collation");
+		Check.isTrue(!MySQLTableInput.keyOf(new String[] {"COSC 111"}, new MySQLTableInput.ColumnFormat[] {bin})
+				.equals(MySQLTableInput.keyOf(new String[] {"cosc 111 "}, new MySQLTableInput.ColumnFormat[] {bin})),
+				"case still counts under a case-sensitive collation");
+		Check.equal(MySQLTableInput.keyOf(new String[] {"B.Sc.", "7"}, new MySQLTableInput.ColumnFormat[] {ci, number}),
+				MySQLTableInput.keyOf(new String[] {"b.sc. ", "7"}, new MySQLTableInput.ColumnFormat[] {ci, number}),
+				"multi-column keys match column by column");
+		Check.equal(MySQLTableInput.keyOf(new String[] {"Études"}, new MySQLTableInput.ColumnFormat[] {ci}),
+				MySQLTableInput.keyOf(new String[] {"etudes"}, new MySQLTableInput.ColumnFormat[] {ci}),
+				"accents are ignored under a case-insensitive collation");
+		Check.isTrue(!MySQLTableInput.keyOf(new String[] {"Études"}, new MySQLTableInput.ColumnFormat[] {bin})
+				.equals(MySQLTableInput.keyOf(new String[] {"Etudes"}, new MySQLTableInput.ColumnFormat[] {bin})),
+				"accents still count under a case-sensitive collation");
+	}
+
+	/**
+	 * Syncing the same tuples twice changes nothing the second time (a 4-byte character included), and a
+	 * key differing only in case updates its row rather than replacing it.
+	 */
+	private static void syncRoundTrip(Connection con, MySQLTableInput table) throws Exception {
+		update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		try {
+			table.createTable(courseTestDDL());
+			List<Tuple> rows = new ArrayList<Tuple>(Arrays.asList(
+					course("COSC", 111, "A"), course("COSC", 121, "B"), course("MATH", 100, "C \uD83D\uDE00")));
+			Check.equal(3, table.syncTable(COURSE_TEST, rows.iterator(), 10), "sync into an empty table inserts every row");
+			Check.equal(0, table.syncTable(COURSE_TEST, rows.iterator(), 10), "syncing the same rows again changes none");
+			
+			rows.set(0, course("cosc", 111, "A"));
+			Check.equal(1, table.syncTable(COURSE_TEST, rows.iterator(), 10), "a key changed only in case updates its row");
+			Check.equal(3, rowCount(con, COURSE_TEST), "and nothing is inserted or deleted");
+			try (Statement stat = con.createStatement();
+					ResultSet rs = stat.executeQuery("SELECT cname FROM "+COURSE_TEST+" WHERE cname = 'COSC 111'")) {
+				Check.isTrue(rs.next() && rs.getString(1).equals("cosc 111"), "the row takes the key as the tuple has it");
+			}
+			Check.equal(0, table.syncTable(COURSE_TEST, rows.iterator(), 10), "after which syncing again changes none");
+		} finally {
+			update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		}
+	}
+
+	/**
+	 * A table in latin1 (the server default the tuple DDL leaves tables in on MySQL 5.x) holding non-ASCII
+	 * text: syncing the same rows again must find them unchanged.
+	 */
+	private static void syncNonAscii(Connection con, MySQLTableInput table) throws Exception {
+		update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		try {
+			update(con, courseTestDDL().replaceFirst("\\)\\s*;?\\s*$", ") DEFAULT CHARSET=latin1"));
+			List<Tuple> rows = new ArrayList<Tuple>(Arrays.asList(
+					new Course("FREN", 101, BigDecimal.valueOf(3), BigDecimal.valueOf(3), "Français – élémentaire",
+							"L’étude de la langue.", null, null),
+					course("COSC", 111, "Plain")));
+			Check.equal(2, table.syncTable(COURSE_TEST, rows.iterator(), 10), "non-ASCII rows synced into a latin1 table");
+			Check.equal(0, table.syncTable(COURSE_TEST, rows.iterator(), 10), "and found unchanged the next time");
+		} finally {
+			update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		}
+	}
+
+	private static Course course(String subject, int number, String title) {
+		return new Course(subject, number, BigDecimal.valueOf(3), BigDecimal.valueOf(3), title, null, null, null);
+	}
+
+	/**
+	 * A tuple that fails while the tuples are being written out (before there is any database to talk to).
+	 */
+	private static void bulkReplaceCleansUpAfterFailure() throws Exception {
+		File tmp = new File(System.getProperty("java.io.tmpdir"));
+		int before = tempFiles(tmp);
+		List<Tuple> rows = new ArrayList<Tuple>();
+		rows.add(course("COSC", 111, "Fine"));
+		rows.add(new Course() {
+			@Override
+			public String[] getValues() {
+				throw new IllegalStateException("bad tuple");
+			}
+		});
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		int count;
+		try (MySQLTableInput table = new MySQLTableInput("jdbc:nowhere:", null, null)) {
+			count = table.bulkReplaceTable(COURSE_TEST, rows.iterator());
+		} finally {
+			System.setErr(err);
+		}
+		Check.equal(-1, count, "a tuple throwing a RuntimeException fails the bulk load");
+		Check.equal(before, tempFiles(tmp), "and its temporary file is deleted");
+	}
+
+	private static int tempFiles(File dir) {
+		String[] names = dir.list((d, name) -> name.startsWith(COURSE_TEST+"-") && name.endsWith(".tsv"));
+		return (names == null)? 0 : names.length;
+	}
+
+	private static int rowCount(Connection con, String tableName) throws SQLException {
+		try (Statement stat = con.createStatement();
+				ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM "+tableName)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+
+	private static void bulkReplace(Connection con, MySQLTableInput table) throws Exception {
+		update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		try {
+			table.createTable(courseTestDDL());
+			List<Tuple> rows = new ArrayList<Tuple>(Arrays.asList(
+					course("COSC", 111, "A"), course("COSC", 121, "B"), course("MATH", 100, "C \uD83D\uDE00")));
+			Check.equal(3, table.bulkReplaceTable(COURSE_TEST, rows.iterator()), "rows bulk loaded");
+			try (Statement stat = con.createStatement();
+					ResultSet rs = stat.executeQuery("SELECT title FROM "+COURSE_TEST+" WHERE cname = 'MATH 100'")) {
+				Check.isTrue(rs.next() && rs.getString(1).equals("C \uD83D\uDE00"), "a 4-byte character survives the load");
+			}
+			
+			// A duplicate key is skipped by the load; the table must be left as it was
+			List<Tuple> duplicated = new ArrayList<Tuple>(Arrays.asList(
+					course("COSC", 111, "A"), course("COSC", 111, "A again"), course("COSC", 310, "D"), course("COSC", 320, "E")));
+			Check.equal(-1, table.bulkReplaceTable(COURSE_TEST, duplicated.iterator()), "a load that skips a row fails");
+			Check.equal(3, rowCount(con, COURSE_TEST), "and the table keeps its old rows");
+			try (ResultSet tables = con.getMetaData().getTables(con.getCatalog(), null, COURSE_TEST+"_staging", null)) {
+				Check.isTrue(!tables.next(), "and the staging table is dropped");
+			}
+		} finally {
+			update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		}
+	}
+
+	/**
+	 * MySQLSink hands its tuples' own DDL (Course's has no IF NOT EXISTS) to createTable, which must leave
+	 * a table already there alone.
+	 */
+	private static void sinkOnExistingTable(Connection con, String url) throws Exception {
+		update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		try {
+			update(con, courseTestDDL());
+			update(con, "INSERT INTO "+COURSE_TEST+" (cname, title, credits, maxcredits) VALUES ('MATH 100', 'Kept', 3, 3)");
+			try (MySQLSink sink = new MySQLSink(new MySQLTableInput(url, null, null), 10)) {
+				sink.write(new Course("COSC", 111, BigDecimal.valueOf(3), BigDecimal.valueOf(3), "Programming", null, null, null) {
+					@Override
+					public String getTableTitle() {
+						return COURSE_TEST;
+					}
+
+					@Override
+					public String getTableDDL() {
+						return courseTestDDL();
+					}
+				});
+			}
+			Check.equal(2, rowCount(con, COURSE_TEST), "a sink writes into the existing table, keeping its rows");
+		} finally {
+			update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		}
+	}
+
+	private static HashSet<String> lower(String... columns) {
+		HashSet<String> set = new HashSet<String>();
+		for (String column : columns) {
+			set.add(column.toLowerCase());
+		}
+		return set;
+	}
+
+	static String courseTestDDL() {
+		return Course.SCHEMA.getTableDDL().replaceFirst("CREATE TABLE Course\\b", "CREATE TABLE "+COURSE_TEST);
+	}
+
+	static void update(Connection con, String sql) throws SQLException {
+		try (Statement stat = con.createStatement()) {
+			stat.executeUpdate(sql);
+		}
+	}
+
+	private static void migratesOldTable(Connection con, MySQLTableInput table) throws Exception {
+		update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		update(con, "CREATE TABLE "+COURSE_TEST+" ( cname VARCHAR(10), title VARCHAR(100), credits DECIMAL(3,1), "
+				+"maxcredits DECIMAL(3,1), description VARCHAR(1000), prereq VARCHAR(500), coreq VARCHAR(500), PRIMARY KEY(cname) )");
+		try {
+			update(con, "INSERT INTO "+COURSE_TEST+" (cname, title, credits, maxcredits) VALUES ('MATH 100', 'Old', 3, 3)");
+			Check.isTrue(table.createTable(courseTestDDL()), "createTable on a table missing columns adds them");
+			List<Tuple> rows = new ArrayList<Tuple>(Arrays.asList(
+					new Course("COSC", 111, BigDecimal.valueOf(3), BigDecimal.valueOf(3), "Programming", null, null, null)));
+			Check.equal(1, table.upsertTable(COURSE_TEST, rows.iterator(), 10), "rows written to the migrated table");
+			try (Statement stat = con.createStatement();
+					ResultSet rs = stat.executeQuery("SELECT subject, number, level FROM "+COURSE_TEST+" WHERE cname = 'COSC 111'")) {
+				Check.isTrue(rs.next(), "new row read back");
+				Check.equal("COSC 111 1", rs.getString(1)+" "+rs.getInt(2)+" "+rs.getInt(3), "derived columns of the new row");
+			}
+			Check.isTrue(table.createTable(courseTestDDL()), "createTable on an up-to-date table");
+		} finally {
+			update(con, "DROP TABLE IF EXISTS "+COURSE_TEST);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * PageCache keeps each page's validators with its body across instances, only replaces a page once a
+ * streamed copy is committed, and the crawler answers a "304 Not Modified" from the cached copy.
+ */
+public class PageCacheTest {
+
+	public static void main(String[] args) throws Exception {
+		File dir = Files.createTempDirectory("page-cache").toFile();
+		try {
+			validatorsRoundTrip(dir);
+			streamedCopy(dir);
+			notModified(Files.createTempDirectory("page-cache").toFile());
+		} finally {
+			deleteAll(dir);
+		}
+		Check.done("PageCacheTest");
+	}
+
+	private static void validatorsRoundTrip(File dir) throws IOException {
+		String url = "http://localhost/courses?go=code&code=COSC";
+		PageCache cache = new PageCache(dir);
+		Check.isTrue(cache.get(url) == null, "a page not cached yet is not found");
+		cache.put(url, "<html>café</html>", "\"abc\"", "Tue, 01 Mar 2016 10:00:00 GMT");
+		cache.put("http://localhost/other", "other", null, null);
+
+		// A fresh instance over the same directory reads back what was stored
+		PageCache reopened = new PageCache(dir);
+		PageCache.Entry entry = reopened.get(url);
+		Check.equal("<html>café</html>", entry.body, "the body round-trips (as UTF-8)");
+		Check.equal("\"abc\"", entry.etag, "the ETag round-trips");
+		Check.equal("Tue, 01 Mar 2016 10:00:00 GMT", entry.lastModified, "the Last-Modified round-trips");
+		PageCache.Entry validators = reopened.getValidators(url);
+		Check.equal("\"abc\"", validators.etag, "getValidators reads the ETag");
+		Check.isTrue(validators.body == null, "getValidators leaves the body unread");
+		PageCache.Entry other = reopened.get("http://localhost/other");
+		Check.isTrue(other.etag == null && other.lastModified == null, "a page sent without validators has none");
+
+		// Replacing a page replaces its validators too
+		reopened.put(url, "new", null, "Wed, 02 Mar 2016 10:00:00 GMT");
+		entry = cache.get(url);
+		Check.equal("new", entry.body, "a replaced page's body");
+		Check.isTrue(entry.etag == null, "a replaced page loses a validator the new copy wasn't sent with");
+		Check.equal("Wed, 02 Mar 2016 10:00:00 GMT", entry.lastModified, "a replaced page's Last-Modified");
+	}
+
+	private static void streamedCopy(File dir) throws IOException {
+		String url = "http://localhost/streamed";
+		PageCache cache = new PageCache(dir);
+		cache.put(url, "old", "\"1\"", null);
+		try (PageCache.Pending copy = cache.begin(url, "\"2\"", null)) {
+			copy.write("half a pa");
+		}
+		Check.equal("old", cache.get(url).body, "a copy closed without commit() leaves the cached page be");
+		Check.equal("\"1\"", cache.get(url).etag, "... and its validators");
+
+		try (PageCache.Pending copy = cache.begin(url, "\"2\"", null)) {
+			copy.write("the whole page");
+			copy.commit();
+		}
+		Check.equal("\"2\"", cache.getValidators(url).etag, "a committed copy's validators");
+		try (Reader in = cache.openBody(url)) {
+			StringBuilder body = new StringBuilder();
+			int ch;
+			while ((ch = in.read()) >= 0) body.append((char) ch);
+			Check.equal("the whole page", body.toString(), "a committed copy's body, read as a stream");
+		}
+		String[] left = dir.list((d, name) -> name.endsWith(".tmp"));
+		Check.equal(0, left.length, "no temporary files are left behind");
+	}
+
+	/**
+	 * The server answers 304 to the cached copy's ETag, so the cached body (here, deliberately not the
+	 * page the server has) is what gets parsed; a stale ETag gets the page itself, which replaces it.
+	 */
+	private static void notModified(File dir) throws Exception {
+		try (FixtureServer server = new FixtureServer()) {
+			String page = server.page("COSC"), url = server.coursesUrl()+"&code=COSC";
+			String etag = "\""+Integer.toHexString(page.hashCode())+"\"";
+			int cosc = new Crawler().parseCourses(Jsoup.parse(page, url)).size();
+			String oneCourse = page.substring(0, page.indexOf("</dd>") + 5)+"</dl></body></html>";
+
+			PageCache cache = new PageCache(dir);
+			cache.put(url, oneCourse, etag, null);
+			Crawler crawler = new Crawler(new CalendarSource("fixture", server.coursesUrl(), null), new FetchScheduler(1, 4));
+			crawler.setPageCache(cache);
+			List<Course> courses = crawler.parseCoursesFrom("COSC");
+			Check.equal(1, server.notModified(), "the cached ETag is sent back and answered 304");
+			Check.equal(1, courses.size(), "a 304 is answered from the cached body");
+			Check.equal(oneCourse, cache.get(url).body, "a 304 leaves the cached copy be");
+
+			cache.put(url, oneCourse, "\"stale\"", null);
+			courses = crawler.parseCoursesFrom("COSC");
+			Check.equal(1, server.notModified(), "a stale ETag is not answered 304");
+			Check.equal(cosc, courses.size(), "a changed page is parsed from what the server sent");
+			PageCache.Entry refreshed = cache.get(url);
+			Check.equal(page, refreshed.body, "a changed page replaces the cached copy");
+			Check.equal(etag, refreshed.etag, "... along with its ETag");
+		} finally {
+			deleteAll(dir);
+		}
+	}
+
+	private static void deleteAll(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) f.delete();
+		}
+		dir.delete();
+	}
+}
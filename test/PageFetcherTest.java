@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * EZ-Plan
+ * The read timeout covers the whole body, not just the headers: a page that stops arriving partway
+ * through fails (both fetched whole and opened as a stream) rather than blocking forever, and the
+ * crawler's per-host permit is let go so later pages still load.
+ */
+public class PageFetcherTest {
+
+	private static final int READ_TIMEOUT_MILLIS = 500;
+
+	public static void main(String[] args) throws Exception {
+		try (FixtureServer server = new FixtureServer()) {
+			CountDownLatch never = new CountDownLatch(1);
+			PageFetcher fetcher = new PageFetcher(2000, READ_TIMEOUT_MILLIS);
+			String url = server.coursesUrl()+"&code=COSC";
+			try {
+				server.holdAfter("COSC", "</dd>", never);
+				stalledFetch(fetcher, url);
+				stalledOpen(fetcher, url);
+				releasesPermit(server, fetcher, false);
+				releasesPermit(server, fetcher, true);
+			} finally {
+				never.countDown();
+			}
+
+			// A page that keeps arriving still loads whole
+			server.holdAfter(null, null, null);
+			Check.equal(server.page("COSC"), fetcher.fetch(url, null, null).body(), "a page that arrives is fetched whole");
+		}
+		Check.done("PageFetcherTest");
+	}
+
+	private static void stalledFetch(PageFetcher fetcher, String url) {
+		long start = System.nanoTime();
+		try {
+			fetcher.fetch(url, null, null).body();
+			Check.isTrue(false, "a stalled body fails to fetch");
+		} catch (IOException e) {
+			Check.isTrue(true, "a stalled body fails to fetch");
+		}
+		Check.isTrue(System.nanoTime() - start < 3_000_000_000L, "fetch gives up on a stalled body after about the read timeout");
+	}
+
+	private static void stalledOpen(PageFetcher fetcher, String url) {
+		long start = System.nanoTime();
+		try (InputStream in = fetcher.open(url).bodyStream()) {
+			byte[] buffer = new byte[1 << 12];
+			while (in.read(buffer) >= 0) {
+				// (reads what was sent, then waits for the rest)
+			}
+			Check.isTrue(false, "a stalled body fails to read");
+		} catch (IOException e) {
+			Check.isTrue(true, "a stalled body fails to read");
+		}
+		Check.isTrue(System.nanoTime() - start < 3_000_000_000L, "reading gives up on a stalled body after about the read timeout");
+	}
+
+	private static void releasesPermit(FixtureServer server, PageFetcher fetcher, boolean streaming) throws Exception {
+		String how = streaming? "streamed" : "fetched";
+		// One request at a time to the host, so a permit still held would block the next page
+		Crawler crawler = new Crawler(new CalendarSource("fixture", server.coursesUrl(), null), new FetchScheduler(1, 1));
+		crawler.setFetcher(fetcher);
+		crawler.setStreamingParse(streaming);
+		try {
+			crawler.parseCoursesFrom("COSC");
+			Check.isTrue(false, how+": a stalled page fails");
+		} catch (IOException e) {
+			Check.isTrue(true, how+": a stalled page fails");
+		}
+		String other = server.subjects().get(0).equals("COSC")? server.subjects().get(1) : server.subjects().get(0);
+		FutureTask<List<Course>> next = new FutureTask<List<Course>>(() -> crawler.parseCoursesFrom(other));
+		Thread thread = new Thread(next);
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			next.get(3, TimeUnit.SECONDS);
+			Check.isTrue(true, how+": the host's permit was released");
+		} catch (TimeoutException e) {
+			Check.isTrue(false, how+": the host's permit was released");
+		}
+	}
+}
@@ -0,0 +1,46 @@
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * Prerequisite text parsed into course expressions, including connectives and filler words
+ * that must not be taken for subject codes (and the degree requirements parsed the same way).
+ */
+public class PrerequisiteExpressionTest {
+
+	private static void parses(String text, String expected) {
+		PrerequisiteExpression e = PrerequisiteExpression.parse(text);
+		Check.equal(expected, (e == null)? null : e.toString(), "parse \""+text+"\"");
+	}
+
+	public static void main(String[] args) {
+		parses("COSC 111 or COSC 123.", "(COSC 111 | COSC 123)");
+		parses("One of MATH 100, 101 and one of ENGL 112, 114.", "((MATH 100 | MATH 101) & (ENGL 112 | ENGL 114))");
+		parses("COSC 221; and third-year standing.", "COSC 221");
+		parses("A score of 60% or higher in COSC 111.", "COSC 111");
+		parses("All of COSC 211, COSC 221, COSC 222.", "(COSC 211 & COSC 221 & COSC 222)");
+		parses("Third-year standing.", null);
+		parses(null, null);
+		
+		// Connectives and filler words are not subjects
+		parses("MATH 100 and 101", "(MATH 100 & MATH 101)");
+		parses("COSC 111 or both 121 and 122", "(COSC 111 | (COSC 121 & COSC 122))");
+		parses("6 credits from 300-level COSC", null);
+		parses("COSC 111; 6 credits from 300-level COSC", "COSC 111");
+		parses("MATH 100 AND 101", "(MATH 100 & MATH 101)");
+		parses("Either COSC 111 or COSC 123", "(COSC 111 | COSC 123)");
+		
+		// Degree requirements go through the same parser
+		Crawler crawler = new Crawler();
+		DegreeType degree = crawler.parseRequirementsFrom(Jsoup.parse(
+				"<h1>Bachelor of Science, Major in Mathematics</h1>"
+				+"<table><tr><td>MATH 100 and 101</td><td>6</td></tr>"
+				+"<tr><td>COSC 111 or both 121 and 122</td><td>6</td></tr>"
+				+"<tr><td>6 credits from 300-level COSC</td><td>6</td></tr></table>"));
+		Check.equal(2, degree.getAll().size(), "requirements (the level-only row is not a course list)");
+		Check.equal("cname RLIKE 'MATH (100|101)'", degree.getAll().get(0).getCond(), "first requirement");
+		Check.equal(2, degree.getAll().get(0).getCount(), "first requirement's course count");
+		Check.equal("cname RLIKE 'COSC (111|121|122)'", degree.getAll().get(1).getCond(), "second requirement");
+		Check.equal(1, degree.getAll().get(1).getCount(), "second requirement's course count");
+		Check.done("PrerequisiteExpressionTest");
+	}
+}
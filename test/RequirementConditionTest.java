@@ -0,0 +1,157 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * RequirementCondition.toIndexedPredicate selects, from a course table with the derived subject/number/
+ * level columns, exactly the courses matches() accepts: for the conditions CrawlerExecute defines, those
+ * parsed from the program page fixture, and forms that have to be left as regexes. (Run on an in-memory
+ * H2 database; the courses are those on the subject page fixtures and a spread over every faculty.)
+ */
+public class RequirementConditionTest {
+
+	private static final String KEY = "cname";
+
+	public static void main(String[] args) throws Exception {
+		Set<String> courses = courses();
+		try (Connection con = DriverManager.getConnection("jdbc:h2:mem:conditions;MODE=MySQL")) {
+			try (Statement stat = con.createStatement()) {
+				stat.execute("CREATE TABLE course (cname VARCHAR(12) PRIMARY KEY, subject VARCHAR(4), number SMALLINT, level TINYINT)");
+			}
+			try (PreparedStatement insert = con.prepareStatement("INSERT INTO course VALUES (?, ?, ?, ?)")) {
+				for (String code : courses) {
+					int number = number(code);
+					insert.setString(1, code);
+					insert.setString(2, subject(code));
+					insert.setInt(3, number);
+					insert.setInt(4, number/100);
+					insert.addBatch();
+				}
+				insert.executeBatch();
+			}
+
+			for (String cond : indexable()) {
+				String predicate = RequirementCondition.parse(cond, KEY).toIndexedPredicate();
+				Check.isTrue(!predicate.contains("RLIKE"), cond+" is rewritten over the indexed columns ("+predicate+")");
+				sameCourses(con, courses, cond, predicate);
+			}
+			for (String cond : keptAsRegex()) {
+				String predicate = RequirementCondition.parse(cond, KEY).toIndexedPredicate();
+				Check.equal(cond, predicate, cond+" is left as it is");
+			}
+		}
+		Check.done("RequirementConditionTest");
+	}
+
+	/**
+	 * Conditions that can be expressed exactly with the subject/number/level columns.
+	 */
+	private static List<String> indexable() throws Exception {
+		List<String> conds = new ArrayList<String>(Arrays.asList(
+				// As defined for the BSc in Computer Science (CrawlerExecute.populateRequirements)
+				KEY+" RLIKE 'COSC (111|123)'",
+				KEY+" = 'COSC 121'",
+				KEY+" RLIKE 'ENGL (113|150|151|153)'",
+				KEY+" RLIKE 'CHEM (111|121)'",
+				KEY+" RLIKE '^COSC (3|4)'",
+				KEY+" RLIKE '^[a-zA-Z]+ (3|4)'",
+				KEY+" RLIKE '[\\s\\S]*'",
+				// Other forms the crawler builds
+				KEY+" RLIKE '^MATH (100)|^STAT (230)'",
+				KEY+" RLIKE '^ECON (3|4)|^PHIL 331'",
+				KEY+" RLIKE '^COSC (1|3|4)'",
+				KEY+" RLIKE '^COSC (31|32)|^MATH 1'",
+				KEY+" RLIKE '^(ANTH|ECON|PHIL) '",
+				KEY+" RLIKE 'cosc (3|4)'"));
+
+		// The Arts electives as CrawlerExecute spells them out, one alternative per subject
+		StringBuilder arts = new StringBuilder(KEY+" RLIKE '");
+		for (Subject subject : Faculties.ARTS_SUBJECTS) {
+			if (arts.charAt(arts.length()-1) != '\'') arts.append('|');
+			arts.append('^').append(subject.code).append(' ');
+		}
+		conds.add(arts.append('\'').toString());
+
+		// Every condition on the program page fixture
+		DegreeType degree = new Crawler().parseRequirementsFrom(Jsoup.parse(new File(Check.fixtures(), "program-BA-ECON.html"), "UTF-8"));
+		for (CourseRequirement req : degree.getAll()) {
+			conds.add(req.getCond());
+		}
+		return conds;
+	}
+
+	/**
+	 * Conditions that can't be answered from the indexed columns alone.
+	 */
+	private static List<String> keptAsRegex() {
+		return Arrays.asList(
+				KEY+" RLIKE 'MA (1|2)'", // (unanchored, a short subject could be the end of a longer one)
+				KEY+" RLIKE '^COSC (0|1)'",
+				KEY+" RLIKE '^COSC 3[0-9]'",
+				KEY+" RLIKE '^COSC 1111'",
+				KEY+" RLIKE '(COSC|MATH) 1.*'");
+	}
+
+	private static void sameCourses(Connection con, Set<String> courses, String cond, String predicate) throws SQLException {
+		RequirementCondition parsed = RequirementCondition.parse(cond, KEY);
+		Set<String> expected = new TreeSet<String>();
+		for (String code : courses) {
+			if (parsed.matches(subject(code), number(code))) expected.add(code);
+		}
+		Set<String> selected = new TreeSet<String>();
+		try (Statement stat = con.createStatement();
+				ResultSet rs = stat.executeQuery("SELECT cname FROM course WHERE "+predicate)) {
+			while (rs.next()) selected.add(rs.getString(1));
+		}
+		Check.isTrue(!expected.isEmpty(), cond+" matches some course");
+		Check.equal(expected, selected, cond+" -> "+predicate);
+	}
+
+	/**
+	 * Every course on the subject page fixtures, and a spread of numbers in every faculty's subjects.
+	 */
+	private static Set<String> courses() throws Exception {
+		Set<String> courses = new LinkedHashSet<String>();
+		File[] pages = new File(Check.fixtures()).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+		Arrays.sort(pages);
+		for (File page : pages) {
+			String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+			for (Course c : new Crawler().parseCourses(Jsoup.parse(html, "http://localhost/"+page.getName()))) {
+				if (c.getSubject() != null && c.getNumber() >= 100) courses.add(c.getCourseCode());
+			}
+		}
+		List<Subject> subjects = new ArrayList<Subject>(Arrays.asList(Faculties.ARTS_SUBJECTS));
+		subjects.addAll(Arrays.asList(Faculties.SCI_SUBJECTS));
+		int[] numbers = {100, 101, 102, 111, 112, 121, 123, 150, 151, 153, 201, 202, 205, 211, 221, 230, 301, 302, 303, 304, 310, 311, 319, 320, 329, 331, 341, 380, 448, 470, 499, 500, 599};
+		for (Subject subject : subjects) {
+			for (int number : numbers) {
+				courses.add(subject.code+" "+number);
+			}
+		}
+		courses.add("STMA 101"); // (a subject ending in another one)
+		return courses;
+	}
+
+	private static String subject(String code) {
+		return code.substring(0, code.indexOf(' '));
+	}
+
+	private static int number(String code) {
+		return Integer.parseInt(code.substring(code.indexOf(' ')+1));
+	}
+}
@@ -0,0 +1,152 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EZ-Plan
+ * A sharded crawl over real worker processes against the fixture server: a worker killed
+ * mid-shard has its subjects finished by another, and a subject that kills every worker
+ * fails the crawl after ShardCoordinator's attempts (rather than being handed out forever).
+ * A crawl that no worker joins, or whose workers are all lost, fails after the worker timeout.
+ */
+public class ShardCoordinatorTest {
+
+	private static final List<Process> workers = new ArrayList<Process>();
+
+	private static synchronized void startWorker(int port) throws IOException {
+		String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ShardWorker", "127.0.0.1", String.valueOf(port))
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.DISCARD).start());
+	}
+
+	private static synchronized void killWorkers() {
+		for (Process p : workers) {
+			p.destroyForcibly();
+		}
+	}
+
+	private static synchronized int workersStarted() {
+		return workers.size();
+	}
+
+	public static void main(String[] args) throws Exception {
+		ExecutorService runner = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r);
+			t.setDaemon(true);
+			return t;
+		});
+		try (FixtureServer server = new FixtureServer()) {
+			server.addSubject("DIES", server.page("COSC"));
+			List<Tuple> expected = new Crawler(new CalendarSource("fixture", server.coursesUrl(), null),
+					new FetchScheduler(1, 4)).fullCrawl();
+
+			// The first worker dies on its way through DIES; a second one takes over
+			AtomicInteger killed = new AtomicInteger();
+			try (ShardCoordinator coordinator = coordinator(server)) {
+				server.onRequest(code -> {
+					if (code.equals("DIES") && killed.getAndIncrement() == 0) {
+						killWorkers();
+						try {
+							startWorker(coordinator.getPort());
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				});
+				startWorker(coordinator.getPort());
+				Future<ArrayList<Tuple>> result = runner.submit(coordinator::run);
+				List<Tuple> courses = result.get(60, TimeUnit.SECONDS);
+				Check.equal(describe(expected), describe(courses), "courses after a worker was lost");
+				Check.equal(2, workersStarted(), "workers started");
+			}
+			killWorkers();
+			workers.clear();
+
+			// DIES takes down every worker that tries it
+			AtomicInteger deaths = new AtomicInteger();
+			try (ShardCoordinator coordinator = coordinator(server)) {
+				server.onRequest(code -> {
+					if (code.equals("DIES")) {
+						deaths.incrementAndGet();
+						killWorkers();
+						try {
+							if (workersStarted() < 6) startWorker(coordinator.getPort());
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				});
+				startWorker(coordinator.getPort());
+				Future<ArrayList<Tuple>> result = runner.submit(coordinator::run);
+				String failure = null;
+				try {
+					result.get(60, TimeUnit.SECONDS);
+				} catch (ExecutionException e) {
+					failure = e.getCause().getMessage();
+				} catch (java.util.concurrent.TimeoutException e) {
+					failure = "(still running)";
+				}
+				Check.isTrue(failure != null && failure.contains("DIES"), "a subject that kills every worker fails the crawl: "+failure);
+				Check.equal(3, deaths.get(), "workers lost to it before giving up");
+			}
+			killWorkers();
+			workers.clear();
+
+			// No worker ever connects
+			try (ShardCoordinator coordinator = coordinator(server)) {
+				server.onRequest(code -> {});
+				coordinator.setWorkerTimeout(500);
+				String failure = failure(runner.submit(coordinator::run));
+				Check.isTrue(failure != null && failure.startsWith("No workers connected"), "a crawl no worker joins fails: "+failure);
+			}
+
+			// The only worker dies, and no other comes
+			try (ShardCoordinator coordinator = coordinator(server)) {
+				server.onRequest(code -> {
+					if (code.equals("DIES")) killWorkers();
+				});
+				coordinator.setWorkerTimeout(1000);
+				startWorker(coordinator.getPort());
+				String failure = failure(runner.submit(coordinator::run));
+				Check.isTrue(failure != null && failure.startsWith("No workers connected"), "a crawl whose workers are all lost fails: "+failure);
+			}
+		} finally {
+			killWorkers();
+		}
+		Check.done("ShardCoordinatorTest");
+	}
+
+	/**
+	 * @return The message a crawl failed with, "(still running)" if it hasn't ended within 20 seconds, or null if it succeeded.
+	 */
+	private static String failure(Future<ArrayList<Tuple>> result) throws InterruptedException {
+		try {
+			result.get(20, TimeUnit.SECONDS);
+			return null;
+		} catch (ExecutionException e) {
+			return e.getCause().getMessage();
+		} catch (java.util.concurrent.TimeoutException e) {
+			return "(still running)";
+		}
+	}
+
+	private static ShardCoordinator coordinator(FixtureServer server) throws IOException {
+		Crawler crawler = new Crawler(new CalendarSource("fixture", server.coursesUrl(), null), new FetchScheduler(1, 4));
+		return new ShardCoordinator(crawler, 0, 2);
+	}
+
+	private static String describe(List<Tuple> courses) {
+		StringBuilder s = new StringBuilder();
+		for (Tuple t : courses) {
+			s.append(TsvFormat.join(t.getValues())).append('\n');
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,95 @@
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.jsoup.Jsoup;
+
+/**
+ * EZ-Plan
+ * The streaming parse finds the same courses as parsing each page's whole DOM, on every recorded
+ * page; and through a page cache (as CrawlerExecute always sets one up) it still parses pages as they
+ * download, caches them as it goes, and parses unchanged or offline pages from the cached copy.
+ */
+public class StreamingParseTest {
+
+	public static void main(String[] args) throws Exception {
+		sameAsDom();
+		throughPageCache();
+		Check.done("StreamingParseTest");
+	}
+
+	private static void sameAsDom() throws Exception {
+		Crawler crawler = new Crawler();
+		File[] pages = new File(Check.fixtures()).listFiles((dir, name) -> name.startsWith("subject-") && name.endsWith(".html"));
+		for (File page : pages) {
+			String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+			String url = "http://localhost/"+page.getName();
+			List<Course> streamed = new ArrayList<Course>();
+			crawler.parseCourses(new StringReader(html), url, streamed::add);
+			Check.equal(describe(crawler.parseCourses(Jsoup.parse(html, url))), describe(streamed), page.getName()+": streamed courses");
+		}
+	}
+
+	private static void throughPageCache() throws Exception {
+		File dir = Files.createTempDirectory("page-cache").toFile();
+		try (FixtureServer server = new FixtureServer()) {
+			CalendarSource source = new CalendarSource("fixture", server.coursesUrl(), null);
+			String expected = describe(new Crawler(source, new FetchScheduler(1, 4)).parseCoursesFrom("COSC"));
+			
+			// The first course must reach the handler while the rest of the page is still held back
+			CountDownLatch firstCourse = new CountDownLatch(1);
+			server.holdAfter("COSC", "</dd>", firstCourse);
+			Crawler crawler = new Crawler(source, new FetchScheduler(1, 4));
+			PageCache cache = new PageCache(dir);
+			crawler.setPageCache(cache);
+			crawler.setStreamingParse(true);
+			long start = System.nanoTime();
+			List<Course> streamed = new ArrayList<Course>();
+			crawler.streamCrawl(new TupleSink() {
+				@Override
+				public void write(Tuple t) {
+					streamed.add((Course) t);
+					if (((Course) t).getCourseCode().equals("COSC 111")) firstCourse.countDown();
+				}
+
+				@Override
+				public void flush() {
+				}
+
+				@Override
+				public void close() {
+				}
+			});
+			Check.isTrue(System.nanoTime() - start < 4_000_000_000L, "the first course is handed on before the page has all arrived");
+			String url = server.coursesUrl()+"&code=COSC";
+			Check.isTrue(describe(streamed).startsWith(expected), "streamed crawl through the cache");
+			PageCache.Entry entry = cache.get(url);
+			Check.equal(server.page("COSC"), (entry == null)? null : entry.body, "the page is cached as it was streamed");
+			
+			// Unchanged: revalidated (304), then parsed from the cached copy
+			server.holdAfter(null, null, null);
+			Check.equal(expected, describe(crawler.parseCoursesFrom("COSC")), "courses of an unchanged page");
+			Check.isTrue(server.notModified() >= 1, "the cached copy was revalidated");
+			
+			// Offline: straight from the cache
+			cache.setOffline(true);
+			server.onRequest(code -> Check.isTrue(false, "no requests offline ("+code+")"));
+			Check.equal(expected, describe(crawler.parseCoursesFrom("COSC")), "courses offline");
+		} finally {
+			for (File f : dir.listFiles()) f.delete();
+			dir.delete();
+		}
+	}
+
+	private static String describe(List<Course> courses) {
+		StringBuilder s = new StringBuilder();
+		for (Course c : courses) {
+			s.append(TsvFormat.join(c.getValues())).append('\n');
+		}
+		return s.toString();
+	}
+}
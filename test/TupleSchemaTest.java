@@ -0,0 +1,124 @@
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * EZ-Plan
+ * TupleSchema binds each column with the setter for its SQL type (setBigDecimal, setInt, setNull of the
+ * column's type, ...), for tuples of every schema and tuples tagged with their source, and bindText
+ * does the same for values given as text, falling back to setString for text that isn't a number.
+ */
+public class TupleSchemaTest {
+
+	/**
+	 * A tuple class without a schema of its own.
+	 */
+	private static class Plain implements Tuple {
+		@Override
+		public String[] getValues() {
+			return new String[] {"key", "12"};
+		}
+
+		@Override
+		public String[] getColumns() {
+			return new String[] {"k", "n"};
+		}
+
+		@Override
+		public String[] getKeyHeadings() {
+			return new String[] {"k"};
+		}
+
+		@Override
+		public String getTableDDL() {
+			return "CREATE TABLE IF NOT EXISTS Plain (k VARCHAR(10), n INT, PRIMARY KEY(k));";
+		}
+
+		@Override
+		public String getTableTitle() {
+			return "Plain";
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Course course = new Course("COSC", 111, new BigDecimal("3.0"), null, "Computer Programming I", "Intro", "MATH 125", null);
+		Check.equal(Arrays.asList(
+				"setString(1, COSC 111)", "setString(2, Computer Programming I)", "setBigDecimal(3, 3.0)", "setNull(4, DECIMAL)",
+				"setString(5, Intro)", "setString(6, MATH 125)", "setNull(7, VARCHAR)", "setString(8, COSC)",
+				"setInt(9, 111)", "setInt(10, 1)"),
+				bind(course), "a course binds each column with its type's setter (credits keep their scale)");
+		Check.equal(bind(course), bind(new CalendarSource.Tagged(new CalendarSource("vancouver", "http://localhost/courses?go=code", null), course)),
+				"a tagged course binds like the course");
+
+		DegreeType degree = new DegreeType(DegreeType.DegreeLevel.B, "Science", "Computer Science", 120);
+		Check.equal(Arrays.asList("setString(1, "+degree+")", "setInt(2, 120)"), bind(degree), "a degree's credit total binds as an int");
+		CourseRequirement req = new CourseRequirement(degree).define("cname RLIKE '^COSC (3|4)'", "Upper-level COSC", null, 15);
+		List<String> reqCalls = bind(req);
+		Check.equal("setNull(4, INTEGER)", reqCalls.get(3), "a requirement without a count binds SQL NULL of the column's type");
+		Check.equal("setBigDecimal(5, 15)", reqCalls.get(4), "a requirement's credits bind as a decimal");
+		Check.equal("setString(6, subject = 'COSC' AND level BETWEEN 3 AND 4)", reqCalls.get(5), "its indexed query binds as text");
+
+		Check.equal(Arrays.asList("setString(1, key)", "setString(2, 12)"), bind(new Plain()), "a tuple class without a schema binds text");
+		Check.equal(Types.VARCHAR, TupleSchema.of(new Plain()).getSqlTypes()[1], "... and its columns are typed as text");
+
+		// Tuples hand out copies of the schema's arrays
+		course.getColumns()[0] = "changed";
+		degree.getKeyHeadings()[0] = "changed";
+		req.getColumns()[0] = "changed";
+		Check.equal("cname", TupleSchema.of(course).getColumns()[0], "changing a course's columns leaves the schema be");
+		Check.equal("degree", TupleSchema.of(degree).getKeyHeadings()[0], "changing a degree's key headings leaves the schema be");
+		Check.equal("degree", TupleSchema.of(req).getColumns()[0], "changing a requirement's columns leaves the schema be");
+
+		// Values given as text
+		Check.equal("setNull(1, DECIMAL)", bindText(Types.DECIMAL, null), "null text of a decimal column");
+		Check.equal("setBigDecimal(1, 3.50)", bindText(Types.DECIMAL, "3.50"), "decimal text keeps its scale");
+		Check.equal("setBigDecimal(1, 12)", bindText(Types.NUMERIC, " 12 "), "numeric text is trimmed");
+		Check.equal("setInt(1, 120)", bindText(Types.INTEGER, "120"), "integer text");
+		Check.equal("setInt(1, -3)", bindText(Types.SMALLINT, " -3"), "smallint text is trimmed");
+		Check.equal("setInt(1, 4)", bindText(Types.TINYINT, "4"), "tinyint text");
+		Check.equal("setString(1, 1.5)", bindText(Types.INTEGER, "1.5"), "a fraction in an integer column is left to the database");
+		Check.equal("setString(1, n/a)", bindText(Types.DECIMAL, "n/a"), "text that isn't a number is bound as it is");
+		Check.equal("setString(1, 99999999999)", bindText(Types.INTEGER, "99999999999"), "a number too big for an int is bound as text");
+		Check.equal("setString(1, 007)", bindText(Types.VARCHAR, "007"), "text columns keep their text");
+		Check.equal("setNull(1, VARCHAR)", bindText(Types.VARCHAR, null), "null text of a text column");
+		Check.done("TupleSchemaTest");
+	}
+
+	private static List<String> bind(Tuple t) throws Exception {
+		List<String> calls = new ArrayList<String>();
+		TupleSchema.of(t).bind(recorder(calls), t);
+		return calls;
+	}
+
+	private static String bindText(int sqlType, String value) throws Exception {
+		List<String> calls = new ArrayList<String>();
+		TupleSchema.bindText(recorder(calls), 1, sqlType, value);
+		return String.join("; ", calls);
+	}
+
+	/**
+	 * A statement that only records the parameter setters called on it (setNull with its type's name).
+	 */
+	private static PreparedStatement recorder(List<String> calls) {
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] {PreparedStatement.class},
+				(proxy, method, args) -> {
+					if (!method.getName().startsWith("set")) throw new UnsupportedOperationException(method.getName());
+					Object value = method.getName().equals("setNull")? typeName((Integer) args[1]) : args[1];
+					calls.add(method.getName()+"("+args[0]+", "+value+")");
+					return null;
+				});
+	}
+
+	private static String typeName(int sqlType) {
+		switch (sqlType) {
+		case Types.DECIMAL: return "DECIMAL";
+		case Types.INTEGER: return "INTEGER";
+		case Types.VARCHAR: return "VARCHAR";
+		default: return Integer.toString(sqlType);
+		}
+	}
+}
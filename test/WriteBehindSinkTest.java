@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EZ-Plan
+ * WriteBehindSink keeps draining whatever the sink under it throws, and fails rather than
+ * hangs once its writer thread is gone.
+ */
+public class WriteBehindSinkTest {
+
+	/**
+	 * Sink that fails every third tuple: with a RuntimeException, or an Error for every ninth.
+	 */
+	private static class FlakySink implements TupleSink {
+		final List<Tuple> accepted = new ArrayList<Tuple>();
+		int calls;
+		volatile int closes;
+
+		@Override
+		public void write(Tuple t) throws IOException {
+			calls++;
+			if (calls % 9 == 0) throw new AssertionError("error on tuple "+calls);
+			if (calls % 3 == 0) throw new IllegalStateException("failure on tuple "+calls);
+			accepted.add(t);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			closes++;
+		}
+	}
+
+	private static Course course(int number) {
+		return new Course("TEST", number, BigDecimal.ONE, null, "Test "+number, "", null, null);
+	}
+
+	public static void main(String[] args) throws Exception {
+		keepsDraining();
+		failsFastWithoutWriter();
+		Check.done("WriteBehindSinkTest");
+	}
+
+	private static void keepsDraining() throws Exception {
+		PrintStreamSilencer quiet = new PrintStreamSilencer();
+		FlakySink flaky = new FlakySink();
+		WriteBehindSink out = new WriteBehindSink(flaky, 1);
+		for (int i = 0; i < 90; i++) {
+			out.write(course(100+i));
+		}
+		IOException failure = null;
+		try {
+			out.close();
+		} catch (IOException e) {
+			failure = e;
+		}
+		quiet.restore();
+		Check.equal(90, flaky.calls, "every tuple reaches the sink, after runtime exceptions and errors alike");
+		Check.equal(60, flaky.accepted.size(), "tuples accepted");
+		Check.equal(60, out.getWritten(), "written count");
+		Check.isTrue(failure != null, "close() reports the first failure");
+		Check.equal(30, out.getFailures(), "failures counted");
+		Check.isTrue(failure != null && failure.getMessage().startsWith("30 failures"), "close() reports the count of failures");
+		String log = quiet.captured();
+		Check.equal(1, log.split("Could not write to", -1).length - 1, "only the first failure is logged");
+		Check.isTrue(!log.contains("failure on tuple 6"), "later failures leave no stack trace");
+	}
+
+	private static void failsFastWithoutWriter() throws Exception {
+		PrintStreamSilencer quiet = new PrintStreamSilencer();
+		FlakySink flaky = new FlakySink();
+		WriteBehindSink out = new WriteBehindSink(flaky, 1);
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("write-behind-FlakySink")) t.interrupt();
+		}
+		long start = System.nanoTime();
+		IOException failure = null;
+		try {
+			for (int i = 0; i < 10; i++) {
+				out.write(course(100+i));
+			}
+			out.flush();
+		} catch (IOException e) {
+			failure = e;
+		}
+		IOException closeFailure = null;
+		try {
+			out.close();
+		} catch (IOException e) {
+			closeFailure = e;
+		}
+		quiet.restore();
+		Check.isTrue(failure != null, "writing with the writer thread gone fails");
+		Check.isTrue(System.nanoTime()-start < 5_000_000_000L, "and fails promptly");
+		Check.isTrue(closeFailure != null, "closing with the writer thread gone fails");
+		Check.equal(1, flaky.closes, "but still closes the sink under it");
+	}
+
+	/**
+	 * Keeps the expected failure reports out of the test output (but captures them for checking).
+	 */
+	private static class PrintStreamSilencer {
+		private final java.io.PrintStream err = System.err;
+		private final java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+
+		PrintStreamSilencer() {
+			System.setErr(new java.io.PrintStream(captured, true));
+		}
+
+		void restore() {
+			System.setErr(err);
+		}
+
+		String captured() {
+			return captured.toString();
+		}
+	}
+}
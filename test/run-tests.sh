@@ -0,0 +1,14 @@
+#!/bin/sh
+# Compile the sources and tests, then run every test/*Test.java (each exits non-zero on failure).
+# ConnectionPoolTest and RequirementConditionTest run against an in-memory H2 database (lib/h2-*.jar); the MySQL-specific tests only run
+# given a scratch database: -Dtest.jdbc.url=... in JAVA_OPTS, or TEST_JDBC_URL.
+cd "$(dirname "$0")/.." || exit 1
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+javac -nowarn -encoding UTF-8 -cp 'lib/*' -d "$out" *.java test/*.java || exit 1
+status=0
+for t in test/*Test.java; do
+	name=$(basename "$t" .java)
+	java $JAVA_OPTS -cp "$out:lib/*" -Dtest.fixtures=test/fixtures "$name" || status=1
+done
+exit $status